@@ -1,5 +1,6 @@
 plugins {
     id("java")
+    id("java-test-fixtures")
 }
 
 group = "org.example"
@@ -12,8 +13,38 @@ repositories {
 dependencies {
     testImplementation(platform("org.junit:junit-bom:5.10.0"))
     testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+    testImplementation("org.openjdk.jol:jol-core:0.17")
 }
 
 tasks.test {
     useJUnitPlatform()
-}
\ No newline at end of file
+}
+// JMH benchmarks live in src/jmh/java and run with `gradle jmh`, results go to build/reports/jmh/results.json.
+// `-Pjmh.include=<regex>` picks benchmarks and `-Pjmh.args="..."` passes more JMH options, e.g. "-f 1 -wi 3".
+// The source set isn't part of `build`, so building doesn't need the JMH artifacts. Generated sources shared
+// with the tests come from src/testFixtures.
+val jmh: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output + sourceSets["testFixtures"].output
+    runtimeClasspath += sourceSets.main.get().output + sourceSets["testFixtures"].output
+}
+
+val jmhVersion = "1.37"
+
+dependencies {
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:$jmhVersion")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:$jmhVersion")
+}
+
+tasks.register<JavaExec>("jmh") {
+    description = "Runs the JMH benchmarks in src/jmh"
+    group = "verification"
+    classpath = jmh.runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+
+    val results = layout.buildDirectory.file("reports/jmh/results.json").get().asFile
+    val include = project.findProperty("jmh.include")?.toString()
+    val extra = project.findProperty("jmh.args")?.toString()?.split(" ")?.filter { it.isNotBlank() } ?: listOf()
+    args(listOf("-rf", "json", "-rff", results.absolutePath) + extra + listOfNotNull(include))
+    doFirst { results.parentFile.mkdirs() }
+}
@@ -0,0 +1,57 @@
+package craftinginterpreters.lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scripts per second when one CompiledProgram is run over and over, each run in its own Interpreter. Run it
+ * with different thread counts, e.g. -Pjmh.args="-t 4", to see how runs scale across cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConcurrentRunBenchmarks {
+    private static final String SCRIPT = ""
+            + "fun fib(n) {\n"
+            + "  if (n < 2) return n;\n"
+            + "  return fib(n - 1) + fib(n - 2);\n"
+            + "}\n"
+            + "fun counter() {\n"
+            + "  var count = 0;\n"
+            + "  fun next() { count = count + 1; return count; }\n"
+            + "  return next;\n"
+            + "}\n"
+            + "var next = counter();\n"
+            + "var total = 0;\n"
+            + "while (total < 500) total = total + next();\n"
+            + "print fib(15);\n"
+            + "print total;\n";
+
+    private CompiledProgram program;
+    private final PrintStream out = new PrintStream(OutputStream.nullOutputStream());
+
+    @Setup
+    public void setUp() {
+        program = CompiledProgram.compile(SCRIPT);
+    }
+
+    @Benchmark
+    public void run() {
+        program.run(new ErrorReporter(), out);
+    }
+}
@@ -0,0 +1,55 @@
+package craftinginterpreters.lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per request latency of a script called from Java, compiling the source on every request the way Lox.run
+ * does against compiling it once and only running the CompiledProgram per request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EmbeddingBenchmarks {
+    private String source;
+    private LoxEngine engine;
+    private CompiledProgram program;
+
+    @Setup
+    public void setUp() {
+        // A handler next to a library of helpers it doesn't need, as request scripts tend to be
+        source = Sources.functions(50)
+                + "fun handle(n) {\n"
+                + "  var total = 0;\n"
+                + "  for (var i = 0; i < n; i = i + 1) total = total + i;\n"
+                + "  return total;\n"
+                + "}\n";
+        engine = new LoxEngine(new PrintStream(OutputStream.nullOutputStream()));
+        program = engine.compile(source);
+    }
+
+    @Benchmark
+    public Object compilePerRequest() {
+        return engine.compile(source).run().call("handle", 10);
+    }
+
+    @Benchmark
+    public Object compiledOnce() {
+        return program.run().call("handle", 10);
+    }
+}
@@ -0,0 +1,58 @@
+package craftinginterpreters.lox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Walking every node of the object tree against scanning the FlatAst columns, and the cost of encoding.
+ * Run with -prof gc to compare what parsing and encoding allocate. FlatAstTest measures what each form
+ * retains.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FlatAstBenchmarks {
+    @Param({"2000", "20000"})
+    int functions;
+
+    private List<Stmt> statements;
+    private FlatAst ast;
+
+    @Setup
+    public void setUp() {
+        statements = new Parser(new Scanner(Sources.functions(functions)).scanTokens()).parse();
+        ast = FlatAst.encode(statements);
+    }
+
+    @Benchmark
+    public long treeWalk() {
+        return NodeCounter.count(statements);
+    }
+
+    @Benchmark
+    public long flatWalk() {
+        long[] sum = new long[1];
+        ast.forEachNode(node -> sum[0] += ast.line(node));
+        return sum[0];
+    }
+
+    @Benchmark
+    public FlatAst encode() {
+        return FlatAst.encode(statements);
+    }
+}
@@ -0,0 +1,61 @@
+package craftinginterpreters.lox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of each front end phase on its own, over generated sources from Sources.functions: many small
+ * functions with loops, conditionals and calls. Each phase starts from the previous phase's output, made once
+ * in setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FrontEndBenchmarks {
+    // Functions in the generated source, about 180 bytes each
+    @Param({"100", "2000"})
+    int functions;
+
+    private String source;
+    private List<Token> tokens;
+    private List<Stmt> statements;
+
+    @Setup
+    public void setUp() {
+        source = Sources.functions(functions);
+        tokens = new Scanner(source, new ErrorReporter()).scanTokens();
+        statements = new Parser(tokens, new ErrorReporter()).parse();
+    }
+
+    @Benchmark
+    public List<Token> scan() {
+        return new Scanner(source, new ErrorReporter()).scanTokens();
+    }
+
+    @Benchmark
+    public List<Stmt> parse() {
+        return new Parser(tokens, new ErrorReporter()).parse();
+    }
+
+    @Benchmark
+    public Resolution resolve() {
+        Resolution resolution = new Resolution();
+        new Resolver(resolution, new ErrorReporter()).resolve(statements);
+        return resolution;
+    }
+}
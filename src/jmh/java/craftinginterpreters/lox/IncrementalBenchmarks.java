@@ -0,0 +1,54 @@
+package craftinginterpreters.lox;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per keystroke latency of Document.edit on a generated 10k line file, against scanning, parsing and
+ * resolving the whole text again. Sampled, so the results include the median and p99 latency.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IncrementalBenchmarks {
+    @Param("1250")
+    int functions;
+
+    private Document document;
+    private final Random random = new Random(42);
+    private static final String[] TYPED = {"\n", " ", "x"};
+
+    @Setup
+    public void setUp() {
+        document = new Document(Sources.functions(functions));
+    }
+
+    // Types a character somewhere and takes it back again, two edits
+    @Benchmark
+    public int typeAndDelete() {
+        int offset = random.nextInt(document.text().length());
+        document.edit(offset, 0, TYPED[random.nextInt(TYPED.length)]);
+        document.edit(offset, 1, "");
+        return document.lastReparsed();
+    }
+
+    @Benchmark
+    public Document reparseAll() {
+        return new Document(document.text());
+    }
+}
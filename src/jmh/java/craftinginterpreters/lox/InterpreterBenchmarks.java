@@ -0,0 +1,152 @@
+package craftinginterpreters.lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Micro benchmarks of the interpreter's hot paths. Every benchmark but fib calls a Lox function that runs
+ * one operation LOOP times in a loop, so scores are per operation, loop overhead included. Compare
+ * globalVariable against localVariable to see the cost of the loop itself.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InterpreterBenchmarks {
+    private static final int LOOP = 1000;
+
+    private static final String SOURCE = ""
+            + "fun fib(n) {\n"
+            + "  if (n < 2) return n;\n"
+            + "  return fib(n - 1) + fib(n - 2);\n"
+            + "}\n"
+            + "\n"
+            + "class Counter {\n"
+            + "  step(x) { return x + 1; }\n"
+            + "}\n"
+            + "class Base {\n"
+            + "  inherited(x) { return x + 1; }\n"
+            + "}\n"
+            + "class Derived < Base {}\n"
+            + "\n"
+            + "fun methodCall(n) {\n"
+            + "  var counter = Counter();\n"
+            + "  var total = 0;\n"
+            + "  for (var i = 0; i < n; i = i + 1) total = counter.step(total);\n"
+            + "  return total;\n"
+            + "}\n"
+            + "\n"
+            + "fun inheritedMethodCall(n) {\n"
+            + "  var derived = Derived();\n"
+            + "  var total = 0;\n"
+            + "  for (var i = 0; i < n; i = i + 1) total = derived.inherited(total);\n"
+            + "  return total;\n"
+            + "}\n"
+            + "\n"
+            + "fun fieldGetSet(n) {\n"
+            + "  var counter = Counter();\n"
+            + "  counter.value = 0;\n"
+            + "  for (var i = 0; i < n; i = i + 1) counter.value = counter.value + 1;\n"
+            + "  return counter.value;\n"
+            + "}\n"
+            + "\n"
+            + "fun closureCreation(n) {\n"
+            + "  var last = nil;\n"
+            + "  for (var i = 0; i < n; i = i + 1) {\n"
+            + "    fun capture() { return i; }\n"
+            + "    last = capture;\n"
+            + "  }\n"
+            + "  return last;\n"
+            + "}\n"
+            + "\n"
+            + "fun stringConcatenation(n) {\n"
+            + "  var text = nil;\n"
+            + "  var suffix = \"-bench\";\n"
+            + "  for (var i = 0; i < n; i = i + 1) text = \"lox\" + suffix + suffix;\n"
+            + "  return text;\n"
+            + "}\n"
+            + "\n"
+            + "var counter = 0;\n"
+            + "fun globalVariable(n) {\n"
+            + "  counter = 0;\n"
+            + "  for (var i = 0; i < n; i = i + 1) counter = counter + 1;\n"
+            + "  return counter;\n"
+            + "}\n"
+            + "\n"
+            + "fun localVariable(n) {\n"
+            + "  var count = 0;\n"
+            + "  for (var i = 0; i < n; i = i + 1) count = count + 1;\n"
+            + "  return count;\n"
+            + "}\n";
+
+    private LoxGlobals globals;
+
+    @Setup
+    public void setUp() {
+        LoxEngine engine = new LoxEngine(new PrintStream(OutputStream.nullOutputStream()));
+        globals = engine.compile(SOURCE).run();
+    }
+
+    @Benchmark
+    public Object fib() {
+        return globals.call("fib", 20);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOP)
+    public Object methodCall() {
+        return globals.call("methodCall", LOOP);
+    }
+
+    // Found on the superclass by LoxClass.findMethod
+    @Benchmark
+    @OperationsPerInvocation(LOOP)
+    public Object inheritedMethodCall() {
+        return globals.call("inheritedMethodCall", LOOP);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOP)
+    public Object fieldGetSet() {
+        return globals.call("fieldGetSet", LOOP);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOP)
+    public Object closureCreation() {
+        return globals.call("closureCreation", LOOP);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOP)
+    public Object stringConcatenation() {
+        return globals.call("stringConcatenation", LOOP);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOP)
+    public Object globalVariable() {
+        return globals.call("globalVariable", LOOP);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LOOP)
+    public Object localVariable() {
+        return globals.call("localVariable", LOOP);
+    }
+}
@@ -0,0 +1,52 @@
+package craftinginterpreters.lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Numeric work on the built in list against the linked instance chains scripts used before it: building,
+ * summing and reading from the middle, which the chain has to walk to.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListBenchmarks {
+    @Param({"100000"})
+    int elements;
+
+    private CompiledProgram list;
+    private CompiledProgram chain;
+
+    @Setup
+    public void setUp() {
+        LoxEngine engine = new LoxEngine(new PrintStream(OutputStream.nullOutputStream()));
+        list = engine.compile(Sources.listSum(elements));
+        chain = engine.compile(Sources.chainSum(elements));
+    }
+
+    @Benchmark
+    public LoxGlobals list() {
+        return list.run();
+    }
+
+    @Benchmark
+    public LoxGlobals chain() {
+        return chain.run();
+    }
+}
@@ -0,0 +1,74 @@
+package craftinginterpreters.lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Counting and grouping with the built in map against the workaround scripts used before it: a chain of
+ * entry instances searched linearly, since instance fields can only be keyed by names known at parse time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MapBenchmarks {
+    @Param({"50000"})
+    int items;
+
+    @Param({"200"})
+    int distinct;
+
+    @Param({"number", "string"})
+    String keyType;
+
+    private LoxEngine engine;
+    private LoxList keys;
+    private CompiledProgram map;
+    private CompiledProgram chain;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        keys = new LoxList();
+        for (int i = 0; i < items; i++) {
+            int key = random.nextInt(distinct);
+            keys.append(keyType.equals("number") ? (Object) (double) key : "key" + key);
+        }
+
+        engine = new LoxEngine(new PrintStream(OutputStream.nullOutputStream()));
+        map = engine.compile(Sources.mapCounts());
+        chain = engine.compile(Sources.chainCounts());
+    }
+
+    @Benchmark
+    public LoxGlobals map() {
+        return run(map);
+    }
+
+    @Benchmark
+    public LoxGlobals chain() {
+        return run(chain);
+    }
+
+    private LoxGlobals run(CompiledProgram program) {
+        LoxGlobals globals = engine.newGlobals();
+        globals.set("keys", keys);
+        return program.run(globals);
+    }
+}
@@ -0,0 +1,50 @@
+package craftinginterpreters.lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A hot helper called from a Lox loop, as a LoxNative method, as a hand written LoxCallable going through the
+ * argument list, and written in Lox itself, see Clamps.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NativeBenchmarks {
+    @Param({"clamp", "listClamp", "loxClamp"})
+    String helper;
+
+    @Param({"200000"})
+    int calls;
+
+    private LoxGlobals globals;
+    private CompiledProgram program;
+
+    @Setup
+    public void setUp() {
+        LoxEngine engine = new LoxEngine(new PrintStream(OutputStream.nullOutputStream()));
+        globals = Clamps.define(engine);
+        program = engine.compile(Clamps.loop(helper, calls));
+    }
+
+    @Benchmark
+    public Object call() {
+        return program.run(globals).get("total");
+    }
+}
@@ -0,0 +1,72 @@
+package craftinginterpreters.lox;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A print heavy script writing to a file, with every line flushed as it is printed, the way print statements
+ * used to go to System.out, against the buffered output.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputBenchmarks {
+    // Loop iterations, each printing two lines
+    @Param({"100000"})
+    int lines;
+
+    @Param({"true", "false"})
+    boolean lineBuffered;
+
+    private Resolution resolution;
+    private List<Stmt> statements;
+    private Path file;
+
+    @Setup
+    public void setUp() throws IOException {
+        String source = ""
+                + "for (var i = 0; i < " + lines + "; i = i + 1) {\n"
+                + "  print \"row \";\n"
+                + "  print i;\n"
+                + "}\n";
+        resolution = new Resolution();
+        statements = FrontEnd.compile(source, resolution, new ErrorReporter());
+        file = Files.createTempFile("lox-output", ".txt");
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void print() throws IOException {
+        // Set up like System.out: a small buffer that is flushed on every line
+        try (PrintStream stream = new PrintStream(
+                new BufferedOutputStream(new FileOutputStream(file.toFile()), 128), true)) {
+            new Interpreter(resolution, new ErrorReporter(), new Output(stream, lineBuffered)).interpret(statements);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * FrontEnd.compileAll on a set of generated library files with pools of different sizes, to show how
+ * startup scales with the number of cores. Pools larger than the machine's core count show no gain.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParallelLoadBenchmarks {
+    @Param({"1", "2", "4", "8"})
+    int threads;
+
+    @Param("48")
+    int files;
+
+    private Path dir;
+    private final List<String> paths = new ArrayList<>();
+    private ForkJoinPool pool;
+
+    @Setup
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("lox-load");
+        for (int i = 0; i < files; i++) {
+            Path file = dir.resolve("lib" + i + ".lox");
+            Files.writeString(file, Sources.functions(2000).replace("fun f", "fun lib" + i + "_f"));
+            paths.add(file.toString());
+        }
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        pool.shutdown();
+        for (String path : paths) Files.delete(Path.of(path));
+        Files.delete(dir);
+    }
+
+    @Benchmark
+    public List<FrontEnd.Unit> compileAll() {
+        return FrontEnd.compileAll(paths, pool);
+    }
+}
@@ -0,0 +1,49 @@
+package craftinginterpreters.lox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The sequential against the pipelined front end on generated multi megabyte sources. The pipeline only
+ * pays off with more than one core, see FrontEnd.pipelines.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBenchmarks {
+    // About 180 bytes per function
+    @Param({"10000", "40000"})
+    int functions;
+
+    private String source;
+
+    @Setup
+    public void setUp() {
+        source = Sources.functions(functions);
+    }
+
+    @Benchmark
+    public List<Stmt> sequential() {
+        return FrontEnd.compile(source, new Resolution(), new ErrorReporter());
+    }
+
+    @Benchmark
+    public List<Stmt> pipelined() {
+        return FrontEnd.compilePipelined(source, new Resolution(), new ErrorReporter());
+    }
+}
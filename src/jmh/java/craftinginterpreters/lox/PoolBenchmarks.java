@@ -0,0 +1,65 @@
+package craftinginterpreters.lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Requests against a prelude of a few hundred functions and classes, running the prelude into fresh globals
+ * for every request against taking warmed globals from a LoxPool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PoolBenchmarks {
+    @Param("300")
+    int functions;
+
+    private LoxEngine engine;
+    private CompiledProgram prelude;
+    private CompiledProgram request;
+    private LoxPool pool;
+
+    @Setup
+    public void setUp() {
+        StringBuilder source = new StringBuilder(Sources.functions(functions));
+        for (int i = 0; i < functions / 3; i++) {
+            source.append("class C").append(i).append(" { value() { return ").append(i).append("; } }\n");
+        }
+        source.append("var requestCount = 0;\n");
+
+        engine = new LoxEngine(new PrintStream(OutputStream.nullOutputStream()));
+        prelude = engine.compile(source.toString());
+        request = engine.compile(""
+                + "requestCount = requestCount + 1;\n"
+                + "var answer = f7(10, 3) + C5().value() + requestCount;\n");
+        pool = new LoxPool(prelude, 4);
+    }
+
+    @Benchmark
+    public Object preludePerRequest() {
+        LoxGlobals globals = engine.newGlobals();
+        prelude.run(globals);
+        return request.run(globals).get("answer");
+    }
+
+    @Benchmark
+    public Object pooled() throws InterruptedException {
+        return pool.run(globals -> request.run(globals).get("answer"));
+    }
+}
@@ -0,0 +1,68 @@
+package craftinginterpreters.lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The cost of --profile on the recursive fib from fib.lox: the shadow stack LoxFunction.call keeps and the
+ * sampler thread competing for the CPU.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProfilerBenchmarks {
+    @Param({"22"})
+    int n;
+
+    @Param({"false", "true"})
+    boolean profiled;
+
+    private Resolution resolution;
+    private List<Stmt> statements;
+
+    @Setup
+    public void setUp() {
+        String source = ""
+                + "fun fib(n) {\n"
+                + "  if (n < 2) return n;\n"
+                + "  return fib(n - 1) + fib(n - 2);\n"
+                + "}\n"
+                + "print fib(" + n + ");\n";
+        resolution = new Resolution();
+        statements = FrontEnd.compile(source, resolution, new ErrorReporter());
+    }
+
+    @Benchmark
+    public Interpreter fib() {
+        Interpreter interpreter = new Interpreter(resolution, new ErrorReporter(),
+                new Output(new PrintStream(OutputStream.nullOutputStream())));
+        if (!profiled) {
+            interpreter.interpret(statements);
+            return interpreter;
+        }
+
+        Profiler profiler = new Profiler();
+        interpreter.profiler = profiler;
+        profiler.start();
+        interpreter.interpret(statements);
+        profiler.stop();
+        return interpreter;
+    }
+}
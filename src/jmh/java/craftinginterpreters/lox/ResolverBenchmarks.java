@@ -0,0 +1,46 @@
+package craftinginterpreters.lox;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Resolver throughput on generated code with deeply nested blocks and functions, where every variable
+ * reference has to look through many scopes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResolverBenchmarks {
+    // Nesting depth
+    @Param({"10", "40"})
+    int depth;
+
+    private List<Stmt> statements;
+
+    @Setup
+    public void setUp() {
+        statements = new Parser(new Scanner(Sources.nested(depth, 200)).scanTokens()).parse();
+    }
+
+    @Benchmark
+    public Resolution resolve() {
+        Resolution resolution = new Resolution();
+        new Resolver(resolution, new ErrorReporter()).resolve(statements);
+        return resolution;
+    }
+}
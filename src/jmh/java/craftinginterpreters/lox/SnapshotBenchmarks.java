@@ -0,0 +1,104 @@
+package craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Startup of an application whose initialization builds a large table of instances: running the
+ * initialization, against saving a heap snapshot taken after it and restoring that snapshot.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapshotBenchmarks {
+    @Param("200000")
+    int entries;
+
+    private LoxEngine engine;
+    private CompiledProgram init;
+    private LoxGlobals initialized;
+    private Path file;
+
+    @Setup
+    public void setUp() throws IOException {
+        engine = new LoxEngine(new PrintStream(OutputStream.nullOutputStream()));
+        init = engine.compile(""
+                + "class Entry {}\n"
+                + "fun score(n) {\n"
+                + "  var score = 0;\n"
+                + "  for (var i = 0; i < 20; i = i + 1) score = score + (n * i) / (i + 1);\n"
+                + "  return score;\n"
+                + "}\n"
+                + "fun makeTable(n) {\n"
+                + "  var head = nil;\n"
+                + "  for (var i = 0; i < n; i = i + 1) {\n"
+                + "    var entry = Entry();\n"
+                + "    entry.key = i;\n"
+                + "    entry.value = score(i);\n"
+                + "    entry.next = head;\n"
+                + "    head = entry;\n"
+                + "  }\n"
+                + "  return head;\n"
+                + "}\n"
+                + "var table = makeTable(" + entries + ");\n"
+                + "fun counterFrom(start) {\n"
+                + "  var count = start;\n"
+                + "  fun next() { count = count + 1; return count; }\n"
+                + "  return next;\n"
+                + "}\n"
+                + "var counter = counterFrom(100);\n"
+                + "counter();\n"
+                + "fun lookup(key) {\n"
+                + "  var entry = table;\n"
+                + "  while (entry != nil) {\n"
+                + "    if (entry.key == key) return entry.value;\n"
+                + "    entry = entry.next;\n"
+                + "  }\n"
+                + "  return nil;\n"
+                + "}\n");
+        initialized = init.run();
+        file = Files.createTempFile("lox-heap", ".snapshot");
+        initialized.save(file);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.delete(file);
+    }
+
+    @Benchmark
+    public LoxGlobals initialize() {
+        return init.run();
+    }
+
+    @Benchmark
+    public Path save() throws IOException {
+        initialized.save(file);
+        return file;
+    }
+
+    @Benchmark
+    public LoxGlobals restore() throws IOException {
+        return engine.restore(file);
+    }
+}
@@ -0,0 +1,62 @@
+package craftinginterpreters.lox;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Interpreter.appendNumber against what stringify did before it, Double.toString with any ".0" cut off, on
+ * the counters, sums and averages a script typically prints.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StringifyBenchmarks {
+    private final double[] numbers = new double[1 << 12];
+    private final StringBuilder out = new StringBuilder(1 << 16);
+
+    @Setup
+    public void setUp() {
+        // Mostly integral
+        Random random = new Random(42);
+        for (int i = 0; i < numbers.length; i++) {
+            numbers[i] = i % 4 == 0 ? random.nextInt(1000) / 8.0 : random.nextInt(1_000_000);
+        }
+    }
+
+    @Benchmark
+    public int legacy() {
+        out.setLength(0);
+        for (double number : numbers) {
+            String text = Double.toString(number);
+            if (text.endsWith(".0")) {
+                text = text.substring(0, text.length() - 2);
+            }
+            out.append(text).append('\n');
+        }
+        return out.length();
+    }
+
+    @Benchmark
+    public int appendNumber() {
+        out.setLength(0);
+        for (double number : numbers) {
+            Interpreter.appendNumber(out, number);
+            out.append('\n');
+        }
+        return out.length();
+    }
+}
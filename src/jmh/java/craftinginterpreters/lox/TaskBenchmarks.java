@@ -0,0 +1,84 @@
+package craftinginterpreters.lox;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The concurrency natives: spawning tasks that all stay blocked on a channel until every one of them has
+ * started, and passing messages from one task to another through a bounded channel. Before JDK 21 every
+ * blocked task is a platform thread, see Tasks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TaskBenchmarks {
+    @Param("10000")
+    int tasks;
+
+    @Param("200000")
+    int messages;
+
+    private CompiledProgram spawning;
+    private CompiledProgram passing;
+    private final PrintStream out = new PrintStream(OutputStream.nullOutputStream());
+
+    @Setup
+    public void setUp() {
+        spawning = CompiledProgram.compile(""
+                + "var start = channel(" + tasks + ");\n"
+                + "var done = channel(" + tasks + ");\n"
+                + "var i = 0;\n"
+                + "while (i < " + tasks + ") {\n"
+                + "  fun task() { send(done, receive(start) * 2); }\n"
+                + "  spawn(task);\n"
+                + "  i = i + 1;\n"
+                + "}\n"
+                + "i = 0;\n"
+                + "while (i < " + tasks + ") { send(start, i); i = i + 1; }\n"
+                + "var sum = 0;\n"
+                + "i = 0;\n"
+                + "while (i < " + tasks + ") { sum = sum + receive(done); i = i + 1; }\n"
+                + "print sum;\n");
+
+        passing = CompiledProgram.compile(""
+                + "var messages = channel(64);\n"
+                + "fun producer() {\n"
+                + "  var i = 0;\n"
+                + "  while (i < " + messages + ") { send(messages, i); i = i + 1; }\n"
+                + "  send(messages, nil);\n"
+                + "  return i;\n"
+                + "}\n"
+                + "var task = spawn(producer);\n"
+                + "var sum = 0;\n"
+                + "var message = receive(messages);\n"
+                + "while (message != nil) { sum = sum + message; message = receive(messages); }\n"
+                + "print join(task);\n"
+                + "print sum;\n");
+    }
+
+    @Benchmark
+    public void blockedTasks() {
+        spawning.run(new ErrorReporter(), out);
+    }
+
+    @Benchmark
+    public void messagePassing() {
+        passing.run(new ErrorReporter(), out);
+    }
+}
@@ -0,0 +1,115 @@
+package craftinginterpreters.lox;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Counts the runtime objects a script allocates, by kind and by the Lox function that was running when they
+ * were allocated, see Lox --alloc-stats. The interpreter counts at each place it makes one of these objects,
+ * and LoxFunction.call keeps a shadow stack so the count goes to the function on top. Calls count towards
+ * the function being called, since its environment is made once it is entered.
+ *
+ * Only the thread running the script is counted, not the tasks it spawns.
+ */
+final class Allocations {
+    enum Kind {
+        // Scopes of blocks and calls
+        ENVIRONMENT("environment"),
+        // Functions and methods declared
+        CLOSURE("closure"),
+        // Methods looked up on an instance, an environment holding 'this' and a function
+        BOUND_METHOD("bound method"),
+        ARGUMENTS("arguments"),
+        // Results of arithmetic, boxed
+        NUMBER("number"),
+        // Results of concatenation
+        STRING("string"),
+        INSTANCE("instance");
+
+        final String label;
+
+        Kind(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+    private static final String ROOT = "<script>";
+
+    // Counts per function, indexed by Kind.ordinal
+    private final Map<Stmt.Function, long[]> functions = new IdentityHashMap<>();
+    private final long[] script = new long[KINDS.length];
+    private long[] current = script;
+
+    // The shadow stack, the counts of the callers of the current function
+    private long[][] callers = new long[64][];
+    private int depth = 0;
+
+    void count(Kind kind) {
+        current[kind.ordinal()]++;
+    }
+
+    void enter(Stmt.Function function) {
+        if (depth == callers.length) {
+            long[][] grown = new long[depth * 2][];
+            System.arraycopy(callers, 0, grown, 0, depth);
+            callers = grown;
+        }
+        callers[depth++] = current;
+
+        long[] counts = functions.get(function);
+        if (counts == null) {
+            counts = new long[KINDS.length];
+            functions.put(function, counts);
+        }
+        current = counts;
+    }
+
+    void exit() {
+        current = callers[--depth];
+    }
+
+    // Everything counted so far by kind, for the stats() native
+    LoxMap totals() {
+        long[] totals = script.clone();
+        for (long[] counts : functions.values()) {
+            for (int i = 0; i < totals.length; i++) totals[i] += counts[i];
+        }
+
+        LoxMap map = new LoxMap();
+        for (Kind kind : KINDS) map.set(kind.label, (double) totals[kind.ordinal()]);
+        return map;
+    }
+
+    // A table of the counts per function, the ones allocating the most first
+    void report(PrintStream out) {
+        List<Map.Entry<String, long[]>> rows = new ArrayList<>();
+        rows.add(Map.entry(ROOT, script));
+        for (Map.Entry<Stmt.Function, long[]> function : functions.entrySet()) {
+            Token name = function.getKey().name;
+            rows.add(Map.entry(name.lexeme + ":" + name.line(), function.getValue()));
+        }
+        rows.sort((a, b) -> Long.compare(sum(b.getValue()), sum(a.getValue())));
+
+        StringBuilder header = new StringBuilder();
+        for (Kind kind : KINDS) header.append(String.format("%13s ", kind.label));
+        out.printf("%s%13s  %s%n", header, "total", "function");
+        for (Map.Entry<String, long[]> row : rows) {
+            long[] counts = row.getValue();
+            if (sum(counts) == 0) continue;
+
+            StringBuilder line = new StringBuilder();
+            for (long count : counts) line.append(String.format("%13d ", count));
+            out.printf("%s%13d  %s%n", line, sum(counts), row.getKey());
+        }
+    }
+
+    private static long sum(long[] counts) {
+        long sum = 0;
+        for (long count : counts) sum += count;
+        return sum;
+    }
+}
@@ -1,66 +1,200 @@
-//package craftinginterpreters.lox;
-//
-//public class AstPrinter implements Expr.Visitor<String>{
-//    String print(Expr expr) {
-//        return expr.accept(this);
-//    }
-//
-//    @Override
-//    public String visitBinaryExpr(Expr.Binary expr) {
-//        return parenthesize(expr.operator.lexeme, expr.left, expr.right);
-//    }
-//
-//    @Override
-//    public String visitGroupingExpr(Expr.Grouping expr) {
-//        return parenthesize("group", expr.expression);
-//    }
-//
-//    @Override
-//    public String visitLiteralExpr(Expr.Literal expr) {
-//        if (expr.value == null) return "nil";
-//        return expr.value.toString();
-//    }
-//
-//    @Override
-//    public String visitUnaryExpr(Expr.Unary expr) {
-//        return parenthesize(expr.operator.lexeme, expr.right);
-//    }
-//
-//    @Override
-//    public String visitVariableExpr(Expr.Variable expr) {
-//        return "$" + expr.name;
-//    }
-//
-//    /**
-//     * Helper function for printing out ASTs, prints out given operator and expressions lisp style
-//     * @param operator The operator tobe printed
-//     * @param exprs Var arg of expressions
-//     * @return A string representing the AST in haskell/fp esque prefix syntax
-//     */
-//    private String parenthesize(String operator, Expr... exprs) {
-//        StringBuilder res = new StringBuilder();
-//
-//        res.append("(").append(operator);
-//        for (Expr expr : exprs) {
-//            res.append("  ");
-//            res.append(expr.accept(this));
-//        }
-//
-//        res.append(")");
-//
-//        return res.toString();
-//    }
-//
-//    public static void main(String[] args) {
-//        Expr expr = new Expr.Binary(
-//                new Expr.Unary(
-//                        new Token(TokenType.MINUS, "-", null ,1),
-//                        new Expr.Literal(123)
-//                ),
-//                new Token(TokenType.STAR, "*", null, 1),
-//                new Expr.Grouping(new Expr.Literal(45.67))
-//        );
-//
-//        System.out.println(new AstPrinter().print(expr));
-//    }
-//}
+package craftinginterpreters.lox;
+
+import java.util.List;
+
+/**
+ * Prints ASTs lisp style, mostly useful for debugging the parser. Works on both the object tree and,
+ * through FlatAst's visitor adapter, on the flat encoding.
+ */
+public class AstPrinter implements Expr.Visitor<String>, Stmt.Visitor<String> {
+    String print(Expr expr) {
+        return expr.accept(this);
+    }
+
+    String print(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    String print(List<Stmt> statements) {
+        StringBuilder res = new StringBuilder();
+        for (Stmt statement : statements) {
+            res.append(statement == null ? "<error>" : print(statement)).append("\n");
+        }
+        return res.toString();
+    }
+
+    String print(FlatAst ast) {
+        StringBuilder res = new StringBuilder();
+        for (int root : ast.roots()) {
+            res.append(ast.accept(root, (Stmt.Visitor<String>) this)).append("\n");
+        }
+        return res.toString();
+    }
+
+    @Override
+    public String visitAssignExpr(Expr.Assign expr) {
+        return parenthesize("= " + expr.name.lexeme, expr.value);
+    }
+
+    @Override
+    public String visitBinaryExpr(Expr.Binary expr) {
+        return parenthesize(expr.operator.lexeme, expr.left, expr.right);
+    }
+
+    @Override
+    public String visitCallExpr(Expr.Call expr) {
+        return parenthesize("call " + expr.callee.accept(this), expr.arguments.toArray(new Expr[0]));
+    }
+
+    @Override
+    public String visitGetExpr(Expr.Get expr) {
+        return parenthesize(". " + expr.name.lexeme, expr.object);
+    }
+
+    @Override
+    public String visitGroupingExpr(Expr.Grouping expr) {
+        return parenthesize("group", expr.expression);
+    }
+
+    @Override
+    public String visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) return "nil";
+        if (expr.value instanceof String) return "\"" + expr.value + "\"";
+        return expr.value.toString();
+    }
+
+    @Override
+    public String visitLogicalExpr(Expr.Logical expr) {
+        return parenthesize(expr.operator.lexeme, expr.left, expr.right);
+    }
+
+    @Override
+    public String visitSetExpr(Expr.Set expr) {
+        return parenthesize("= ." + expr.name.lexeme, expr.object, expr.value);
+    }
+
+    @Override
+    public String visitSuperExpr(Expr.Super expr) {
+        return "(super " + expr.method.lexeme + ")";
+    }
+
+    @Override
+    public String visitThisExpr(Expr.This expr) {
+        return "this";
+    }
+
+    @Override
+    public String visitUnaryExpr(Expr.Unary expr) {
+        return parenthesize(expr.operator.lexeme, expr.right);
+    }
+
+    @Override
+    public String visitVariableExpr(Expr.Variable expr) {
+        return "$" + expr.name.lexeme;
+    }
+
+    @Override
+    public String visitBlockStmt(Stmt.Block stmt) {
+        return block("block", stmt.statements);
+    }
+
+    @Override
+    public String visitClassStmt(Stmt.Class stmt) {
+        String header = "class " + stmt.name.lexeme;
+        if (stmt.superclass != null) header += " < " + stmt.superclass.name.lexeme;
+        return block(header, stmt.methods);
+    }
+
+    @Override
+    public String visitExpressionStmt(Stmt.Expression stmt) {
+        return parenthesize(";", stmt.expression);
+    }
+
+    @Override
+    public String visitFunctionStmt(Stmt.Function stmt) {
+        StringBuilder header = new StringBuilder("fun " + stmt.name.lexeme + "(");
+        for (int i = 0; i < stmt.params.size(); i++) {
+            if (i > 0) header.append(" ");
+            header.append(stmt.params.get(i).lexeme);
+        }
+        header.append(")");
+        return block(header.toString(), stmt.body);
+    }
+
+    @Override
+    public String visitIfStmt(Stmt.If stmt) {
+        String res = "(if " + stmt.condition.accept(this) + " " + stmt.thenBranch.accept(this);
+        if (stmt.elseBranch != null) res += " " + stmt.elseBranch.accept(this);
+        return res + ")";
+    }
+
+    @Override
+    public String visitPrintStmt(Stmt.Print stmt) {
+        return parenthesize("print", stmt.expression);
+    }
+
+    @Override
+    public String visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.value == null) return "(return)";
+        return parenthesize("return", stmt.value);
+    }
+
+    @Override
+    public String visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer == null) return "(var " + stmt.name.lexeme + ")";
+        return parenthesize("var " + stmt.name.lexeme, stmt.initializer);
+    }
+
+    @Override
+    public String visitWhileStmt(Stmt.While stmt) {
+        return "(while " + stmt.condition.accept(this) + " " + stmt.body.accept(this) + ")";
+    }
+
+    /**
+     * Helper function for printing out ASTs, prints out given operator and expressions lisp style
+     * @param operator The operator tobe printed
+     * @param exprs Var arg of expressions
+     * @return A string representing the AST in haskell/fp esque prefix syntax
+     */
+    private String parenthesize(String operator, Expr... exprs) {
+        StringBuilder res = new StringBuilder();
+
+        res.append("(").append(operator);
+        for (Expr expr : exprs) {
+            res.append(" ");
+            res.append(expr.accept(this));
+        }
+
+        res.append(")");
+
+        return res.toString();
+    }
+
+    private String block(String header, List<? extends Stmt> statements) {
+        StringBuilder res = new StringBuilder();
+
+        res.append("(").append(header);
+        for (Stmt statement : statements) {
+            res.append(" ");
+            // Statements that failed to parse are left in the list as null
+            res.append(statement == null ? "<error>" : statement.accept(this));
+        }
+
+        res.append(")");
+
+        return res.toString();
+    }
+
+    public static void main(String[] args) {
+        Expr expr = new Expr.Binary(
+                new Expr.Unary(
+                        new Token(TokenType.MINUS, "-", null ,1),
+                        new Expr.Literal(123, 1)
+                ),
+                new Token(TokenType.STAR, "*", null, 1),
+                new Expr.Grouping(new Expr.Literal(45.67, 1))
+        );
+
+        System.out.println(new AstPrinter().print(expr));
+    }
+}
@@ -0,0 +1,197 @@
+package craftinginterpreters.lox;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Runs the Lox workloads in src/main/resources/benchmark, each compiled once and run a number of times in
+ * fresh globals after a few warm up runs, and reports time per run and how much it allocated. Compares the
+ * medians against a baseline saved by an earlier run and exits with 1 if any is slower than the threshold
+ * allows.
+ *
+ *   BenchmarkSuite [--runs=N] [--warmup=N] [--dir=path] [--save=file] [--baseline=file] [--threshold=percent]
+ *                  [name...]
+ *
+ * Every run has to print what the first one printed, so a change that breaks a workload doesn't pass as
+ * a speed up.
+ */
+public class BenchmarkSuite {
+    static final String SLOWER = "SLOWER";
+
+    public static void main(String[] args) throws IOException {
+        int runs = 10;
+        int warmup = 3;
+        Path dir = Paths.get("src/main/resources/benchmark");
+        Path save = null;
+        Path baselineFile = null;
+        double threshold = 10;
+        List<String> names = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.startsWith("--runs=")) {
+                runs = Integer.parseInt(value(arg));
+            } else if (arg.startsWith("--warmup=")) {
+                warmup = Integer.parseInt(value(arg));
+            } else if (arg.startsWith("--dir=")) {
+                dir = Paths.get(value(arg));
+            } else if (arg.startsWith("--save=")) {
+                save = Paths.get(value(arg));
+            } else if (arg.startsWith("--baseline=")) {
+                baselineFile = Paths.get(value(arg));
+            } else if (arg.startsWith("--threshold=")) {
+                threshold = Double.parseDouble(value(arg));
+            } else if (arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown option " + arg);
+            } else {
+                names.add(arg);
+            }
+        }
+
+        List<Path> scripts;
+        try (Stream<Path> files = Files.list(dir)) {
+            scripts = files.filter(file -> file.toString().endsWith(".lox")).sorted().collect(Collectors.toList());
+        }
+        Map<String, long[]> baseline = baselineFile == null ? Map.of() : readBaseline(baselineFile);
+
+        System.out.printf("%-16s %9s %9s %9s %9s %9s %10s %9s %9s%n",
+                "benchmark", "mean ms", "p50 ms", "p90 ms", "p99 ms", "min ms", "MiB/run", "MiB/s", "vs base");
+        Map<String, Result> results = new LinkedHashMap<>();
+        boolean regressed = false;
+        for (Path script : scripts) {
+            String name = script.getFileName().toString().replaceFirst("\\.lox$", "");
+            if (!names.isEmpty() && !names.contains(name)) continue;
+
+            Result result = run(new String(Files.readAllBytes(script), Charset.defaultCharset()), warmup, runs);
+            results.put(name, result);
+
+            String comparison = compare(baseline.get(name), result.percentile(50), threshold);
+            if (comparison.endsWith(SLOWER)) regressed = true;
+            System.out.printf("%-16s %9.1f %9.1f %9.1f %9.1f %9.1f %10.1f %9.0f %9s%n", name,
+                    result.mean() / 1e6, result.percentile(50) / 1e6, result.percentile(90) / 1e6,
+                    result.percentile(99) / 1e6, result.nanos[0] / 1e6, result.bytesPerRun() / 1048576.0,
+                    result.bytesPerRun() / 1048576.0 / (result.mean() / 1e9), comparison);
+        }
+
+        if (save != null) writeBaseline(save, results);
+        if (regressed) {
+            System.out.println("Slower than the baseline by more than " + threshold + "%");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * How a median compares with the baseline's, for the "vs base" column. Ends with SLOWER if it is slower by
+     * more than the threshold.
+     * @param base The workload's baseline median and mean, null if the baseline doesn't have it
+     */
+    static String compare(long[] base, long median, double threshold) {
+        if (base == null) return "";
+
+        double change = 100.0 * (median - base[0]) / base[0];
+        String comparison = String.format("%+.1f%%", change);
+        return change > threshold ? comparison + " " + SLOWER : comparison;
+    }
+
+    private static String value(String option) {
+        return option.substring(option.indexOf('=') + 1);
+    }
+
+    private static Result run(String source, int warmup, int runs) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        LoxEngine engine = new LoxEngine(new PrintStream(output));
+        CompiledProgram program = engine.compile(source);
+
+        String expected = null;
+        long[] nanos = new long[runs];
+        long bytes = 0;
+        for (int i = -warmup; i < runs; i++) {
+            output.reset();
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            program.run();
+            long elapsed = System.nanoTime() - start;
+            long allocated = allocatedBytes() - allocatedBefore;
+
+            String printed = output.toString();
+            if (expected == null) {
+                expected = printed;
+            } else if (!printed.equals(expected)) {
+                throw new IllegalStateException("Run printed\n" + printed + "but the first run printed\n" + expected);
+            }
+
+            if (i >= 0) {
+                nanos[i] = elapsed;
+                bytes += allocated;
+            }
+        }
+
+        Arrays.sort(nanos);
+        return new Result(nanos, bytes);
+    }
+
+    // Bytes this thread allocated so far, -1 where the JVM can't tell
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) return -1;
+        return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    // One line per benchmark: name, median and mean in nanoseconds
+    static Map<String, long[]> readBaseline(Path file) throws IOException {
+        Map<String, long[]> baseline = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(file)) {
+            if (line.isBlank() || line.startsWith("#")) continue;
+            String[] columns = line.trim().split("\\s+");
+            baseline.put(columns[0], new long[] {Long.parseLong(columns[1]), Long.parseLong(columns[2])});
+        }
+        return baseline;
+    }
+
+    private static void writeBaseline(Path file, Map<String, Result> results) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            out.println("# benchmark\tmedian ns\tmean ns");
+            for (Map.Entry<String, Result> result : results.entrySet()) {
+                out.println(result.getKey() + "\t" + result.getValue().percentile(50) + "\t"
+                        + (long) result.getValue().mean());
+            }
+        }
+    }
+
+    private static final class Result {
+        // Sorted
+        final long[] nanos;
+        final long bytes;
+
+        Result(long[] nanos, long bytes) {
+            this.nanos = nanos;
+            this.bytes = bytes;
+        }
+
+        double mean() {
+            return Arrays.stream(nanos).average().orElse(0);
+        }
+
+        // Nearest rank
+        long percentile(int percent) {
+            int rank = (int) Math.ceil(percent / 100.0 * nanos.length);
+            return nanos[Math.max(0, rank - 1)];
+        }
+
+        double bytesPerRun() {
+            return bytes < 0 ? Double.NaN : (double) bytes / nanos.length;
+        }
+    }
+}
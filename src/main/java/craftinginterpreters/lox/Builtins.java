@@ -0,0 +1,40 @@
+package craftinginterpreters.lox;
+
+/**
+ * The natives every global scope starts out with, see Interpreter.newGlobals. The concurrency natives are
+ * in Tasks.
+ */
+final class Builtins {
+    private Builtins() {
+    }
+
+    // Seconds since the epoch
+    @LoxNative
+    static double clock() {
+        return (double) System.currentTimeMillis() / 1000.0;
+    }
+
+    @LoxNative
+    static LoxList list(Interpreter interpreter) {
+        interpreter.charge(Footprint.LIST);
+        return new LoxList();
+    }
+
+    @LoxNative
+    static LoxMap map(Interpreter interpreter) {
+        interpreter.charge(Footprint.MAP);
+        return new LoxMap();
+    }
+
+    // Counts of the objects allocated so far by kind, nil unless running with --alloc-stats, see Allocations
+    @LoxNative
+    static LoxMap stats(Interpreter interpreter) {
+        return interpreter.allocations == null ? null : interpreter.allocations.totals();
+    }
+
+    // Writes out what the script printed so far, see Output
+    @LoxNative
+    static void flush(Interpreter interpreter) {
+        interpreter.out.flush();
+    }
+}
@@ -0,0 +1,803 @@
+package craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The compiled tier, see Tiering. Compiles a function body or a loop into a tree of closures, one per
+ * statement and expression, that do what the Interpreter's visit methods do with the decisions taken once,
+ * up front: which operator applies, how many scopes up a variable is or whether it is a global, which layout
+ * a block's scope gets. Running the tree is a virtual call per node, without the visitor's double dispatch
+ * or lookups in the Resolver's tables.
+ *
+ * A return doesn't throw. Each statement returns NEXT to go on with the next one, or the value its function
+ * returns. Compiled code runs in the environment it is handed rather than the Interpreter's, and counts,
+ * charges and reports errors through the Interpreter, so limits, allocation limits, --alloc-stats and the
+ * metrics see it like interpreted code. Class declarations are rare and left to the Interpreter.
+ *
+ * The tree holds nothing but final fields, so any number of Interpreters can run it at once.
+ */
+final class ClosureCompiler implements Stmt.Visitor<ClosureCompiler.Code>, Expr.Visitor<ClosureCompiler.Value> {
+    // What a statement returns when the statement after it runs next
+    static final Object NEXT = new Object();
+
+    abstract static class Code {
+        // NEXT, or the value the function returns
+        abstract Object run(Interpreter interpreter, Environment env);
+    }
+
+    abstract static class Value {
+        abstract Object eval(Interpreter interpreter, Environment env);
+    }
+
+    private final Resolution resolution;
+
+    ClosureCompiler(Resolution resolution) {
+        this.resolution = resolution;
+    }
+
+    // Runs in the environment holding the parameters
+    Code function(Stmt.Function declaration) {
+        return sequence(declaration.body);
+    }
+
+    // Entered by the Interpreter in the middle of running the loop, which it has counted as a statement already
+    Code loop(Stmt.While loop) {
+        return new While(value(loop.condition), code(loop.body), loop, false);
+    }
+
+    private Code code(Stmt statement) {
+        return statement.accept(this);
+    }
+
+    private Value value(Expr expr) {
+        return expr.accept(this);
+    }
+
+    private Code sequence(List<Stmt> statements) {
+        if (statements.size() == 1) return code(statements.get(0));
+
+        Code[] codes = new Code[statements.size()];
+        for (int i = 0; i < codes.length; i++) codes[i] = code(statements.get(i));
+        return new Sequence(codes);
+    }
+
+    private Value variable(Expr expr, Token name) {
+        Integer distance = resolution.locals.get(expr);
+        if (distance == null) return new Global(name);
+        return new Local(distance, name.lexeme);
+    }
+
+    @Override
+    public Code visitBlockStmt(Stmt.Block stmt) {
+        return new Block(sequence(stmt.statements), resolution.layouts.get(stmt));
+    }
+
+    @Override
+    public Code visitClassStmt(Stmt.Class stmt) {
+        return new Interpreted(stmt);
+    }
+
+    @Override
+    public Code visitExpressionStmt(Stmt.Expression stmt) {
+        return new ExpressionStatement(value(stmt.expression));
+    }
+
+    @Override
+    public Code visitFunctionStmt(Stmt.Function stmt) {
+        return new FunctionDeclaration(stmt, resolution);
+    }
+
+    @Override
+    public Code visitIfStmt(Stmt.If stmt) {
+        Code elseBranch = stmt.elseBranch == null ? null : code(stmt.elseBranch);
+        return new If(value(stmt.condition), code(stmt.thenBranch), elseBranch);
+    }
+
+    @Override
+    public Code visitPrintStmt(Stmt.Print stmt) {
+        return new Print(value(stmt.expression));
+    }
+
+    @Override
+    public Code visitReturnStmt(Stmt.Return stmt) {
+        return new Return(stmt.value == null ? null : value(stmt.value));
+    }
+
+    @Override
+    public Code visitVarStmt(Stmt.Var stmt) {
+        return new Var(stmt.name.lexeme, stmt.initializer == null ? null : value(stmt.initializer));
+    }
+
+    @Override
+    public Code visitWhileStmt(Stmt.While stmt) {
+        return new While(value(stmt.condition), code(stmt.body), stmt, true);
+    }
+
+    @Override
+    public Value visitAssignExpr(Expr.Assign expr) {
+        Integer distance = resolution.locals.get(expr);
+        if (distance == null) return new AssignGlobal(expr.name, value(expr.value));
+        return new AssignLocal(distance, expr.name, value(expr.value));
+    }
+
+    @Override
+    public Value visitBinaryExpr(Expr.Binary expr) {
+        Token operator = expr.operator;
+        Value left = value(expr.left);
+        Value right = value(expr.right);
+
+        switch (operator.type) {
+            case MINUS: return new Subtract(left, right);
+            case PLUS: return new Add(operator, left, right);
+            case GREATER: return new Greater(operator, left, right);
+            case GREATER_EQUAL: return new GreaterEqual(operator, left, right);
+            case LESS: return new Less(operator, left, right);
+            case LESS_EQUAL: return new LessEqual(operator, left, right);
+            case SLASH: return new Divide(operator, left, right);
+            case STAR: return new Multiply(operator, left, right);
+            case EQUAL_EQUAL: return new Equal(left, right, false);
+            case BANG_EQUAL: return new Equal(left, right, true);
+        }
+
+        throw new IllegalArgumentException("Unknown binary operator " + operator.lexeme);
+    }
+
+    @Override
+    public Value visitCallExpr(Expr.Call expr) {
+        Value[] arguments = new Value[expr.arguments.size()];
+        for (int i = 0; i < arguments.length; i++) arguments[i] = value(expr.arguments.get(i));
+        return new Call(value(expr.callee), arguments, expr.paren);
+    }
+
+    @Override
+    public Value visitGetExpr(Expr.Get expr) {
+        return new Get(value(expr.object), expr.name);
+    }
+
+    @Override
+    public Value visitGroupingExpr(Expr.Grouping expr) {
+        return value(expr.expression);
+    }
+
+    @Override
+    public Value visitLiteralExpr(Expr.Literal expr) {
+        return new Constant(expr.value);
+    }
+
+    @Override
+    public Value visitLogicalExpr(Expr.Logical expr) {
+        if (expr.operator.type == TokenType.OR) return new Or(value(expr.left), value(expr.right));
+        return new And(value(expr.left), value(expr.right));
+    }
+
+    @Override
+    public Value visitSetExpr(Expr.Set expr) {
+        return new Set(value(expr.object), expr.name, value(expr.value));
+    }
+
+    @Override
+    public Value visitSuperExpr(Expr.Super expr) {
+        return new Super(resolution.locals.get(expr), expr.method);
+    }
+
+    @Override
+    public Value visitThisExpr(Expr.This expr) {
+        return variable(expr, expr.keyword);
+    }
+
+    @Override
+    public Value visitUnaryExpr(Expr.Unary expr) {
+        switch (expr.operator.type) {
+            case BANG: return new Not(value(expr.right));
+            case MINUS: return new Negate(expr.operator, value(expr.right));
+        }
+
+        throw new IllegalArgumentException("Unknown unary operator " + expr.operator.lexeme);
+    }
+
+    @Override
+    public Value visitVariableExpr(Expr.Variable expr) {
+        return variable(expr, expr.name);
+    }
+
+    // Statements
+
+    private static final class Sequence extends Code {
+        private final Code[] codes;
+
+        Sequence(Code[] codes) {
+            this.codes = codes;
+        }
+
+        @Override
+        Object run(Interpreter interpreter, Environment env) {
+            for (Code code : codes) {
+                Object result = code.run(interpreter, env);
+                if (result != NEXT) return result;
+            }
+            return NEXT;
+        }
+    }
+
+    private static final class Block extends Code {
+        private final Code body;
+        private final ScopeLayout layout;
+
+        Block(Code body, ScopeLayout layout) {
+            this.body = body;
+            this.layout = layout;
+        }
+
+        @Override
+        Object run(Interpreter interpreter, Environment env) {
+            interpreter.countStatement();
+            interpreter.count(Allocations.Kind.ENVIRONMENT);
+            return body.run(interpreter, new Environment(env, layout));
+        }
+    }
+
+    // Run by the Interpreter, in the environment it is handed
+    private static final class Interpreted extends Code {
+        private final List<Stmt> statement;
+
+        Interpreted(Stmt statement) {
+            this.statement = List.of(statement);
+        }
+
+        @Override
+        Object run(Interpreter interpreter, Environment env) {
+            interpreter.executeBlock(statement, env);
+            return NEXT;
+        }
+    }
+
+    private static final class ExpressionStatement extends Code {
+        private final Value expression;
+
+        ExpressionStatement(Value expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        Object run(Interpreter interpreter, Environment env) {
+            interpreter.countStatement();
+            expression.eval(interpreter, env);
+            return NEXT;
+        }
+    }
+
+    private static final class FunctionDeclaration extends Code {
+        private final Stmt.Function declaration;
+        private final Resolution resolution;
+
+        FunctionDeclaration(Stmt.Function declaration, Resolution resolution) {
+            this.declaration = declaration;
+            this.resolution = resolution;
+        }
+
+        @Override
+        Object run(Interpreter interpreter, Environment env) {
+            interpreter.countStatement();
+            interpreter.count(Allocations.Kind.CLOSURE);
+            interpreter.charge(Footprint.CLOSURE, declaration.name);
+            env.define(declaration.name.lexeme, new LoxFunction(declaration, env, false, resolution));
+            return NEXT;
+        }
+    }
+
+    private static final class If extends Code {
+        private final Value condition;
+        private final Code thenBranch;
+        private final Code elseBranch;
+
+        If(Value condition, Code thenBranch, Code elseBranch) {
+            this.condition = condition;
+            this.thenBranch = thenBranch;
+            this.elseBranch = elseBranch;
+        }
+
+        @Override
+        Object run(Interpreter interpreter, Environment env) {
+            interpreter.countStatement();
+            if (Interpreter.isTruthy(condition.eval(interpreter, env))) return thenBranch.run(interpreter, env);
+            if (elseBranch != null) return elseBranch.run(interpreter, env);
+            return NEXT;
+        }
+    }
+
+    private static final class Print extends Code {
+        private final Value expression;
+
+        Print(Value expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        Object run(Interpreter interpreter, Environment env) {
+            interpreter.countStatement();
+            interpreter.out.println(expression.eval(interpreter, env));
+            return NEXT;
+        }
+    }
+
+    private static final class Return extends Code {
+        private final Value value;
+
+        Return(Value value) {
+            this.value = value;
+        }
+
+        @Override
+        Object run(Interpreter interpreter, Environment env) {
+            interpreter.countStatement();
+            return value == null ? null : value.eval(interpreter, env);
+        }
+    }
+
+    private static final class Var extends Code {
+        private final String name;
+        private final Value initializer;
+
+        Var(String name, Value initializer) {
+            this.name = name;
+            this.initializer = initializer;
+        }
+
+        @Override
+        Object run(Interpreter interpreter, Environment env) {
+            interpreter.countStatement();
+            env.define(name, initializer == null ? null : initializer.eval(interpreter, env));
+            return NEXT;
+        }
+    }
+
+    private static final class While extends Code {
+        private final Value condition;
+        private final Code body;
+        private final Stmt.While loop;
+        private final boolean counted;
+
+        While(Value condition, Code body, Stmt.While loop, boolean counted) {
+            this.condition = condition;
+            this.body = body;
+            this.loop = loop;
+            this.counted = counted;
+        }
+
+        @Override
+        Object run(Interpreter interpreter, Environment env) {
+            if (counted) interpreter.countStatement();
+            while (Interpreter.isTruthy(condition.eval(interpreter, env))) {
+                Object result = body.run(interpreter, env);
+                if (result != NEXT) return result;
+                interpreter.backEdge(loop);
+            }
+            return NEXT;
+        }
+    }
+
+    // Expressions
+
+    private static final class Constant extends Value {
+        private final Object value;
+
+        Constant(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object eval(Interpreter interpreter, Environment env) {
+            return value;
+        }
+    }
+
+    private static final class Local extends Value {
+        private final int distance;
+        private final String name;
+
+        Local(int distance, String name) {
+            this.distance = distance;
+            this.name = name;
+        }
+
+        @Override
+        Object eval(Interpreter interpreter, Environment env) {
+            return env.getAt(distance, name);
+        }
+    }
+
+    private static final class Global extends Value {
+        private final Token name;
+
+        Global(Token name) {
+            this.name = name;
+        }
+
+        @Override
+        Object eval(Interpreter interpreter, Environment env) {
+            return interpreter.globals.get(name);
+        }
+    }
+
+    private static final class AssignLocal extends Value {
+        private final int distance;
+        private final Token name;
+        private final Value value;
+
+        AssignLocal(int distance, Token name, Value value) {
+            this.distance = distance;
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        Object eval(Interpreter interpreter, Environment env) {
+            Object result = value.eval(interpreter, env);
+            env.assignAt(distance, name, result);
+            return result;
+        }
+    }
+
+    private static final class AssignGlobal extends Value {
+        private final Token name;
+        private final Value value;
+
+        AssignGlobal(Token name, Value value) {
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        Object eval(Interpreter interpreter, Environment env) {
+            Object result = value.eval(interpreter, env);
+            interpreter.globals.assign(name, result);
+            return result;
+        }
+    }
+
+    private static final class Add extends Value {
+        private final Token operator;
+        private final Value left;
+        private final Value right;
+
+        Add(Token operator, Value left, Value right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object eval(Interpreter interpreter, Environment env) {
+            Object a = left.eval(interpreter, env);
+            return interpreter.add(operator, a, right.eval(interpreter, env));
+        }
+    }
+
+    // Unchecked, like the Interpreter's minus
+    private static final class Subtract extends Value {
+        private final Value left;
+        private final Value right;
+
+        Subtract(Value left, Value right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object eval(Interpreter interpreter, Environment env) {
+            Object a = left.eval(interpreter, env);
+            Object b = right.eval(interpreter, env);
+            return interpreter.number((double) a - (double) b);
+        }
+    }
+
+    private static final class Multiply extends Value {
+        private final Token operator;
+        private final Value left;
+        private final Value right;
+
+        Multiply(Token operator, Value left, Value right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object eval(Interpreter interpreter, Environment env) {
+            Object a = left.eval(interpreter, env);
+            Object b = right.eval(interpreter, env);
+            Interpreter.checkNumberOperands(operator, a, b);
+            return interpreter.number((double) a * (double) b);
+        }
+    }
+
+    private static final class Divide extends Value {
+        private final Token operator;
+        private final Value left;
+        private final Value right;
+
+        Divide(Token operator, Value left, Value right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object eval(Interpreter interpreter, Environment env) {
+            Object a = left.eval(interpreter, env);
+            Object b = right.eval(interpreter, env);
+            Interpreter.checkNumberOperands(operator, a, b);
+            return interpreter.number((double) a / (double) b);
+        }
+    }
+
+    private static final class Greater extends Value {
+        private final Token operator;
+        private final Value left;
+        private final Value right;
+
+        Greater(Token operator, Value left, Value right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object eval(Interpreter interpreter, Environment env) {
+            Object a = left.eval(interpreter, env);
+            Object b = right.eval(interpreter, env);
+            Interpreter.checkNumberOperands(operator, a, b);
+            return (double) a > (double) b;
+        }
+    }
+
+    private static final class GreaterEqual extends Value {
+        private final Token operator;
+        private final Value left;
+        private final Value right;
+
+        GreaterEqual(Token operator, Value left, Value right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object eval(Interpreter interpreter, Environment env) {
+            Object a = left.eval(interpreter, env);
+            Object b = right.eval(interpreter, env);
+            Interpreter.checkNumberOperands(operator, a, b);
+            return (double) a >= (double) b;
+        }
+    }
+
+    private static final class Less extends Value {
+        private final Token operator;
+        private final Value left;
+        private final Value right;
+
+        Less(Token operator, Value left, Value right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object eval(Interpreter interpreter, Environment env) {
+            Object a = left.eval(interpreter, env);
+            Object b = right.eval(interpreter, env);
+            Interpreter.checkNumberOperands(operator, a, b);
+            return (double) a < (double) b;
+        }
+    }
+
+    private static final class LessEqual extends Value {
+        private final Token operator;
+        private final Value left;
+        private final Value right;
+
+        LessEqual(Token operator, Value left, Value right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object eval(Interpreter interpreter, Environment env) {
+            Object a = left.eval(interpreter, env);
+            Object b = right.eval(interpreter, env);
+            Interpreter.checkNumberOperands(operator, a, b);
+            return (double) a <= (double) b;
+        }
+    }
+
+    private static final class Equal extends Value {
+        private final Value left;
+        private final Value right;
+        // For !=
+        private final boolean negated;
+
+        Equal(Value left, Value right, boolean negated) {
+            this.left = left;
+            this.right = right;
+            this.negated = negated;
+        }
+
+        @Override
+        Object eval(Interpreter interpreter, Environment env) {
+            Object a = left.eval(interpreter, env);
+            return Interpreter.isEqual(a, right.eval(interpreter, env)) != negated;
+        }
+    }
+
+    private static final class And extends Value {
+        private final Value left;
+        private final Value right;
+
+        And(Value left, Value right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object eval(Interpreter interpreter, Environment env) {
+            Object a = left.eval(interpreter, env);
+            if (!Interpreter.isTruthy(a)) return a;
+            return right.eval(interpreter, env);
+        }
+    }
+
+    private static final class Or extends Value {
+        private final Value left;
+        private final Value right;
+
+        Or(Value left, Value right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object eval(Interpreter interpreter, Environment env) {
+            Object a = left.eval(interpreter, env);
+            if (Interpreter.isTruthy(a)) return a;
+            return right.eval(interpreter, env);
+        }
+    }
+
+    private static final class Not extends Value {
+        private final Value right;
+
+        Not(Value right) {
+            this.right = right;
+        }
+
+        @Override
+        Object eval(Interpreter interpreter, Environment env) {
+            return !Interpreter.isTruthy(right.eval(interpreter, env));
+        }
+    }
+
+    private static final class Negate extends Value {
+        private final Token operator;
+        private final Value right;
+
+        Negate(Token operator, Value right) {
+            this.operator = operator;
+            this.right = right;
+        }
+
+        @Override
+        Object eval(Interpreter interpreter, Environment env) {
+            Object a = right.eval(interpreter, env);
+            Interpreter.checkNumberOperand(operator, a);
+            return interpreter.number(-(double) a);
+        }
+    }
+
+    private static final class Call extends Value {
+        private final Value callee;
+        private final Value[] arguments;
+        private final Token paren;
+
+        Call(Value callee, Value[] arguments, Token paren) {
+            this.callee = callee;
+            this.arguments = arguments;
+            this.paren = paren;
+        }
+
+        @Override
+        Object eval(Interpreter interpreter, Environment env) {
+            Object function = callee.eval(interpreter, env);
+            if (function instanceof NativeFunction) {
+                NativeFunction direct = (NativeFunction) function;
+                if (direct.isDirect() && direct.arity() == arguments.length) {
+                    return callNative(interpreter, env, direct);
+                }
+            }
+
+            interpreter.count(Allocations.Kind.ARGUMENTS);
+            Object[] values = new Object[arguments.length];
+            for (int i = 0; i < values.length; i++) values[i] = arguments[i].eval(interpreter, env);
+            return interpreter.call(function, Arrays.asList(values), paren);
+        }
+
+        // Passes the arguments straight to the native, like the Interpreter's callNative
+        private Object callNative(Interpreter interpreter, Environment env, NativeFunction function) {
+            try {
+                switch (arguments.length) {
+                    case 0:
+                        return function.invoke(interpreter);
+                    case 1:
+                        return function.invoke(interpreter, arguments[0].eval(interpreter, env));
+                    case 2: {
+                        Object a = arguments[0].eval(interpreter, env);
+                        return function.invoke(interpreter, a, arguments[1].eval(interpreter, env));
+                    }
+                    default: {
+                        Object a = arguments[0].eval(interpreter, env);
+                        Object b = arguments[1].eval(interpreter, env);
+                        return function.invoke(interpreter, a, b, arguments[2].eval(interpreter, env));
+                    }
+                }
+            } catch (RuntimeError error) {
+                if (error.token != null) throw error;
+                throw error.at(paren);
+            }
+        }
+    }
+
+    private static final class Get extends Value {
+        private final Value object;
+        private final Token name;
+
+        Get(Value object, Token name) {
+            this.object = object;
+            this.name = name;
+        }
+
+        @Override
+        Object eval(Interpreter interpreter, Environment env) {
+            return interpreter.getProperty(object.eval(interpreter, env), name);
+        }
+    }
+
+    private static final class Set extends Value {
+        private final Value object;
+        private final Token name;
+        private final Value value;
+
+        Set(Value object, Token name, Value value) {
+            this.object = object;
+            this.name = name;
+            this.value = value;
+        }
+
+        @Override
+        Object eval(Interpreter interpreter, Environment env) {
+            Object instance = object.eval(interpreter, env);
+            if (!(instance instanceof LoxInstance)) {
+                throw new RuntimeError(name, "Only instances have fields");
+            }
+
+            Object result = value.eval(interpreter, env);
+            if (((LoxInstance) instance).set(name, result)) interpreter.charge(Footprint.ENTRY, name);
+            return result;
+        }
+    }
+
+    private static final class Super extends Value {
+        private final int distance;
+        private final Token method;
+
+        Super(int distance, Token method) {
+            this.distance = distance;
+            this.method = method;
+        }
+
+        @Override
+        Object eval(Interpreter interpreter, Environment env) {
+            return interpreter.superMethod(env, distance, method);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package craftinginterpreters.lox;
+
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of running the front end over a source text once. Nothing in it changes after compile returns,
+ * so one CompiledProgram can be run any number of times, by any number of threads at once, each run getting
+ * its own Interpreter. Get one from LoxEngine.compile.
+ */
+public final class CompiledProgram {
+    final String source;
+    final List<Stmt> statements;
+    final Resolution resolution;
+    final ErrorReporter.Buffered errors;
+    // Makes the fresh globals for run()
+    private final LoxEngine engine;
+
+    private CompiledProgram(String source, List<Stmt> statements, Resolution resolution,
+                            ErrorReporter.Buffered errors, LoxEngine engine) {
+        this.source = source;
+        this.statements = statements;
+        this.resolution = resolution;
+        this.errors = errors;
+        this.engine = engine;
+    }
+
+    static CompiledProgram compile(String source) {
+        return compile(source, new LoxEngine());
+    }
+
+    /**
+     * Scans, parses and resolves the source. The errors, if any, are kept in the program.
+     */
+    static CompiledProgram compile(String source, LoxEngine engine) {
+        ErrorReporter.Buffered errors = new ErrorReporter.Buffered();
+        Resolution resolution = new Resolution();
+        InterpreterMetrics metrics = engine.metrics();
+        List<Stmt> statements = FrontEnd.pipelines(source)
+                ? FrontEnd.compilePipelined(source, resolution, errors, metrics)
+                : FrontEnd.compile(source, resolution, errors, metrics);
+
+        // Read only from here on, Interpreters share these tables
+        Resolution frozen = new Resolution(Collections.unmodifiableMap(resolution.locals),
+                Collections.unmodifiableMap(resolution.layouts));
+        return new CompiledProgram(source, Collections.unmodifiableList(statements), frozen, errors, engine);
+    }
+
+    boolean hadError() {
+        return errors.hadError;
+    }
+
+    /**
+     * Runs the program in fresh globals
+     * @return The globals the program left behind
+     * @throws LoxRuntimeException If the program stopped with a runtime error
+     */
+    public LoxGlobals run() {
+        return run(engine.newGlobals());
+    }
+
+    /**
+     * Runs the program in the given globals, which may hold values set from Java or left behind by earlier
+     * runs. A LoxGlobals must not be used by two runs at once.
+     * @return The same globals
+     * @throws LoxRuntimeException If the program stopped with a runtime error
+     */
+    public LoxGlobals run(LoxGlobals globals) {
+        ErrorReporter.Captured reporter = new ErrorReporter.Captured();
+        globals.ran(this);
+        Interpreter interpreter = new Interpreter(resolution, globals.environment, reporter, new Output(globals.out));
+        interpreter.metrics = globals.metrics;
+        ExecutionLimits.Budget budget = globals.limits.start();
+        interpreter.limit(budget);
+        interpreter.interpret(statements);
+        if (globals.metrics != null && budget.hasAllocationLimit()) {
+            globals.metrics.executionAllocated(budget.allocatedBytes());
+        }
+        reporter.rethrow();
+        return globals;
+    }
+
+    /**
+     * Runs the program in a fresh Interpreter
+     * @param reporter Receives the runtime error, if any
+     * @param out Where print statements go
+     * @return The Interpreter the program ran in, holding the globals it left behind
+     */
+    Interpreter run(ErrorReporter reporter, PrintStream out) {
+        if (hadError()) throw new IllegalStateException("Program has compile errors");
+
+        Interpreter interpreter = new Interpreter(resolution, reporter, new Output(out));
+        interpreter.interpret(statements);
+        return interpreter;
+    }
+}
@@ -0,0 +1,371 @@
+package craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Execution counts per statement and expression, collected by CoverageInterpreter, and the reports made
+ * from them: line and branch coverage in lcov's tracefile format, which genhtml and most CI tools read, and
+ * the lines that ran the most nodes.
+ *
+ * Only the script's own thread is counted, not the tasks it spawns. Nodes get the line of their first
+ * token, or of the token before them if they have none.
+ */
+final class Coverage {
+    // Executions per node, and per function body for calls, by identity
+    private final Map<Object, long[]> counts = new IdentityHashMap<>();
+    private final List<Program> programs = new ArrayList<>();
+
+    void count(Object node) {
+        long[] count = counts.get(node);
+        if (count == null) {
+            count = new long[1];
+            counts.put(node, count);
+        }
+        count[0]++;
+    }
+
+    // Registers a program about to run, so its lines show up in the reports even if none of them run
+    void add(String path, List<Stmt> statements) {
+        programs.add(new Program(path, statements));
+    }
+
+    private long countOf(Object node) {
+        long[] count = node == null ? null : counts.get(node);
+        return count == null ? 0 : count[0];
+    }
+
+    /**
+     * Writes an lcov tracefile: per program the functions with their calls, every line holding a statement
+     * with how often the statement ran, and both sides of every if, while, and and or.
+     */
+    void writeLcov(Path file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            for (Program program : programs) {
+                Nodes nodes = program.nodes();
+                out.println("TN:");
+                out.println("SF:" + Paths.get(program.path).toAbsolutePath());
+
+                int functionsHit = 0;
+                for (Stmt.Function function : nodes.functions) {
+                    out.println("FN:" + function.name.line() + "," + function.name.lexeme);
+                }
+                for (Stmt.Function function : nodes.functions) {
+                    long calls = countOf(function.body);
+                    if (calls > 0) functionsHit++;
+                    out.println("FNDA:" + calls + "," + function.name.lexeme);
+                }
+                out.println("FNF:" + nodes.functions.size());
+                out.println("FNH:" + functionsHit);
+
+                int branches = 0;
+                int branchesHit = 0;
+                for (int i = 0; i < nodes.branches.size(); i++) {
+                    Object node = nodes.branches.get(i);
+                    long reached = countOf(node);
+                    long[] taken = taken(node);
+                    for (int branch = 0; branch < taken.length; branch++) {
+                        branches++;
+                        if (taken[branch] > 0) branchesHit++;
+                        out.println("BRDA:" + nodes.lines.get(node) + "," + i + "," + branch + ","
+                                + (reached == 0 ? "-" : Long.toString(taken[branch])));
+                    }
+                }
+                out.println("BRF:" + branches);
+                out.println("BRH:" + branchesHit);
+
+                // A line ran as often as the statement on it that ran the most
+                Map<Integer, Long> lines = new TreeMap<>();
+                for (Stmt statement : nodes.statements) {
+                    lines.merge(nodes.lines.get(statement), countOf(statement), Math::max);
+                }
+                int linesHit = 0;
+                for (Map.Entry<Integer, Long> line : lines.entrySet()) {
+                    if (line.getValue() > 0) linesHit++;
+                    out.println("DA:" + line.getKey() + "," + line.getValue());
+                }
+                out.println("LF:" + lines.size());
+                out.println("LH:" + linesHit);
+                out.println("end_of_record");
+            }
+        }
+    }
+
+    // How often each way out of a branching node was taken
+    private long[] taken(Object node) {
+        long reached = countOf(node);
+        if (node instanceof Stmt.If) {
+            Stmt.If stmt = (Stmt.If) node;
+            long then = countOf(stmt.thenBranch);
+            return new long[] {then, stmt.elseBranch == null ? reached - then : countOf(stmt.elseBranch)};
+        }
+        if (node instanceof Stmt.While) {
+            // Into the body, and out of the loop once for every time the loop was reached
+            return new long[] {countOf(((Stmt.While) node).body), reached};
+        }
+        // The right operand, and the short circuit
+        long right = countOf(((Expr.Logical) node).right);
+        return new long[] {right, reached - right};
+    }
+
+    /**
+     * Prints the lines that ran the most statements and expressions, with their source
+     */
+    void reportHotLines(PrintStream out, int limit) {
+        List<Object[]> rows = new ArrayList<>();
+        for (Program program : programs) {
+            Map<Integer, Long> lines = new TreeMap<>();
+            for (Map.Entry<Object, Integer> node : program.nodes().lines.entrySet()) {
+                long count = countOf(node.getKey());
+                if (count > 0) lines.merge(node.getValue(), count, Long::sum);
+            }
+            for (Map.Entry<Integer, Long> line : lines.entrySet()) {
+                rows.add(new Object[] {program, line.getKey(), line.getValue()});
+            }
+        }
+        rows.sort((a, b) -> Long.compare((long) b[2], (long) a[2]));
+
+        out.printf("%14s  %s%n", "node runs", "line");
+        for (Object[] row : rows.subList(0, Math.min(limit, rows.size()))) {
+            Program program = (Program) row[0];
+            int line = (int) row[1];
+            out.printf("%14d  %s:%d  %s%n", (long) row[2], program.path, line, program.sourceLine(line));
+        }
+    }
+
+    // The line a statement starts on, for errors at statements that hold no token
+    static int line(Stmt statement) {
+        return new Nodes().stmt(statement);
+    }
+
+    private static final class Program {
+        final String path;
+        final List<Stmt> statements;
+        private Nodes nodes;
+        private List<String> source;
+
+        Program(String path, List<Stmt> statements) {
+            this.path = path;
+            this.statements = statements;
+        }
+
+        // Walked when a report needs it, not while the program runs
+        Nodes nodes() {
+            if (nodes == null) {
+                nodes = new Nodes();
+                for (Stmt statement : statements) nodes.stmt(statement);
+            }
+            return nodes;
+        }
+
+        String sourceLine(int line) {
+            if (source == null) {
+                try {
+                    source = Files.readAllLines(Paths.get(path), Charset.defaultCharset());
+                } catch (IOException e) {
+                    source = List.of();
+                }
+            }
+            if (line < 1 || line > source.size()) return "";
+            String text = source.get(line - 1).trim();
+            return text.length() > 60 ? text.substring(0, 57) + "..." : text;
+        }
+    }
+
+    /**
+     * Gives every node a line and collects the nodes the lcov report lists. Visits children in source order,
+     * so lastLine is the line of the token before a node that has none.
+     */
+    private static final class Nodes implements Expr.Visitor<Integer>, Stmt.Visitor<Integer> {
+        final Map<Object, Integer> lines = new IdentityHashMap<>();
+        // Every statement but blocks, which aren't lines of their own
+        final List<Stmt> statements = new ArrayList<>();
+        final List<Stmt.Function> functions = new ArrayList<>();
+        // Ifs, whiles and logical operators
+        final List<Object> branches = new ArrayList<>();
+        private int lastLine = 1;
+
+        int expr(Expr expr) {
+            return expr == null ? 0 : expr.accept(this);
+        }
+
+        int stmt(Stmt stmt) {
+            return stmt == null ? 0 : stmt.accept(this);
+        }
+
+        private int at(int line) {
+            lastLine = line;
+            return line;
+        }
+
+        private int put(Object node, int line) {
+            if (line == 0) line = lastLine;
+            lines.put(node, line);
+            return line;
+        }
+
+        @Override
+        public Integer visitAssignExpr(Expr.Assign expr) {
+            int line = at(expr.name.line());
+            expr(expr.value);
+            return put(expr, line);
+        }
+
+        @Override
+        public Integer visitBinaryExpr(Expr.Binary expr) {
+            int line = expr(expr.left);
+            at(expr.operator.line());
+            expr(expr.right);
+            return put(expr, line);
+        }
+
+        @Override
+        public Integer visitCallExpr(Expr.Call expr) {
+            int line = expr(expr.callee);
+            for (Expr argument : expr.arguments) expr(argument);
+            return put(expr, line);
+        }
+
+        @Override
+        public Integer visitGetExpr(Expr.Get expr) {
+            int line = expr(expr.object);
+            at(expr.name.line());
+            return put(expr, line);
+        }
+
+        @Override
+        public Integer visitGroupingExpr(Expr.Grouping expr) {
+            return put(expr, expr(expr.expression));
+        }
+
+        @Override
+        public Integer visitLiteralExpr(Expr.Literal expr) {
+            // Line 0 is a literal the parser made up, the missing condition of a for loop
+            return put(expr, expr.line == 0 ? lastLine : at(expr.line));
+        }
+
+        @Override
+        public Integer visitLogicalExpr(Expr.Logical expr) {
+            int line = expr(expr.left);
+            at(expr.operator.line());
+            expr(expr.right);
+            branches.add(expr);
+            return put(expr, line);
+        }
+
+        @Override
+        public Integer visitSetExpr(Expr.Set expr) {
+            int line = expr(expr.object);
+            at(expr.name.line());
+            expr(expr.value);
+            return put(expr, line);
+        }
+
+        @Override
+        public Integer visitSuperExpr(Expr.Super expr) {
+            return put(expr, at(expr.keyword.line()));
+        }
+
+        @Override
+        public Integer visitThisExpr(Expr.This expr) {
+            return put(expr, at(expr.keyword.line()));
+        }
+
+        @Override
+        public Integer visitUnaryExpr(Expr.Unary expr) {
+            int line = at(expr.operator.line());
+            expr(expr.right);
+            return put(expr, line);
+        }
+
+        @Override
+        public Integer visitVariableExpr(Expr.Variable expr) {
+            return put(expr, at(expr.name.line()));
+        }
+
+        @Override
+        public Integer visitBlockStmt(Stmt.Block stmt) {
+            int line = 0;
+            for (Stmt statement : stmt.statements) {
+                int first = stmt(statement);
+                if (line == 0) line = first;
+            }
+            return put(stmt, line);
+        }
+
+        @Override
+        public Integer visitClassStmt(Stmt.Class stmt) {
+            int line = at(stmt.name.line());
+            expr(stmt.superclass);
+            for (Stmt.Function method : stmt.methods) stmt(method);
+            statements.add(stmt);
+            return put(stmt, line);
+        }
+
+        @Override
+        public Integer visitExpressionStmt(Stmt.Expression stmt) {
+            statements.add(stmt);
+            return put(stmt, expr(stmt.expression));
+        }
+
+        @Override
+        public Integer visitFunctionStmt(Stmt.Function stmt) {
+            int line = at(stmt.name.line());
+            for (Stmt statement : stmt.body) stmt(statement);
+            statements.add(stmt);
+            functions.add(stmt);
+            return put(stmt, line);
+        }
+
+        @Override
+        public Integer visitIfStmt(Stmt.If stmt) {
+            int line = put(stmt, expr(stmt.condition));
+            stmt(stmt.thenBranch);
+            stmt(stmt.elseBranch);
+            statements.add(stmt);
+            branches.add(stmt);
+            return line;
+        }
+
+        @Override
+        public Integer visitPrintStmt(Stmt.Print stmt) {
+            statements.add(stmt);
+            return put(stmt, expr(stmt.expression));
+        }
+
+        @Override
+        public Integer visitReturnStmt(Stmt.Return stmt) {
+            int line = at(stmt.keyword.line());
+            expr(stmt.value);
+            statements.add(stmt);
+            return put(stmt, line);
+        }
+
+        @Override
+        public Integer visitVarStmt(Stmt.Var stmt) {
+            int line = at(stmt.name.line());
+            expr(stmt.initializer);
+            statements.add(stmt);
+            return put(stmt, line);
+        }
+
+        @Override
+        public Integer visitWhileStmt(Stmt.While stmt) {
+            int line = put(stmt, expr(stmt.condition));
+            stmt(stmt.body);
+            statements.add(stmt);
+            branches.add(stmt);
+            return line;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package craftinginterpreters.lox;
+
+import java.util.List;
+
+/**
+ * An Interpreter that counts how often every statement and expression runs, see Lox --coverage. It is only
+ * loaded when coverage is asked for, so the plain Interpreter's execute and evaluate stay monomorphic.
+ */
+final class CoverageInterpreter extends Interpreter {
+    private final Coverage coverage;
+
+    CoverageInterpreter(Coverage coverage) {
+        this.coverage = coverage;
+        // Compiled code would run past the counts
+        this.callThreshold = Long.MAX_VALUE;
+        this.loopThreshold = Long.MAX_VALUE;
+    }
+
+    @Override
+    void execute(Stmt statement) {
+        coverage.count(statement);
+        super.execute(statement);
+    }
+
+    @Override
+    Object evaluate(Expr expr) {
+        coverage.count(expr);
+        return super.evaluate(expr);
+    }
+
+    // Counted by the statement list, which for a function body is how often the function was called
+    @Override
+    public void executeBlock(List<Stmt> statements, Environment env) {
+        coverage.count(statements);
+        super.executeBlock(statements, env);
+    }
+}
@@ -0,0 +1,373 @@
+package craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Source text that stays scanned, parsed and resolved while it is edited, for editor and language server
+ * integrations. Every top level declaration keeps its own tokens, statement, resolved locals and errors,
+ * and an edit only rescans and reparses the declarations it touches. Everything else is reused.
+ *
+ * Top level names are globals, which the resolver leaves to the runtime, so a top level declaration
+ * resolves the same no matter what is around it. The one difference from parsing the whole file again is
+ * error recovery: a declaration with a syntax error can't swallow the declarations after it.
+ *
+ * A declaration that only moves, because lines were inserted or removed above it, keeps its tokens,
+ * statement and resolution as they are. Its tokens report the lines they moved to.
+ */
+public class Document {
+    private String source;
+    private List<Declaration> declarations = new ArrayList<>();
+    // Scanner errors of the last full parse. While there are any, every edit reparses the whole document.
+    private ErrorReporter.Buffered scanErrors;
+    private int lastReparsed = 0;
+    // The line the text ends on, where the EOF token of every window goes, as in a full scan
+    private int lineCount;
+
+    public Document(String source) {
+        this.source = source;
+        rebuild();
+    }
+
+    public String text() {
+        return source;
+    }
+
+    public int declarationCount() {
+        return declarations.size();
+    }
+
+    // How many declarations the last edit scanned and parsed again
+    public int lastReparsed() {
+        return lastReparsed;
+    }
+
+    /**
+     * Applies an edit and brings tokens, statements and resolution up to date.
+     * @param offset Where the edit starts
+     * @param removed How many characters were removed at offset
+     * @param inserted The text inserted in their place
+     */
+    public void edit(int offset, int removed, String inserted) {
+        if (offset < 0 || removed < 0 || offset + removed > source.length()) {
+            throw new IndexOutOfBoundsException("Edit " + offset + "+" + removed + " outside of the document");
+        }
+
+        String removedText = source.substring(offset, offset + removed);
+        source = source.substring(0, offset) + inserted + source.substring(offset + removed);
+
+        if (scanErrors != null) {
+            rebuild();
+            return;
+        }
+
+        int delta = inserted.length() - removed;
+        int lineDelta = countLines(inserted) - countLines(removedText);
+        lineCount += lineDelta;
+
+        // The declarations overlapping the edit, first..last (empty if the edit only touched the space
+        // between two declarations). Positions are in the old text until the window has been found.
+        int first = firstEndingAtOrAfter(offset);
+        int last = lastStartingAtOrBefore(offset + removed);
+
+        // The window has to start where the scanner would be in a clean state: at a declaration or right
+        // after the one before it (never inside a comment)
+        int windowStart;
+        if (first < declarations.size() && declarations.get(first).start <= offset) {
+            windowStart = declarations.get(first).start;
+        } else {
+            windowStart = first > 0 ? declarations.get(first - 1).end : 0;
+        }
+
+        // A declaration that failed to parse ends wherever error recovery found a keyword, and that keyword
+        // may be what this edit changes
+        if (first > 0 && declarations.get(first - 1).parseErrors.hadError) {
+            first--;
+            windowStart = declarations.get(first).start;
+        }
+
+        int windowEnd = Math.max(offset + removed, last >= first ? declarations.get(last).end : 0);
+        List<Declaration> reparsed;
+        int growth = 1;
+        while (true) {
+            // End the window at the end of a line, so a // comment typed into it ends inside it as well. That may
+            // pull in more declarations starting on that line, and those may end on another line, and so on.
+            while (true) {
+                int lineEnd = source.indexOf('\n', windowEnd + delta);
+                windowEnd = (lineEnd == -1 ? source.length() : lineEnd + 1) - delta;
+
+                if (last + 1 >= declarations.size() || declarations.get(last + 1).start >= windowEnd) break;
+                last++;
+                windowEnd = Math.max(windowEnd, declarations.get(last).end);
+            }
+
+            ErrorReporter.Buffered windowErrors = new ErrorReporter.Buffered();
+            reparsed = parse(windowStart, windowEnd + delta, lineAt(first, windowStart), windowErrors);
+            if (windowErrors.hadError) {
+                // An unterminated string can reach into any declaration below, only a full parse is safe
+                rebuild();
+                return;
+            }
+
+            // An 'else' at the start of the window belongs to an if statement before it
+            if (first > 0 && !reparsed.isEmpty() && reparsed.get(0).tokens.get(0).type == TokenType.ELSE) {
+                first--;
+                windowStart = declarations.get(first).start;
+                continue;
+            }
+
+            // The parser would have carried on into the next declaration: to recover from an error, or to look
+            // for the 'else' of an if statement. An unclosed brace can swallow the rest of the document, so the
+            // window grows geometrically to keep that linear.
+            if (last + 1 < declarations.size()) {
+                boolean recovering = !reparsed.isEmpty() && reparsed.get(reparsed.size() - 1).parseErrors.hadError;
+                if (recovering || declarations.get(last + 1).tokens.get(0).type == TokenType.ELSE) {
+                    for (int i = 0; i < growth && last + 1 < declarations.size(); i++) {
+                        last++;
+                        windowEnd = Math.max(windowEnd, declarations.get(last).end);
+                    }
+                    growth *= 2;
+                    continue;
+                }
+            }
+
+            break;
+        }
+
+        // Everything below the window is reused, it only moves
+        for (int i = last + 1; i < declarations.size(); i++) {
+            declarations.get(i).move(delta, lineDelta);
+        }
+
+        List<Declaration> updated = new ArrayList<>(declarations.size() - (last - first + 1) + reparsed.size());
+        updated.addAll(declarations.subList(0, first));
+        updated.addAll(reparsed);
+        updated.addAll(declarations.subList(last + 1, declarations.size()));
+        declarations = updated;
+        lastReparsed = reparsed.size();
+    }
+
+    public boolean hadError() {
+        if (scanErrors != null) return true;
+        for (Declaration declaration : declarations) {
+            if (declaration.parseErrors.hadError || declaration.resolveErrors.hadError) return true;
+        }
+        return false;
+    }
+
+    /**
+     * The errors in the document, in the order the regular front end would print them.
+     */
+    public List<Diagnostic> diagnostics() {
+        List<Diagnostic> diagnostics = new ArrayList<>();
+        reportErrors(new ErrorReporter() {
+            @Override
+            void report(int line, String where, String message) {
+                diagnostics.add(new Diagnostic(line, format(line, where, message)));
+                hadError = true;
+            }
+        });
+        return diagnostics;
+    }
+
+    /**
+     * Reports the errors in the same order and under the same rules as the regular front end: scanner errors,
+     * then parser errors, then, only if there were none of those, resolver errors.
+     */
+    void reportErrors(ErrorReporter reporter) {
+        if (scanErrors != null) scanErrors.replay(reporter);
+
+        boolean parseFailed = scanErrors != null;
+        for (Declaration declaration : declarations) {
+            declaration.parseErrors.replay(reporter);
+            parseFailed |= declaration.parseErrors.hadError;
+        }
+        if (parseFailed) return;
+
+        for (Declaration declaration : declarations) {
+            declaration.resolveErrors.replay(reporter);
+        }
+    }
+
+    List<Stmt> statements() {
+        List<Stmt> statements = new ArrayList<>(declarations.size());
+        for (Declaration declaration : declarations) {
+            statements.add(declaration.stmt);
+        }
+        return statements;
+    }
+
+    // Runs the document with the given interpreter. Only valid if there are no errors.
+    public void execute(Interpreter interpreter) {
+        List<Stmt> statements = statements();
+        for (Declaration declaration : declarations) {
+            interpreter.resolve(declaration.resolution);
+        }
+        interpreter.interpret(statements);
+    }
+
+    private void rebuild() {
+        ErrorReporter.Buffered errors = new ErrorReporter.Buffered();
+        lineCount = 1 + countLines(source);
+        declarations = parse(0, source.length(), 1, errors);
+        scanErrors = errors.hadError ? errors : null;
+        lastReparsed = declarations.size();
+    }
+
+    // Scans, parses and resolves the given part of the text as a sequence of top level declarations
+    private List<Declaration> parse(int start, int end, int line, ErrorReporter scanReporter) {
+        Scanner scanner = new Scanner(source, start, end, line, scanReporter);
+        List<Token> tokens = new ArrayList<>();
+        scanner.scanTokens(token -> tokens.add(new Moving(token)));
+        // The window ends before the text does, but an error at its end has to be reported where the text ends
+        tokens.set(tokens.size() - 1, new Token(TokenType.EOF, "", null, lineCount));
+
+        Redirect parseReporter = new Redirect();
+        Parser parser = new Parser(tokens, parseReporter);
+
+        List<Declaration> parsed = new ArrayList<>();
+        while (!parser.atEnd()) {
+            Declaration declaration = new Declaration();
+            parseReporter.target = declaration.parseErrors;
+
+            int from = parser.position();
+            declaration.stmt = parser.nextDeclaration();
+            int to = parser.position();
+
+            Token lastToken = tokens.get(to - 1);
+            declaration.tokens = new ArrayList<>(tokens.subList(from, to));
+            for (Token token : declaration.tokens) {
+                ((Moving) token).declaration = declaration;
+            }
+            declaration.start = scanner.offsetOf(from);
+            declaration.end = scanner.offsetOf(to - 1) + lastToken.lexeme.length();
+            declaration.endLine = lastToken.line();
+
+            if (!declaration.parseErrors.hadError) {
+                new Resolver(declaration.resolution, declaration.resolveErrors).resolve(declaration.stmt);
+            }
+            parsed.add(declaration);
+        }
+
+        return parsed;
+    }
+
+    // The line the given offset is on, counting from the end of the declaration before it
+    private int lineAt(int declaration, int offset) {
+        if (declaration == 0) return 1 + countLines(source, 0, offset);
+
+        Declaration previous = declarations.get(declaration - 1);
+        return previous.endLine + countLines(source, previous.end, offset);
+    }
+
+    private int firstEndingAtOrAfter(int offset) {
+        int low = 0;
+        int high = declarations.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (declarations.get(mid).end < offset) low = mid + 1;
+            else high = mid;
+        }
+        return low;
+    }
+
+    private int lastStartingAtOrBefore(int offset) {
+        int low = 0;
+        int high = declarations.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (declarations.get(mid).start <= offset) low = mid + 1;
+            else high = mid;
+        }
+        return low - 1;
+    }
+
+    private static int countLines(String text) {
+        return countLines(text, 0, text.length());
+    }
+
+    private static int countLines(String text, int from, int to) {
+        int lines = 0;
+        for (int i = from; i < to; i++) {
+            if (text.charAt(i) == '\n') lines++;
+        }
+        return lines;
+    }
+
+    private static class Declaration {
+        // Character offsets of the first token and just past the last one
+        int start;
+        int end;
+        // The line the last token ends on
+        int endLine;
+        List<Token> tokens;
+        Stmt stmt;
+        final Resolution resolution = new Resolution();
+        final ErrorReporter.Buffered parseErrors = new ErrorReporter.Buffered();
+        final ErrorReporter.Buffered resolveErrors = new ErrorReporter.Buffered();
+        // Lines the declaration moved by since its tokens were scanned
+        int lineShift = 0;
+
+        void move(int delta, int lineDelta) {
+            start += delta;
+            end += delta;
+            if (lineDelta == 0) return;
+
+            endLine += lineDelta;
+            lineShift += lineDelta;
+            parseErrors.moveLines(lineDelta);
+            resolveErrors.moveLines(lineDelta);
+        }
+    }
+
+    // A token of a declaration, on the line it was scanned on plus however far the declaration moved since
+    private static final class Moving extends Token {
+        Declaration declaration;
+
+        Moving(Token token) {
+            super(token.type, token.lexeme, token.literal, token.line());
+        }
+
+        @Override
+        int line() {
+            return declaration == null ? super.line() : super.line() + declaration.lineShift;
+        }
+    }
+
+    /**
+     * An error in the document: the line it is on and the message the front end prints for it.
+     */
+    public static final class Diagnostic {
+        private final int line;
+        private final String message;
+
+        Diagnostic(int line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        public int line() {
+            return line;
+        }
+
+        public String message() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return message;
+        }
+    }
+
+    // Sends the parser's errors to whichever declaration is being parsed
+    private static class Redirect extends ErrorReporter {
+        ErrorReporter target;
+
+        @Override
+        void report(int line, String where, String message) {
+            target.report(line, where, message);
+            hadError = true;
+        }
+    }
+}
@@ -2,29 +2,106 @@ package craftinginterpreters.lox;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
 
 public class Environment {
+    // Stands in for nil in the values, concurrent maps can't hold null
+    private static final Object NIL = new Object();
+
     final Environment enclosing;
-    private final Map<String, Object> values = new HashMap<>();
+    private final Map<String, Object> values;
+    // Only set for globals restored from a snapshot. Reads fall through to it, writes go to values, so the
+    // snapshot itself is never copied or changed.
+    private final Map<String, Object> base;
+    // Set for the scopes captured by closures a LoxPool's prelude made, which every pooled request shares
+    boolean frozen = false;
 
     public Environment() {
-        enclosing = null;
+        this(null, new HashMap<>(), null);
     }
 
-    Environment(Environment enclosing) {
+    // For globals, which every task a script spawns reads and writes
+    static Environment concurrent() {
+        return new Environment(null, new ConcurrentHashMap<>(), null);
+    }
+
+    // Globals that start out as the given snapshot, copy on write
+    static Environment fromSnapshot(Map<String, Object> snapshot) {
+        return new Environment(null, new ConcurrentHashMap<>(), snapshot);
+    }
+
+    private Environment(Environment enclosing, Map<String, Object> values, Map<String, Object> base) {
         this.enclosing = enclosing;
+        this.values = values;
+        this.base = base;
+    }
+
+    Environment(Environment enclosing) {
+        this(enclosing, new HashMap<>(), null);
+    }
+
+    // Sized up front for the variables the Resolver found in the scope, so defining them never rehashes
+    Environment(Environment enclosing, ScopeLayout layout) {
+        this(enclosing, layout == null ? new HashMap<>() : new HashMap<>(layout.capacity()), null);
     }
 
     void define(String name, Object value) {
-        values.put(name, value);
+        values.put(name, wrap(value));
+    }
+
+    boolean contains(String name) {
+        return values.containsKey(name) || (base != null && base.containsKey(name));
+    }
+
+    // The value of a variable defined in this environment itself
+    Object lookup(String name) {
+        return unwrap(read(name));
+    }
+
+    // Everything defined here, for fromSnapshot. Values are shared, not copied.
+    Map<String, Object> snapshot() {
+        if (base == null) return Map.copyOf(values);
+
+        Map<String, Object> all = new HashMap<>(base);
+        all.putAll(values);
+        return Map.copyOf(all);
+    }
+
+    // Every variable defined here, see HeapSnapshot
+    void forEach(BiConsumer<String, Object> action) {
+        if (base != null) {
+            base.forEach((name, value) -> {
+                if (!values.containsKey(name)) action.accept(name, unwrap(value));
+            });
+        }
+        values.forEach((name, value) -> action.accept(name, unwrap(value)));
+    }
+
+    // How many variables are defined here
+    int size() {
+        if (base == null) return values.size();
+
+        int size = values.size();
+        for (String name : base.keySet()) {
+            if (!values.containsKey(name)) size++;
+        }
+        return size;
+    }
+
+    // Drops every write made since the environment was restored from its snapshot
+    void reset() {
+        values.clear();
     }
 
     public Object getAt(int distance, String name) {
-        return ancestor(distance).values.get(name);
+        return unwrap(ancestor(distance).values.get(name));
     }
 
     public void assignAt(int distance, Token name, Object value) {
-        ancestor(distance).values.put(name.lexeme, value);
+        Environment environment = ancestor(distance);
+        if (environment.frozen) throw new RuntimeError(name, LoxPool.FROZEN);
+        environment.values.put(name.lexeme, wrap(value));
     }
 
     public Environment ancestor(int distance) {
@@ -37,9 +114,8 @@ public class Environment {
     }
 
     public Object get(Token name) {
-        if (values.containsKey(name.lexeme)) {
-            return values.get(name.lexeme);
-        }
+        Object value = read(name.lexeme);
+        if (value != null) return unwrap(value);
 
         if (enclosing != null) return this.enclosing.get(name);
 
@@ -47,8 +123,9 @@ public class Environment {
     }
 
     public void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme)) {
-            values.put(name.lexeme, value);
+        if (contains(name.lexeme)) {
+            if (frozen) throw new RuntimeError(name, LoxPool.FROZEN);
+            values.put(name.lexeme, wrap(value));
             return;
         }
 
@@ -59,4 +136,18 @@ public class Environment {
 
         throw new RuntimeError(name, "Undefined variable " + name.lexeme + "'.");
     }
+
+    private Object read(String name) {
+        Object value = values.get(name);
+        if (value == null && base != null) value = base.get(name);
+        return value;
+    }
+
+    private static Object wrap(Object value) {
+        return value == null ? NIL : value;
+    }
+
+    private static Object unwrap(Object value) {
+        return value == NIL ? null : value;
+    }
 }
@@ -0,0 +1,129 @@
+package craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reports the static errors (scanning, parsing and resolution) found in a program, and the runtime error
+ * that stopped it, if any. The base class prints every error to stderr as soon as it is found.
+ * Every script running concurrently gets its own reporter, so the flags only ever describe one script.
+ */
+class ErrorReporter {
+    boolean hadError = false;
+    // Spawned tasks report their runtime errors from their own threads
+    volatile boolean hadRuntimeError = false;
+    // Set when several files are loaded at once, so errors say which file they come from
+    private final String file;
+
+    ErrorReporter() {
+        this(null);
+    }
+
+    ErrorReporter(String file) {
+        this.file = file;
+    }
+
+    void error(int lineNumber, String message) {
+        report(lineNumber, "", message);
+    }
+
+    void error(Token token, String message) {
+        if (token.type == TokenType.EOF) {
+            report(token.line(), " at end", message);
+        } else {
+            report(token.line(), " at '" + token.lexeme + "'", message);
+        }
+    }
+
+    void report(int line, String where, String message) {
+        System.err.println(format(line, where, message));
+        hadError = true;
+    }
+
+    // Errors from natives called from Java have no token, and no line to print
+    void runtimeError(RuntimeError error) {
+        if (error.token == null) {
+            System.err.println(error.getMessage());
+        } else {
+            System.err.println(error.getMessage() + "\n[" + location(error.token.line()) + "]");
+        }
+        hadRuntimeError = true;
+    }
+
+    String format(int line, String where, String message) {
+        return "[" + location(line) + "] Error" + where + ": " + message;
+    }
+
+    private String location(int line) {
+        return file == null ? "line " + line : file + " line " + line;
+    }
+
+    /**
+     * Keeps the first runtime error instead of printing it, so the embedding API can turn it into an exception.
+     * Spawned tasks report to the same reporter, so their errors end up here too.
+     */
+    static class Captured extends ErrorReporter {
+        private RuntimeError error;
+
+        @Override
+        synchronized void runtimeError(RuntimeError error) {
+            if (this.error == null) this.error = error;
+            hadRuntimeError = true;
+        }
+
+        synchronized void rethrow() {
+            if (error == null) return;
+            int line = error.token == null ? 0 : error.token.line();
+            if (error instanceof LimitError) throw new LoxLimitException(error.getMessage(), line);
+            throw new LoxRuntimeException(error.getMessage(), line);
+        }
+    }
+
+    /**
+     * Holds on to errors instead of printing them, so phases running on other threads can have their
+     * errors replayed in the order the sequential front end would have printed them.
+     */
+    static class Buffered extends ErrorReporter {
+        private final List<Entry> entries = new ArrayList<>();
+
+        @Override
+        void report(int line, String where, String message) {
+            entries.add(new Entry(line, where, message));
+            hadError = true;
+        }
+
+        void replay(ErrorReporter target) {
+            for (Entry entry : entries) {
+                target.report(entry.line, entry.where, entry.message);
+            }
+        }
+
+        // The errors as they would have been printed
+        List<String> messages() {
+            List<String> messages = new ArrayList<>(entries.size());
+            for (Entry entry : entries) {
+                messages.add(format(entry.line, entry.where, entry.message));
+            }
+            return messages;
+        }
+
+        // Keeps the reported lines right when the code they refer to moves, see Document
+        void moveLines(int delta) {
+            for (Entry entry : entries) {
+                entry.line += delta;
+            }
+        }
+
+        private static class Entry {
+            int line;
+            final String where;
+            final String message;
+
+            Entry(int line, String where, String message) {
+                this.line = line;
+                this.where = where;
+                this.message = message;
+            }
+        }
+    }
+}
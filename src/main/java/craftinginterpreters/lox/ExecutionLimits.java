@@ -0,0 +1,158 @@
+package craftinginterpreters.lox;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps on what one execution of untrusted Lox may use: fuel, a deadline, a call depth and allocation. An execution
+ * is one LoxGlobals run or call, or the whole script on the command line (--fuel, --timeout, --max-depth,
+ * --max-alloc), tasks it spawns included. Going over a limit stops the execution with a runtime error, which the embedding API
+ * throws as LoxLimitException.
+ *
+ * <pre>
+ *     engine.setLimits(ExecutionLimits.NONE.withFuel(1_000_000).withTimeout(Duration.ofMillis(50)));
+ * </pre>
+ *
+ * Fuel is counted in loop iterations and calls, the places a script can run for long from. Interpreters take
+ * it from the execution's budget in chunks and check the deadline when they take a chunk, so the checks cost
+ * a decrement and a branch per iteration and call. A task blocked on a channel or join is not stopped by the
+ * deadline.
+ *
+ * The allocation limit is a budget for everything an execution allocates, not a cap on its live heap. The
+ * instances, fields, strings, captured environments, lists and maps the script makes are charged in approximate
+ * bytes when they are made, see Footprint, and nothing is given back when they become garbage. A loop that
+ * builds a short string on every iteration uses it up however little it keeps, so size the limit for the
+ * total allocation of the scripts it is for. Interpreters take it from the budget in chunks, like fuel.
+ */
+public final class ExecutionLimits {
+    public static final ExecutionLimits NONE =
+            new ExecutionLimits(Long.MAX_VALUE, null, Integer.MAX_VALUE, Long.MAX_VALUE);
+
+    // Taken from the budget at once, so the deadline is checked at least this often
+    static final int CHUNK = 1024;
+    // Bytes of the allocation limit taken at once
+    static final int ALLOCATION_CHUNK = 64 * 1024;
+
+    private final long fuel;
+    private final Duration timeout;
+    private final int maxCallDepth;
+    private final long allocation;
+
+    private ExecutionLimits(long fuel, Duration timeout, int maxCallDepth, long allocation) {
+        this.fuel = fuel;
+        this.timeout = timeout;
+        this.maxCallDepth = maxCallDepth;
+        this.allocation = allocation;
+    }
+
+    // Loop iterations and calls an execution may make
+    public ExecutionLimits withFuel(long fuel) {
+        if (fuel < 0) throw new IllegalArgumentException("Fuel must not be negative");
+        return new ExecutionLimits(fuel, timeout, maxCallDepth, allocation);
+    }
+
+    // How long an execution may run, counted from when it starts
+    public ExecutionLimits withTimeout(Duration timeout) {
+        if (timeout.isNegative()) throw new IllegalArgumentException("Timeout must not be negative");
+        return new ExecutionLimits(fuel, timeout, maxCallDepth, allocation);
+    }
+
+    // Lox calls that may be in progress at once, per task
+    public ExecutionLimits withMaxCallDepth(int maxCallDepth) {
+        if (maxCallDepth < 1) throw new IllegalArgumentException("Call depth must be positive");
+        return new ExecutionLimits(fuel, timeout, maxCallDepth, allocation);
+    }
+
+    // Approximate bytes an execution may allocate in all, garbage included, see Footprint
+    public ExecutionLimits withAllocationLimit(long bytes) {
+        if (bytes < 0) throw new IllegalArgumentException("Allocation limit must not be negative");
+        return new ExecutionLimits(fuel, timeout, maxCallDepth, bytes);
+    }
+
+    // A budget for one execution, starting now
+    Budget start() {
+        return this == NONE ? Budget.UNLIMITED : new Budget(this);
+    }
+
+    /**
+     * What an execution has left, shared by its Interpreters. Fuel is only handed out in chunks, so
+     * Interpreters on different threads touch the counter once every CHUNK iterations and calls. Each gives
+     * back what is left of its chunk when it finishes, so tasks and calls don't use up more than they ran.
+     */
+    static final class Budget {
+        static final Budget UNLIMITED = new Budget(NONE);
+
+        final int maxCallDepth;
+        private final AtomicLong fuel;
+        private final long limit;
+        private final long deadline;
+        private final Duration timeout;
+        // Bytes of the allocation limit not handed out yet, null without one
+        private final AtomicLong allocation;
+        private final long allocationLimit;
+
+        private Budget(ExecutionLimits limits) {
+            this.maxCallDepth = limits.maxCallDepth;
+            this.limit = limits.fuel;
+            this.fuel = limits.fuel == Long.MAX_VALUE ? null : new AtomicLong(limits.fuel);
+            this.timeout = limits.timeout;
+            this.deadline = timeout == null ? 0 : System.nanoTime() + timeout.toNanos();
+            this.allocationLimit = limits.allocation;
+            this.allocation = limits.allocation == Long.MAX_VALUE ? null : new AtomicLong(limits.allocation);
+        }
+
+        boolean hasAllocationLimit() {
+            return allocation != null;
+        }
+
+        /**
+         * The next chunk of the allocation limit
+         * @throws LimitError If the limit is used up. It has no token, the caller knows where to report it.
+         */
+        int takeAllocation() {
+            if (allocation == null) return Integer.MAX_VALUE;
+
+            long left = allocation.getAndAdd(-ALLOCATION_CHUNK);
+            if (left <= 0) {
+                throw new LimitError(null, "Allocated more than the limit of " + allocationLimit + " bytes");
+            }
+            return (int) Math.min(left, ALLOCATION_CHUNK);
+        }
+
+        // Gives back fuel an Interpreter took but didn't use, when it finishes
+        void releaseFuel(int unused) {
+            if (fuel != null && unused > 0) fuel.addAndGet(unused);
+        }
+
+        // Gives back what an Interpreter took but didn't use, when it finishes
+        void releaseAllocation(int unused) {
+            if (allocation != null && unused > 0) allocation.addAndGet(unused);
+        }
+
+        // Approximate bytes the execution allocated so far, garbage included
+        long allocatedBytes() {
+            return allocation == null ? 0 : allocationLimit - Math.max(0, allocation.get());
+        }
+
+        long allocationLimit() {
+            return allocationLimit;
+        }
+
+        /**
+         * The next chunk of fuel
+         * @throws LimitError If the fuel ran out or the deadline passed. It has no token, the caller knows
+         *                    where to report it.
+         */
+        int take() {
+            if (timeout != null && System.nanoTime() - deadline > 0) {
+                throw new LimitError(null, "Execution took longer than " + timeout.toMillis() + " ms");
+            }
+            // Without a deadline to check there is no need to come back
+            if (fuel == null) return timeout == null ? Integer.MAX_VALUE : CHUNK;
+
+            long left = fuel.getAndAdd(-CHUNK);
+            if (left <= 0) throw new LimitError(null, "Out of fuel after " + limit + " loop iterations and calls");
+            return (int) Math.min(left, CHUNK);
+        }
+    }
+}
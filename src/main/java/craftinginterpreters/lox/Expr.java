@@ -90,8 +90,9 @@ abstract class Expr {
     final Expr expression;
  }
  static class Literal extends Expr {
-    Literal(Object value) {
+    Literal(Object value, int line) {
     this.value = value;
+    this.line = line;
     }
 
     @Override
@@ -100,6 +101,7 @@ abstract class Expr {
     }
 
     final Object value;
+    final int line;
  }
  static class Logical extends Expr {
     Logical(Expr left, Token operator, Expr right) {
@@ -0,0 +1,566 @@
+package craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * A flat encoding of a parsed Lox program. Instead of one heap object per node, every node is a row in a
+ * handful of parallel arrays (kind, source line, start of its operands) and all operands (child node
+ * indices, list lengths and token data) live in a single int pool. Identifier names and literal values are
+ * stored once in a constant pool.
+ *
+ * The existing visitors (Resolver, AstPrinter, Interpreter) still work on Expr/Stmt objects, so the
+ * accept methods at the bottom of this class adapt the flat encoding to them by decoding nodes on demand.
+ * Nothing decoded is kept here: accept decodes the subtree it visits and drops it, and statements() hands
+ * the caller an object tree of its own. The Resolver and Interpreter key resolved depths by node object, so
+ * resolve and run the same list statements() returned. While it runs, that tree is alive next to the
+ * arrays; the flat form saves memory for programs held between runs, not for the one running.
+ */
+public class FlatAst {
+    enum Kind {
+        // Expressions
+        ASSIGN, BINARY, CALL, GET, GROUPING, LITERAL, LOGICAL, SET, SUPER, THIS, UNARY, VARIABLE,
+        // Statements
+        BLOCK, CLASS, EXPRESSION, FUNCTION, IF, PRINT, RETURN, VAR, WHILE,
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    // Marks an absent optional child (no else branch, no initializer, ...)
+    static final int NONE = -1;
+
+    // Per node columns
+    private byte[] kinds = new byte[64];
+    private int[] lines = new int[64];
+    private int[] operandStart = new int[64];
+    private int nodeCount = 0;
+
+    // Operand pool. A token takes three slots: constant index of its lexeme, its type and its line.
+    private int[] operands = new int[256];
+    private int operandCount = 0;
+
+    private Object[] constants = new Object[32];
+    private int constantCount = 0;
+    private Map<Object, Integer> constantIndex = new HashMap<>();
+
+    private int[] roots = new int[0];
+
+    private FlatAst() {}
+
+    /**
+     * Packs an already parsed program into its flat form. The object tree is not referenced afterwards.
+     * @param statements The top level statements, as returned by Parser.parse
+     * @return The flat encoding of the program
+     */
+    public static FlatAst encode(List<Stmt> statements) {
+        FlatAst ast = new FlatAst();
+        Encoder encoder = ast.new Encoder();
+
+        int[] roots = new int[statements.size()];
+        for (int i = 0; i < roots.length; i++) {
+            roots[i] = encoder.stmt(statements.get(i));
+        }
+
+        ast.roots = roots;
+        ast.kinds = Arrays.copyOf(ast.kinds, ast.nodeCount);
+        ast.lines = Arrays.copyOf(ast.lines, ast.nodeCount);
+        ast.operandStart = Arrays.copyOf(ast.operandStart, ast.nodeCount);
+        ast.operands = Arrays.copyOf(ast.operands, ast.operandCount);
+        ast.constants = Arrays.copyOf(ast.constants, ast.constantCount);
+        ast.constantIndex = null;
+        return ast;
+    }
+
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    public int constantCount() {
+        return constantCount;
+    }
+
+    // Approximate size of the flat arrays in bytes, not counting the constants themselves
+    public long footprint() {
+        return kinds.length + 4L * lines.length + 4L * operandStart.length
+                + 4L * operands.length + 4L * constants.length + 4L * roots.length;
+    }
+
+    Kind kind(int node) {
+        return KINDS[kinds[node]];
+    }
+
+    int line(int node) {
+        return lines[node];
+    }
+
+    int[] roots() {
+        return roots;
+    }
+
+    /**
+     * Visits the given node and every node below it in prefix order, without decoding anything.
+     */
+    public void walk(int node, IntConsumer visitor) {
+        if (node == NONE) return;
+        visitor.accept(node);
+
+        int at = operandStart[node];
+        switch (kind(node)) {
+            case ASSIGN:
+                walk(operands[at + 3], visitor);
+                break;
+            case BINARY:
+            case LOGICAL:
+                walk(operands[at], visitor);
+                walk(operands[at + 4], visitor);
+                break;
+            case CALL: {
+                walk(operands[at], visitor);
+                int count = operands[at + 4];
+                for (int i = 0; i < count; i++) walk(operands[at + 5 + i], visitor);
+                break;
+            }
+            case GET:
+            case GROUPING:
+            case EXPRESSION:
+            case PRINT:
+                walk(operands[at], visitor);
+                break;
+            case SET:
+                walk(operands[at], visitor);
+                walk(operands[at + 4], visitor);
+                break;
+            case UNARY:
+            case RETURN:
+            case VAR:
+                walk(operands[at + 3], visitor);
+                break;
+            case BLOCK: {
+                int count = operands[at];
+                for (int i = 0; i < count; i++) walk(operands[at + 1 + i], visitor);
+                break;
+            }
+            case CLASS: {
+                walk(operands[at + 3], visitor);
+                int count = operands[at + 4];
+                for (int i = 0; i < count; i++) walk(operands[at + 5 + i], visitor);
+                break;
+            }
+            case FUNCTION: {
+                int body = at + 4 + 3 * operands[at + 3];
+                int count = operands[body];
+                for (int i = 0; i < count; i++) walk(operands[body + 1 + i], visitor);
+                break;
+            }
+            case IF:
+                walk(operands[at], visitor);
+                walk(operands[at + 1], visitor);
+                walk(operands[at + 2], visitor);
+                break;
+            case WHILE:
+                walk(operands[at], visitor);
+                walk(operands[at + 1], visitor);
+                break;
+            default:
+                // Literal, Super, This and Variable have no children
+                break;
+        }
+    }
+
+    /**
+     * Visits every node of the program. Children are always encoded before their parents, so this is a
+     * plain scan over the node columns and visits nodes in postfix order.
+     */
+    public void forEachNode(IntConsumer visitor) {
+        for (int node = 0; node < nodeCount; node++) {
+            visitor.accept(node);
+        }
+    }
+
+    // Visitor adapters, these let the object based visitors run on the flat encoding
+
+    public <R> R accept(int node, Expr.Visitor<R> visitor) {
+        return expr(node).accept(visitor);
+    }
+
+    public <R> R accept(int node, Stmt.Visitor<R> visitor) {
+        return stmt(node).accept(visitor);
+    }
+
+    /**
+     * Decodes the top level statements so the whole program can be handed to Resolver.resolve and then
+     * Interpreter.interpret. Every call decodes a new tree, which the FlatAst doesn't hold on to.
+     */
+    public List<Stmt> statements() {
+        List<Stmt> statements = new ArrayList<>(roots.length);
+        for (int root : roots) {
+            statements.add(stmt(root));
+        }
+        return statements;
+    }
+
+    Expr expr(int node) {
+        if (node == NONE) return null;
+
+        int at = operandStart[node];
+        Expr expr;
+        switch (kind(node)) {
+            case ASSIGN:
+                expr = new Expr.Assign(token(at), expr(operands[at + 3]));
+                break;
+            case BINARY:
+                expr = new Expr.Binary(expr(operands[at]), token(at + 1), expr(operands[at + 4]));
+                break;
+            case CALL: {
+                int count = operands[at + 4];
+                List<Expr> arguments = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) arguments.add(expr(operands[at + 5 + i]));
+                expr = new Expr.Call(expr(operands[at]), token(at + 1), arguments);
+                break;
+            }
+            case GET:
+                expr = new Expr.Get(expr(operands[at]), token(at + 1));
+                break;
+            case GROUPING:
+                expr = new Expr.Grouping(expr(operands[at]));
+                break;
+            case LITERAL:
+                expr = new Expr.Literal(constants[operands[at]], lines[node]);
+                break;
+            case LOGICAL:
+                expr = new Expr.Logical(expr(operands[at]), token(at + 1), expr(operands[at + 4]));
+                break;
+            case SET:
+                expr = new Expr.Set(expr(operands[at]), token(at + 1), expr(operands[at + 4]));
+                break;
+            case SUPER:
+                expr = new Expr.Super(token(at), token(at + 3));
+                break;
+            case THIS:
+                expr = new Expr.This(token(at));
+                break;
+            case UNARY:
+                expr = new Expr.Unary(token(at), expr(operands[at + 3]));
+                break;
+            case VARIABLE:
+                expr = new Expr.Variable(token(at));
+                break;
+            default:
+                throw new IllegalArgumentException("Node " + node + " is not an expression");
+        }
+        return expr;
+    }
+
+    Stmt stmt(int node) {
+        if (node == NONE) return null;
+
+        int at = operandStart[node];
+        Stmt stmt;
+        switch (kind(node)) {
+            case BLOCK:
+                stmt = new Stmt.Block(stmts(at));
+                break;
+            case CLASS: {
+                int count = operands[at + 4];
+                List<Stmt.Function> methods = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) methods.add((Stmt.Function) stmt(operands[at + 5 + i]));
+                stmt = new Stmt.Class(token(at), (Expr.Variable) expr(operands[at + 3]), methods);
+                break;
+            }
+            case EXPRESSION:
+                stmt = new Stmt.Expression(expr(operands[at]));
+                break;
+            case FUNCTION: {
+                int count = operands[at + 3];
+                List<Token> params = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) params.add(token(at + 4 + 3 * i));
+                stmt = new Stmt.Function(token(at), params, stmts(at + 4 + 3 * count));
+                break;
+            }
+            case IF:
+                stmt = new Stmt.If(expr(operands[at]), stmt(operands[at + 1]), stmt(operands[at + 2]));
+                break;
+            case PRINT:
+                stmt = new Stmt.Print(expr(operands[at]));
+                break;
+            case RETURN:
+                stmt = new Stmt.Return(token(at), expr(operands[at + 3]));
+                break;
+            case VAR:
+                stmt = new Stmt.Var(token(at), expr(operands[at + 3]));
+                break;
+            case WHILE:
+                stmt = new Stmt.While(expr(operands[at]), stmt(operands[at + 1]));
+                break;
+            default:
+                throw new IllegalArgumentException("Node " + node + " is not a statement");
+        }
+        return stmt;
+    }
+
+    // Decodes a length prefixed list of statements starting at the given operand
+    private List<Stmt> stmts(int at) {
+        int count = operands[at];
+        List<Stmt> statements = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) statements.add(stmt(operands[at + 1 + i]));
+        return statements;
+    }
+
+    private Token token(int at) {
+        return new Token(TOKEN_TYPES[operands[at + 1]], (String) constants[operands[at]], null, operands[at + 2]);
+    }
+
+    /**
+     * Appends nodes bottom up: every child is encoded before the node that owns it.
+     */
+    private class Encoder implements Expr.Visitor<Integer>, Stmt.Visitor<Integer> {
+        // Operands of the node being built, children have to be encoded before we start writing these
+        private int[] pending = new int[16];
+        private int pendingCount = 0;
+
+        int expr(Expr expr) {
+            return expr == null ? NONE : expr.accept(this);
+        }
+
+        int stmt(Stmt stmt) {
+            return stmt == null ? NONE : stmt.accept(this);
+        }
+
+        private void operand(int value) {
+            if (pendingCount == pending.length) pending = Arrays.copyOf(pending, pendingCount * 2);
+            pending[pendingCount++] = value;
+        }
+
+        private void token(Token token) {
+            operand(constant(token.lexeme));
+            operand(token.type.ordinal());
+            operand(token.line());
+        }
+
+        private int[] children(List<? extends Stmt> statements) {
+            int[] children = new int[statements.size()];
+            for (int i = 0; i < children.length; i++) children[i] = stmt(statements.get(i));
+            return children;
+        }
+
+        private void list(int[] children) {
+            operand(children.length);
+            for (int child : children) operand(child);
+        }
+
+        // Writes the pending operands as a new node and returns its index
+        private int node(Kind kind, int line) {
+            if (nodeCount == kinds.length) {
+                int capacity = nodeCount * 2;
+                kinds = Arrays.copyOf(kinds, capacity);
+                lines = Arrays.copyOf(lines, capacity);
+                operandStart = Arrays.copyOf(operandStart, capacity);
+            }
+            while (operandCount + pendingCount > operands.length) {
+                operands = Arrays.copyOf(operands, operands.length * 2);
+            }
+
+            kinds[nodeCount] = (byte) kind.ordinal();
+            lines[nodeCount] = line;
+            operandStart[nodeCount] = operandCount;
+            System.arraycopy(pending, 0, operands, operandCount, pendingCount);
+            operandCount += pendingCount;
+            pendingCount = 0;
+            return nodeCount++;
+        }
+
+        private int line(int node) {
+            return node == NONE ? 0 : lines[node];
+        }
+
+        @Override
+        public Integer visitAssignExpr(Expr.Assign expr) {
+            int value = expr(expr.value);
+            token(expr.name);
+            operand(value);
+            return node(Kind.ASSIGN, expr.name.line());
+        }
+
+        @Override
+        public Integer visitBinaryExpr(Expr.Binary expr) {
+            int left = expr(expr.left);
+            int right = expr(expr.right);
+            operand(left);
+            token(expr.operator);
+            operand(right);
+            return node(Kind.BINARY, expr.operator.line());
+        }
+
+        @Override
+        public Integer visitCallExpr(Expr.Call expr) {
+            int callee = expr(expr.callee);
+            int[] arguments = new int[expr.arguments.size()];
+            for (int i = 0; i < arguments.length; i++) arguments[i] = expr(expr.arguments.get(i));
+            operand(callee);
+            token(expr.paren);
+            list(arguments);
+            return node(Kind.CALL, expr.paren.line());
+        }
+
+        @Override
+        public Integer visitGetExpr(Expr.Get expr) {
+            int object = expr(expr.object);
+            operand(object);
+            token(expr.name);
+            return node(Kind.GET, expr.name.line());
+        }
+
+        @Override
+        public Integer visitGroupingExpr(Expr.Grouping expr) {
+            int expression = expr(expr.expression);
+            operand(expression);
+            return node(Kind.GROUPING, line(expression));
+        }
+
+        @Override
+        public Integer visitLiteralExpr(Expr.Literal expr) {
+            operand(constant(expr.value));
+            return node(Kind.LITERAL, expr.line);
+        }
+
+        @Override
+        public Integer visitLogicalExpr(Expr.Logical expr) {
+            int left = expr(expr.left);
+            int right = expr(expr.right);
+            operand(left);
+            token(expr.operator);
+            operand(right);
+            return node(Kind.LOGICAL, expr.operator.line());
+        }
+
+        @Override
+        public Integer visitSetExpr(Expr.Set expr) {
+            int object = expr(expr.object);
+            int value = expr(expr.value);
+            operand(object);
+            token(expr.name);
+            operand(value);
+            return node(Kind.SET, expr.name.line());
+        }
+
+        @Override
+        public Integer visitSuperExpr(Expr.Super expr) {
+            token(expr.keyword);
+            token(expr.method);
+            return node(Kind.SUPER, expr.keyword.line());
+        }
+
+        @Override
+        public Integer visitThisExpr(Expr.This expr) {
+            token(expr.keyword);
+            return node(Kind.THIS, expr.keyword.line());
+        }
+
+        @Override
+        public Integer visitUnaryExpr(Expr.Unary expr) {
+            int right = expr(expr.right);
+            token(expr.operator);
+            operand(right);
+            return node(Kind.UNARY, expr.operator.line());
+        }
+
+        @Override
+        public Integer visitVariableExpr(Expr.Variable expr) {
+            token(expr.name);
+            return node(Kind.VARIABLE, expr.name.line());
+        }
+
+        @Override
+        public Integer visitBlockStmt(Stmt.Block stmt) {
+            int[] statements = children(stmt.statements);
+            list(statements);
+            return node(Kind.BLOCK, statements.length == 0 ? 0 : line(statements[0]));
+        }
+
+        @Override
+        public Integer visitClassStmt(Stmt.Class stmt) {
+            int superclass = expr(stmt.superclass);
+            int[] methods = children(stmt.methods);
+            token(stmt.name);
+            operand(superclass);
+            list(methods);
+            return node(Kind.CLASS, stmt.name.line());
+        }
+
+        @Override
+        public Integer visitExpressionStmt(Stmt.Expression stmt) {
+            int expression = expr(stmt.expression);
+            operand(expression);
+            return node(Kind.EXPRESSION, line(expression));
+        }
+
+        @Override
+        public Integer visitFunctionStmt(Stmt.Function stmt) {
+            int[] body = children(stmt.body);
+            token(stmt.name);
+            operand(stmt.params.size());
+            for (Token param : stmt.params) token(param);
+            list(body);
+            return node(Kind.FUNCTION, stmt.name.line());
+        }
+
+        @Override
+        public Integer visitIfStmt(Stmt.If stmt) {
+            int condition = expr(stmt.condition);
+            int thenBranch = stmt(stmt.thenBranch);
+            int elseBranch = stmt(stmt.elseBranch);
+            operand(condition);
+            operand(thenBranch);
+            operand(elseBranch);
+            return node(Kind.IF, line(condition));
+        }
+
+        @Override
+        public Integer visitPrintStmt(Stmt.Print stmt) {
+            int expression = expr(stmt.expression);
+            operand(expression);
+            return node(Kind.PRINT, line(expression));
+        }
+
+        @Override
+        public Integer visitReturnStmt(Stmt.Return stmt) {
+            int value = expr(stmt.value);
+            token(stmt.keyword);
+            operand(value);
+            return node(Kind.RETURN, stmt.keyword.line());
+        }
+
+        @Override
+        public Integer visitVarStmt(Stmt.Var stmt) {
+            int initializer = expr(stmt.initializer);
+            token(stmt.name);
+            operand(initializer);
+            return node(Kind.VAR, stmt.name.line());
+        }
+
+        @Override
+        public Integer visitWhileStmt(Stmt.While stmt) {
+            int condition = expr(stmt.condition);
+            int body = stmt(stmt.body);
+            operand(condition);
+            operand(body);
+            return node(Kind.WHILE, line(condition));
+        }
+    }
+
+    // Identifier names and literal values are pooled, so repeated names are stored once
+    private int constant(Object value) {
+        Integer index = constantIndex.get(value);
+        if (index != null) return index;
+
+        if (constantCount == constants.length) constants = Arrays.copyOf(constants, constantCount * 2);
+        constants[constantCount] = value;
+        constantIndex.put(value, constantCount);
+        return constantCount++;
+    }
+}
@@ -0,0 +1,43 @@
+package craftinginterpreters.lox;
+
+/**
+ * Approximate sizes in bytes of what the interpreter allocates on a script's behalf, charged against its
+ * allocation limit, see ExecutionLimits.withAllocationLimit. Sizes are for a 64 bit JVM with compressed pointers, rounded
+ * to whole objects. Boxed numbers and what the interpreter allocates for itself are not charged.
+ *
+ * The environments of blocks and calls are charged when a closure captures them, not when they are made.
+ * Until then they are garbage once their scope exits, and the call depth bounds how many are alive.
+ */
+final class Footprint {
+    // A LoxInstance and its empty HashMap of fields
+    static final int INSTANCE = 64;
+    // A HashMap entry and its slot in the table, for each field and variable
+    static final int ENTRY = 40;
+    // An Environment, its HashMap and the table's header
+    static final int ENVIRONMENT = 104;
+    // A LoxFunction and the environment it keeps alive
+    static final int CLOSURE = 32 + ENVIRONMENT + 2 * ENTRY;
+    // The environment holding 'this' and the LoxFunction bind makes
+    static final int BOUND_METHOD = ENVIRONMENT + ENTRY + 32;
+    // A LoxList with its first eight elements
+    static final int LIST = 96;
+    // Each element appended, numbers are unboxed and everything else a reference
+    static final int LIST_ELEMENT = 8;
+    // A LoxMap with its sixteen empty slots
+    static final int MAP = 448;
+    // The slot of a new key, at two thirds full
+    static final int MAP_ENTRY = 32;
+
+    private Footprint() {
+    }
+
+    // A channel and its queue, whose buffer holds a reference per slot
+    static int channel(int capacity) {
+        return 96 + 4 * capacity;
+    }
+
+    // A String and its byte array, assuming Latin-1 text
+    static int string(String text) {
+        return 40 + text.length();
+    }
+}
@@ -0,0 +1,225 @@
+package craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Turns source code into resolved statements: scanning, parsing and then resolution.
+ */
+class FrontEnd {
+    // Below this size starting the pipeline threads costs more than it saves
+    static final int PIPELINE_THRESHOLD = 256 * 1024;
+    // On a single core the pipeline threads only take turns, and the hand-offs make it slower
+    private static final boolean MULTICORE = Runtime.getRuntime().availableProcessors() > 1;
+
+    private static final int TOKEN_BUFFER = 4096;
+    private static final int DECLARATION_BUFFER = 256;
+
+    // Whether compilePipelined is worth it for this source on this machine
+    static boolean pipelines(String source) {
+        return MULTICORE && source.length() >= PIPELINE_THRESHOLD;
+    }
+
+    /**
+     * Runs the phases one after the other. Resolution is skipped if scanning or parsing failed.
+     * @param source The program text
+     * @param resolution Receives the resolved scope distances and scope layouts
+     * @param reporter Receives the errors
+     * @return The parsed statements, only runnable if the reporter saw no errors
+     */
+    static List<Stmt> compile(String source, Resolution resolution, ErrorReporter reporter) {
+        return compile(source, resolution, reporter, null);
+    }
+
+    // Also gives the time each phase took to the metrics, unless they are null
+    static List<Stmt> compile(String source, Resolution resolution, ErrorReporter reporter,
+                              InterpreterMetrics metrics) {
+        long start = System.nanoTime();
+        LoxEvents.Phase phase = LoxEvents.phase("scan");
+        List<Token> tokens = new Scanner(source, reporter).scanTokens();
+        phase.commit();
+        long scanned = System.nanoTime();
+
+        phase = LoxEvents.phase("parse");
+        List<Stmt> statements = new Parser(tokens, reporter).parse();
+        phase.commit();
+        long parsed = System.nanoTime();
+
+        if (reporter.hadError) {
+            if (metrics != null) metrics.frontEnd(scanned - start, parsed - scanned, 0);
+            return statements;
+        }
+
+        phase = LoxEvents.phase("resolve");
+        new Resolver(resolution, reporter).resolve(statements);
+        phase.commit();
+        if (metrics != null) metrics.frontEnd(scanned - start, parsed - scanned, System.nanoTime() - parsed);
+        return statements;
+    }
+
+    /**
+     * Same result as compile, but the scanner and the parser each get their own thread and the calling
+     * thread resolves declarations as they come out of the parser. Each phase buffers its errors, and they
+     * are replayed at the end in the order compile would have printed them.
+     */
+    static List<Stmt> compilePipelined(String source, Resolution resolution, ErrorReporter reporter) {
+        return compilePipelined(source, resolution, reporter, null);
+    }
+
+    // Also gives the time each phase took to the metrics, unless they are null. The phases overlap.
+    static List<Stmt> compilePipelined(String source, Resolution resolution, ErrorReporter reporter,
+                                       InterpreterMetrics metrics) {
+        ErrorReporter.Buffered scanErrors = new ErrorReporter.Buffered();
+        ErrorReporter.Buffered parseErrors = new ErrorReporter.Buffered();
+        ErrorReporter.Buffered resolveErrors = new ErrorReporter.Buffered();
+
+        RingBuffer<Token> tokens = new RingBuffer<>(TOKEN_BUFFER);
+        RingBuffer<Stmt> declarations = new RingBuffer<>(DECLARATION_BUFFER);
+        List<Stmt> statements = new ArrayList<>();
+
+        Stage scanner = new Stage("lox-scanner", () -> {
+            LoxEvents.Phase phase = LoxEvents.phase("scan");
+            try {
+                new Scanner(source, scanErrors).scanTokens(tokens::put);
+            } finally {
+                tokens.close();
+                phase.commit();
+            }
+        });
+
+        Stage parser = new Stage("lox-parser", () -> {
+            LoxEvents.Phase phase = LoxEvents.phase("parse");
+            try {
+                new Parser(tokens, parseErrors).parse(stmt -> {
+                    statements.add(stmt);
+                    // Once parsing failed nothing will be resolved, stop feeding the resolver
+                    if (!parseErrors.hadError) declarations.put(stmt);
+                });
+            } finally {
+                // Also unblocks the scanner if we stopped early
+                tokens.close();
+                declarations.close();
+                phase.commit();
+            }
+        });
+
+        scanner.start();
+        parser.start();
+
+        Resolution resolved = new Resolution();
+        Resolver resolver = new Resolver(resolved, resolveErrors);
+        LoxEvents.Phase phase = LoxEvents.phase("resolve");
+        long start = System.nanoTime();
+        long resolveNanos;
+        try {
+            for (Stmt stmt = declarations.take(); stmt != null; stmt = declarations.take()) {
+                resolver.resolve(stmt);
+            }
+        } finally {
+            resolveNanos = System.nanoTime() - start;
+            phase.commit();
+            declarations.close();
+            scanner.await();
+            parser.await();
+        }
+        if (metrics != null) metrics.frontEnd(scanner.nanos, parser.nanos, resolveNanos);
+
+        scanErrors.replay(reporter);
+        parseErrors.replay(reporter);
+        if (scanErrors.hadError || parseErrors.hadError) return statements;
+
+        resolveErrors.replay(reporter);
+        resolution.addAll(resolved);
+        return statements;
+    }
+
+    /**
+     * Reads, scans, parses and resolves every file on the pool, one task per file. Files don't depend on each
+     * other at this point: top level names are globals, and globals are looked up at runtime, not resolved.
+     * @param paths The files, in the order they will be executed
+     * @param pool Where the work runs
+     * @return One unit per file, in the same order as the paths
+     */
+    static List<Unit> compileAll(List<String> paths, ForkJoinPool pool) {
+        List<ForkJoinTask<Unit>> tasks = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            tasks.add(pool.submit(() -> new Unit(path)));
+        }
+
+        List<Unit> units = new ArrayList<>(tasks.size());
+        for (ForkJoinTask<Unit> task : tasks) {
+            units.add(task.join());
+        }
+        return units;
+    }
+
+    // A compiled source file. Its errors are kept back so they can be printed in file order.
+    static class Unit {
+        final String path;
+        final List<Stmt> statements;
+        final Resolution resolution = new Resolution();
+        final ErrorReporter.Buffered errors = new ErrorReporter.Buffered();
+        // Why the file couldn't be read, null if it was. It has no statements then.
+        final IOException unreadable;
+
+        Unit(String path) {
+            this.path = path;
+
+            String source;
+            try {
+                source = new String(Files.readAllBytes(Paths.get(path)), Charset.defaultCharset());
+            } catch (IOException e) {
+                this.unreadable = e;
+                this.statements = List.of();
+                return;
+            }
+            this.unreadable = null;
+            this.statements = compile(source, resolution, errors);
+        }
+    }
+
+    // One phase of the pipeline, running on its own thread
+    private static class Stage extends Thread {
+        private final Runnable work;
+        private volatile Throwable failure;
+        // How long the work ran, read after await
+        private long nanos;
+
+        Stage(String name, Runnable work) {
+            super(name);
+            this.work = work;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            try {
+                work.run();
+            } catch (Throwable t) {
+                failure = t;
+            } finally {
+                nanos = System.nanoTime() - start;
+            }
+        }
+
+        // Waits for the phase to finish and rethrows whatever made it fail
+        void await() {
+            try {
+                join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(getName() + " was interrupted", e);
+            }
+
+            if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+            if (failure instanceof Error) throw (Error) failure;
+        }
+    }
+}
@@ -0,0 +1,492 @@
+package craftinginterpreters.lox;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Saves everything reachable from a LoxGlobals to a file and builds it again from there, so an application can
+ * skip its initialization code on startup. Functions point into the AST, which isn't saved: the file holds the
+ * source of every program that ran in the globals, and restoring compiles them again and finds each function
+ * by its position among the program's function declarations.
+ *
+ * File layout, numbers big endian as DataOutputStream writes them:
+ *   magic and version
+ *   programs: count, then each source as length prefixed UTF-8
+ *   objects: count, then a header per object that only refers to objects before it
+ *   contents: the variables, methods, fields, elements or entries of every environment, class, instance, list
+ *             and map, in object order
+ *   the variables of the globals
+ * Object 0 is the global scope. Values are a tag followed by a number, a string or an object index, and a
+ * string is written out once and referred to by index after that.
+ */
+final class HeapSnapshot {
+    private static final byte[] MAGIC = {'L', 'O', 'X', 'H', 'E', 'A', 'P', 1};
+
+    // Object kinds
+    private static final byte ENVIRONMENT = 1;
+    private static final byte FUNCTION = 2;
+    private static final byte CLASS = 3;
+    private static final byte INSTANCE = 4;
+    private static final byte NATIVE = 5;
+    private static final byte LIST = 6;
+    private static final byte MAP = 7;
+
+    // Value tags
+    private static final byte NIL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte NUMBER = 3;
+    private static final byte STRING = 4;
+    private static final byte STRING_REF = 5;
+    private static final byte OBJECT = 6;
+
+    private static final int GLOBALS = 0;
+
+    private HeapSnapshot() {}
+
+    static void write(LoxGlobals globals, Path file) throws IOException {
+        Writer writer = new Writer(globals);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            writer.write(out);
+        }
+    }
+
+    static LoxGlobals read(LoxEngine engine, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new Reader(in).read(engine);
+        }
+    }
+
+    // Every function declaration of the program, in source order
+    private static List<Stmt.Function> functions(CompiledProgram program) {
+        FunctionCollector collector = new FunctionCollector();
+        for (Stmt statement : program.statements) statement.accept(collector);
+        return collector.functions;
+    }
+
+    private static class Writer {
+        private final LoxGlobals globals;
+        private final Map<Object, Integer> ids = new IdentityHashMap<>();
+        private final List<Object> objects = new ArrayList<>();
+        // Where each function declaration is: program, then position in the program
+        private final Map<Stmt.Function, int[]> declarations = new IdentityHashMap<>();
+        // The natives of these globals, by the name they are defined under
+        private final Map<Object, String> natives = new IdentityHashMap<>();
+        private final Map<String, Integer> strings = new HashMap<>();
+        private DataOutputStream out;
+
+        Writer(LoxGlobals globals) {
+            this.globals = globals;
+            objects.add(globals.environment);
+
+            for (int program = 0; program < globals.programs.size(); program++) {
+                List<Stmt.Function> functions = functions(globals.programs.get(program));
+                for (int i = 0; i < functions.size(); i++) {
+                    declarations.put(functions.get(i), new int[] {program, i});
+                }
+            }
+
+            Interpreter.newGlobals().forEach((name, value) -> {
+                Object own = globals.environment.lookup(name);
+                // Unless a script defined something else under the name
+                if (own instanceof LoxCallable && !(own instanceof LoxFunction) && !(own instanceof LoxClass)) {
+                    natives.put(own, name);
+                }
+            });
+            // Natives the engine defined, which it defines again in the globals it restores
+            globals.environment.forEach((name, value) -> {
+                if (value instanceof NativeFunction) natives.putIfAbsent(value, name);
+            });
+
+            // Walks the heap breadth first, giving every object an index
+            for (Map.Entry<String, Object> variable : variables(globals.environment)) visit(variable.getValue());
+            for (int i = 1; i < objects.size(); i++) {
+                for (Object value : contents(objects.get(i))) visit(value);
+            }
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            this.out = out;
+            out.write(MAGIC);
+
+            out.writeInt(globals.programs.size());
+            for (CompiledProgram program : globals.programs) {
+                byte[] source = program.source.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(source.length);
+                out.write(source);
+            }
+
+            out.writeInt(objects.size());
+            for (int i = 1; i < objects.size(); i++) writeHeader(objects.get(i));
+
+            for (int i = 1; i < objects.size(); i++) {
+                Object object = objects.get(i);
+                if (object instanceof Environment) {
+                    writeVariables(variables((Environment) object));
+                } else if (object instanceof LoxClass) {
+                    Map<String, LoxFunction> methods = ((LoxClass) object).methods;
+                    out.writeInt(methods.size());
+                    for (Map.Entry<String, LoxFunction> method : methods.entrySet()) {
+                        writeString(method.getKey());
+                        out.writeInt(ids.get(method.getValue()));
+                    }
+                } else if (object instanceof LoxInstance) {
+                    writeVariables(((LoxInstance) object).fields.entrySet());
+                } else if (object instanceof LoxList) {
+                    LoxList list = (LoxList) object;
+                    out.writeInt(list.length());
+                    for (int element = 0; element < list.length(); element++) writeValue(list.get(element));
+                } else if (object instanceof LoxMap) {
+                    LoxMap map = (LoxMap) object;
+                    out.writeInt(map.size());
+                    for (int slot = 0; slot < map.capacity(); slot++) {
+                        if (map.isEmpty(slot)) continue;
+                        writeValue(map.keyAt(slot));
+                        writeValue(map.valueAt(slot));
+                    }
+                }
+            }
+
+            writeVariables(variables(globals.environment));
+        }
+
+        private void visit(Object value) {
+            if (value == null || value instanceof Boolean || value instanceof Double || value instanceof String) {
+                return;
+            }
+            id(value);
+        }
+
+        // The index of the object, after giving the objects its header refers to theirs
+        private int id(Object object) {
+            Integer id = ids.get(object);
+            if (id != null) return id;
+
+            if (object instanceof Environment) {
+                Environment environment = (Environment) object;
+                // Every global scope is the global scope, globals are looked up through the Interpreter
+                if (environment.enclosing == null) return GLOBALS;
+                id(environment.enclosing);
+            } else if (object instanceof LoxFunction) {
+                LoxFunction function = (LoxFunction) object;
+                if (!declarations.containsKey(function.declaration)) {
+                    throw new IllegalStateException("Function " + function + " comes from a program that didn't run"
+                            + " in these globals");
+                }
+                id(function.closure);
+            } else if (object instanceof LoxClass) {
+                LoxClass klass = (LoxClass) object;
+                if (klass.superclass != null) id(klass.superclass);
+            } else if (object instanceof LoxInstance) {
+                id(((LoxInstance) object).klass);
+            } else if (!(object instanceof LoxList) && !(object instanceof LoxMap) && !natives.containsKey(object)) {
+                throw new IllegalStateException("Can't save " + object);
+            }
+
+            id = objects.size();
+            ids.put(object, id);
+            objects.add(object);
+            return id;
+        }
+
+        private List<Object> contents(Object object) {
+            List<Object> contents = new ArrayList<>();
+            if (object instanceof Environment) {
+                for (Map.Entry<String, Object> variable : variables((Environment) object)) {
+                    contents.add(variable.getValue());
+                }
+            } else if (object instanceof LoxClass) {
+                contents.addAll(((LoxClass) object).methods.values());
+            } else if (object instanceof LoxInstance) {
+                contents.addAll(((LoxInstance) object).fields.values());
+            } else if (object instanceof LoxList && !((LoxList) object).isNumeric()) {
+                LoxList list = (LoxList) object;
+                for (int element = 0; element < list.length(); element++) contents.add(list.get(element));
+            } else if (object instanceof LoxMap) {
+                LoxMap map = (LoxMap) object;
+                for (int slot = 0; slot < map.capacity(); slot++) {
+                    if (map.isEmpty(slot)) continue;
+                    contents.add(map.keyAt(slot));
+                    contents.add(map.valueAt(slot));
+                }
+            }
+            return contents;
+        }
+
+        private void writeHeader(Object object) throws IOException {
+            if (object instanceof Environment) {
+                out.writeByte(ENVIRONMENT);
+                out.writeInt(ids.getOrDefault(((Environment) object).enclosing, GLOBALS));
+            } else if (object instanceof LoxFunction) {
+                LoxFunction function = (LoxFunction) object;
+                int[] declaration = declarations.get(function.declaration);
+                out.writeByte(FUNCTION);
+                out.writeInt(declaration[0]);
+                out.writeInt(declaration[1]);
+                out.writeInt(id(function.closure));
+                out.writeBoolean(function.isInitializer);
+            } else if (object instanceof LoxClass) {
+                LoxClass klass = (LoxClass) object;
+                out.writeByte(CLASS);
+                writeString(klass.name);
+                out.writeInt(klass.superclass == null ? -1 : ids.get(klass.superclass));
+            } else if (object instanceof LoxInstance) {
+                out.writeByte(INSTANCE);
+                out.writeInt(ids.get(((LoxInstance) object).klass));
+            } else if (object instanceof LoxList) {
+                out.writeByte(LIST);
+            } else if (object instanceof LoxMap) {
+                out.writeByte(MAP);
+            } else {
+                out.writeByte(NATIVE);
+                writeString(natives.get(object));
+            }
+        }
+
+        private void writeVariables(Iterable<Map.Entry<String, Object>> variables) throws IOException {
+            List<Map.Entry<String, Object>> entries = new ArrayList<>();
+            variables.forEach(entries::add);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Object> entry : entries) {
+                writeString(entry.getKey());
+                writeValue(entry.getValue());
+            }
+        }
+
+        private void writeValue(Object value) throws IOException {
+            if (value == null) {
+                out.writeByte(NIL);
+            } else if (value instanceof Boolean) {
+                out.writeByte((boolean) value ? TRUE : FALSE);
+            } else if (value instanceof Double) {
+                out.writeByte(NUMBER);
+                out.writeDouble((double) value);
+            } else if (value instanceof String) {
+                writeString((String) value);
+            } else {
+                out.writeByte(OBJECT);
+                out.writeInt(id(value));
+            }
+        }
+
+        private void writeString(String string) throws IOException {
+            Integer index = strings.get(string);
+            if (index != null) {
+                out.writeByte(STRING_REF);
+                out.writeInt(index);
+                return;
+            }
+
+            strings.put(string, strings.size());
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeByte(STRING);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private static List<Map.Entry<String, Object>> variables(Environment environment) {
+            List<Map.Entry<String, Object>> variables = new ArrayList<>();
+            environment.forEach((name, value) -> variables.add(new AbstractMap.SimpleImmutableEntry<>(name, value)));
+            return variables;
+        }
+    }
+
+    private static class Reader {
+        private final ByteBuffer in;
+        private final List<String> strings = new ArrayList<>();
+        private Object[] objects;
+
+        Reader(ByteBuffer in) {
+            this.in = in;
+        }
+
+        LoxGlobals read(LoxEngine engine) {
+            for (byte expected : MAGIC) {
+                if (in.get() != expected) throw new IllegalArgumentException("Not a Lox heap snapshot");
+            }
+
+            int programCount = in.getInt();
+            List<CompiledProgram> programs = new ArrayList<>(programCount);
+            List<List<Stmt.Function>> functions = new ArrayList<>(programCount);
+            for (int i = 0; i < programCount; i++) {
+                byte[] source = new byte[in.getInt()];
+                in.get(source);
+                CompiledProgram program = engine.compile(new String(source, StandardCharsets.UTF_8));
+                programs.add(program);
+                functions.add(functions(program));
+            }
+
+            LoxGlobals globals = engine.restored(programs);
+            objects = new Object[in.getInt()];
+            objects[GLOBALS] = globals.environment;
+            for (int i = 1; i < objects.length; i++) {
+                byte kind = in.get();
+                switch (kind) {
+                    case ENVIRONMENT:
+                        objects[i] = new Environment((Environment) objects[in.getInt()]);
+                        break;
+                    case FUNCTION: {
+                        int program = in.getInt();
+                        Stmt.Function declaration = functions.get(program).get(in.getInt());
+                        Environment closure = (Environment) objects[in.getInt()];
+                        boolean isInitializer = in.get() != 0;
+                        objects[i] = new LoxFunction(declaration, closure, isInitializer,
+                                programs.get(program).resolution);
+                        break;
+                    }
+                    case CLASS: {
+                        String name = readString();
+                        int superclass = in.getInt();
+                        objects[i] = new LoxClass(name, superclass < 0 ? null : (LoxClass) objects[superclass],
+                                new HashMap<>());
+                        break;
+                    }
+                    case INSTANCE:
+                        objects[i] = new LoxInstance((LoxClass) objects[in.getInt()]);
+                        break;
+                    case NATIVE: {
+                        String name = readString();
+                        objects[i] = globals.environment.lookup(name);
+                        if (!(objects[i] instanceof LoxCallable)) {
+                            throw new IllegalArgumentException("Snapshot uses native " + name
+                                    + ", which the engine doesn't define");
+                        }
+                        break;
+                    }
+                    case LIST:
+                        objects[i] = new LoxList();
+                        break;
+                    case MAP:
+                        objects[i] = new LoxMap();
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Corrupt heap snapshot, object kind " + kind);
+                }
+            }
+
+            for (int i = 1; i < objects.length; i++) {
+                Object object = objects[i];
+                if (object instanceof Environment) {
+                    Environment environment = (Environment) object;
+                    for (int count = in.getInt(); count > 0; count--) environment.define(readString(), readValue());
+                } else if (object instanceof LoxClass) {
+                    Map<String, LoxFunction> methods = ((LoxClass) object).methods;
+                    for (int count = in.getInt(); count > 0; count--) {
+                        methods.put(readString(), (LoxFunction) objects[in.getInt()]);
+                    }
+                } else if (object instanceof LoxInstance) {
+                    Map<String, Object> fields = ((LoxInstance) object).fields;
+                    for (int count = in.getInt(); count > 0; count--) fields.put(readString(), readValue());
+                } else if (object instanceof LoxList) {
+                    LoxList list = (LoxList) object;
+                    for (int count = in.getInt(); count > 0; count--) list.append(readValue());
+                } else if (object instanceof LoxMap) {
+                    LoxMap map = (LoxMap) object;
+                    for (int count = in.getInt(); count > 0; count--) map.set(readValue(), readValue());
+                }
+            }
+
+            for (int count = in.getInt(); count > 0; count--) {
+                globals.environment.define(readString(), readValue());
+            }
+            return globals;
+        }
+
+        private Object readValue() {
+            byte tag = in.get();
+            switch (tag) {
+                case NIL: return null;
+                case TRUE: return true;
+                case FALSE: return false;
+                case NUMBER: return in.getDouble();
+                case OBJECT: return objects[in.getInt()];
+                default: return readString(tag);
+            }
+        }
+
+        private String readString() {
+            return readString(in.get());
+        }
+
+        private String readString(byte tag) {
+            if (tag == STRING_REF) return strings.get(in.getInt());
+            if (tag != STRING) throw new IllegalArgumentException("Corrupt heap snapshot, value tag " + tag);
+
+            byte[] bytes = new byte[in.getInt()];
+            in.get(bytes);
+            String string = new String(bytes, StandardCharsets.UTF_8);
+            strings.add(string);
+            return string;
+        }
+    }
+
+    private static class FunctionCollector implements Stmt.Visitor<Void> {
+        final List<Stmt.Function> functions = new ArrayList<>();
+
+        @Override
+        public Void visitBlockStmt(Stmt.Block stmt) {
+            for (Stmt statement : stmt.statements) statement.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitClassStmt(Stmt.Class stmt) {
+            for (Stmt.Function method : stmt.methods) method.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.Expression stmt) {
+            return null;
+        }
+
+        @Override
+        public Void visitFunctionStmt(Stmt.Function stmt) {
+            functions.add(stmt);
+            for (Stmt statement : stmt.body) statement.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitIfStmt(Stmt.If stmt) {
+            stmt.thenBranch.accept(this);
+            if (stmt.elseBranch != null) stmt.elseBranch.accept(this);
+            return null;
+        }
+
+        @Override
+        public Void visitPrintStmt(Stmt.Print stmt) {
+            return null;
+        }
+
+        @Override
+        public Void visitReturnStmt(Stmt.Return stmt) {
+            return null;
+        }
+
+        @Override
+        public Void visitVarStmt(Stmt.Var stmt) {
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStmt(Stmt.While stmt) {
+            stmt.body.accept(this);
+            return null;
+        }
+    }
+}
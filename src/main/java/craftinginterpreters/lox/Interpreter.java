@@ -1,35 +1,107 @@
 package craftinginterpreters.lox;
 
+import java.lang.invoke.MethodHandles;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * A class that represents a Lox Interpreter
+ * A class that represents a Lox Interpreter.
+ * An Interpreter holds the state of one running script: its globals, the current environment and where
+ * its output and errors go. It is not thread safe, but any number of Interpreters can run at once, on
+ * different threads, over the same CompiledProgram. Tasks started with spawn each run in an Interpreter of
+ * their own that shares the globals, the resolution, the output and the reporter of the one that spawned them.
  */
 public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
+    // Made once, natives are immutable and can be shared by every global scope
+    private static final List<NativeFunction> BUILTINS = NativeFunction.all(MethodHandles.lookup(), Builtins.class);
+
+    final Environment globals;
+    private Environment env;
+
+    // Where variables are looked up. LoxFunction.call switches to the tables the function was resolved in,
+    // so functions one program defines can be called by another that runs over the same globals.
+    Resolution resolution;
+    Map<Expr, Integer> locals;
+    // Swapped by interpret(statements, reporter) while one file of several runs, tasks keep the one they started with
+    ErrorReporter reporter;
+    final Output out;
+    // Set for the script's own Interpreter when running with --profile, LoxFunction.call reports to it
+    Profiler profiler;
+    // Set for the script's own Interpreter when running with --alloc-stats
+    Allocations allocations;
+    // Lox function calls in progress
+    int depth = 0;
+
+    // What the execution may still use, shared with the tasks it spawns, see ExecutionLimits
+    private ExecutionLimits.Budget budget = ExecutionLimits.Budget.UNLIMITED;
+    // Left of the chunk taken from the budget, one unit per loop iteration and call
+    private int fuel = Integer.MAX_VALUE;
+    private int maxCallDepth = Integer.MAX_VALUE;
+    // Bytes left of the chunk of the allocation limit taken from the budget, see Footprint
+    private int allocation = Integer.MAX_VALUE;
+
+    // Where the counts below are published, null unless running with --jmx or LoxEngine.registerMBean
+    InterpreterMetrics metrics;
+    // Counted since they were last published
+    private int executed = 0;
+    int calls = 0;
+    int maxDepth = 0;
+
+    // When a function or a loop is hot enough to compile, see Tiering. Never, for CoverageInterpreter.
+    long callThreshold = Tiering.CALL_THRESHOLD;
+    long loopThreshold = Tiering.LOOP_THRESHOLD;
+    // Loop iterations run in this Interpreter, LoxFunction counts those run under each call it interprets
+    int backEdges = 0;
 
-    final Environment globals = new Environment();
-    private Environment env = globals;
+    public Interpreter() {
+        // Later inputs are resolved into these while tasks spawned by earlier ones may still be reading them
+        // Line buffered when a person is watching the output, see Output
+        this(new Resolution(new ConcurrentHashMap<>(), new ConcurrentHashMap<>()), Lox.reporter,
+                new Output(System.out, System.console() != null));
+    }
 
-    private final Map<Expr, Integer> locals = new HashMap<>();
+    /**
+     * @param resolution Where variables are looked up. It is only read, so it can be shared with other
+     *                   Interpreters, as long as nothing resolves into it while they run.
+     * @param reporter Receives the runtime error, if any
+     * @param out Where print statements go
+     */
+    Interpreter(Resolution resolution, ErrorReporter reporter, Output out) {
+        this(resolution, newGlobals(), reporter, out);
+    }
 
-    public Interpreter() {
-        globals.define("clock", new LoxCallable() {
-            @Override
-            public int arity() {
-                return 0;
-            }
+    // Runs in the given globals, which may already hold what other programs left behind
+    Interpreter(Resolution resolution, Environment globals, ErrorReporter reporter, Output out) {
+        this.globals = globals;
+        this.env = globals;
+        this.reporter = reporter;
+        this.out = out;
+        use(resolution);
+    }
 
-            @Override
-            public Object call(Interpreter interpreter, List<Object> arguments) {
-                return (double)System.currentTimeMillis() / 1000.0;
-            }
+    // For a spawned task, which starts out in the globals of the Interpreter that spawned it
+    Interpreter(Interpreter parent) {
+        this(parent.resolution, parent.globals, parent.reporter, parent.out);
+        this.metrics = parent.metrics;
+        this.callThreshold = parent.callThreshold;
+        this.loopThreshold = parent.loopThreshold;
+        limit(parent.budget);
+    }
+
+    // A global scope holding the natives
+    static Environment newGlobals() {
+        Environment globals = Environment.concurrent();
+        for (NativeFunction function : BUILTINS) globals.define(function.name, function);
+        Tasks.define(globals);
+        return globals;
+    }
 
-            @Override
-            public String toString() { return "<native>"; }
-        });
+    void use(Resolution resolution) {
+        this.resolution = resolution;
+        this.locals = resolution.locals;
     }
 
 
@@ -40,18 +112,142 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 execute(statement);
             }
         } catch (RuntimeError error) {
-            Lox.runtimeError(error);
+            // So what the script printed comes before the error
+            out.flush();
+            LoxEvents.runtimeError(error);
+            if (metrics != null) metrics.runtimeError();
+            reporter.runtimeError(error);
+        } finally {
+            out.flush();
+            finish();
+        }
+    }
+
+    // Runtime errors go to the given reporter, e.g. one that names the file the statements come from
+    void interpret(List<Stmt> statements, ErrorReporter reporter) {
+        ErrorReporter previous = this.reporter;
+        this.reporter = reporter;
+        try {
+            interpret(statements);
+        } finally {
+            this.reporter = previous;
         }
     }
 
-    private void execute(Stmt statement) {
+    // Every statement and expression runs through execute and evaluate, which CoverageInterpreter overrides.
+    // While no subclass is loaded the JIT inlines them as if they were private.
+    void execute(Stmt statement) {
+        countStatement();
         statement.accept(this);
     }
 
+    // For the metrics, compiled code counts its statements here too
+    void countStatement() {
+        if (++executed == InterpreterMetrics.PUBLISH_EVERY) publishMetrics();
+    }
+
+    // Runs under the budget from here on
+    void limit(ExecutionLimits.Budget budget) {
+        this.budget = budget;
+        this.maxCallDepth = budget.maxCallDepth;
+        // Takes the first chunk on the first iteration or call. Not when there are no limits: refueling once
+        // per run would deoptimize the calls and loops of every run.
+        this.fuel = budget == ExecutionLimits.Budget.UNLIMITED ? Integer.MAX_VALUE : 0;
+        this.allocation = budget.hasAllocationLimit() ? 0 : Integer.MAX_VALUE;
+    }
+
+    // At the end of an execution or a task, hands back what it took but didn't use
+    void finish() {
+        publishMetrics();
+        if (budget != ExecutionLimits.Budget.UNLIMITED) {
+            budget.releaseFuel(fuel);
+            fuel = 0;
+        }
+        if (budget.hasAllocationLimit()) {
+            budget.releaseAllocation(allocation);
+            allocation = 0;
+        }
+    }
+
+    // Charges the bytes to the allocation limit. Errors have no token, visitCallExpr reports them at the call.
+    void charge(int bytes) {
+        charge(bytes, null);
+    }
+
+    // The error is reported at the token
+    void charge(int bytes, Token at) {
+        if ((allocation -= bytes) < 0) recharge(at);
+    }
+
+    // Takes chunks until the charge that went over the allowance is covered
+    private void recharge(Token at) {
+        try {
+            while (allocation < 0) allocation += budget.takeAllocation();
+        } catch (LimitError error) {
+            throw at == null ? error : error.at(at);
+        }
+    }
+
+    // Counts a Lox call, LoxFunction decrements the depth when it returns. Math.max rather than an if, whose
+    // rarely taken branch would deoptimize the caller each time a fresh Interpreter goes deeper. Kept small
+    // enough for the JIT to inline into every call, the error is built elsewhere. Errors are reported at the
+    // given token, the name of the function called: a task or a call from Java has no call expression.
+    void enterCall(Token at) {
+        if (--fuel < 0) refuel(at);
+        if (depth == maxCallDepth) throw tooDeep(at);
+
+        calls++;
+        maxDepth = Math.max(maxDepth, ++depth);
+    }
+
+    private LimitError tooDeep(Token at) {
+        return new LimitError(at, "Call depth exceeded the limit of " + maxCallDepth);
+    }
+
+    // The current chunk of fuel is used up, the unit just spent comes out of the next one. Errors have no
+    // token, the callers below report them at their call or loop.
+    private void refuel() {
+        fuel = budget.take() - 1;
+    }
+
+    private void refuel(Token at) {
+        try {
+            refuel();
+        } catch (LimitError error) {
+            throw error.at(at);
+        }
+    }
+
+    // The back edge of a loop, where a loop that never ends would spin
+    void backEdge(Stmt.While loop) {
+        if (--fuel < 0) refuel(loop);
+    }
+
+    // A loop has no token of its own, its error is reported at the line the loop starts on
+    private void refuel(Stmt.While loop) {
+        try {
+            refuel();
+        } catch (LimitError error) {
+            throw error.at(new Token(TokenType.WHILE, "while", null, Coverage.line(loop)));
+        }
+    }
+
+    // Adds what was counted since the last time to the metrics, if there are any
+    void publishMetrics() {
+        // The globals are counted here rather than by JMX, whose threads would read them while scripts write
+        if (metrics != null) metrics.publish(executed, calls, depth, maxDepth, globals.size());
+        executed = 0;
+        calls = 0;
+    }
+
     public void resolve(Expr expr, int depth) {
         locals.put(expr, depth);
     }
 
+    void resolve(Resolution resolution) {
+        this.resolution.addAll(resolution);
+    }
+
     public void executeBlock(List<Stmt> statements, Environment env) {
         Environment previous = this.env;
         try {
@@ -67,6 +263,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
+        count(Allocations.Kind.ENVIRONMENT);
         executeBlock(stmt.statements, new Environment(this.env));
         return null;
     }
@@ -84,13 +281,16 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         this.env.define(stmt.name.lexeme, null);
 
         if (stmt.superclass != null) {
+            count(Allocations.Kind.ENVIRONMENT);
             this.env = new Environment(this.env);
             this.env.define("super", superclass);
         }
 
         Map<String, LoxFunction> methods = new HashMap<>();
         for (Stmt.Function method : stmt.methods) {
-            LoxFunction function = new LoxFunction(method, env, method.name.equals("init"));
+            count(Allocations.Kind.CLOSURE);
+            charge(Footprint.CLOSURE, method.name);
+            LoxFunction function = new LoxFunction(method, env, method.name.lexeme.equals("init"), resolution);
             methods.put(method.name.lexeme, function);
         }
         LoxClass klass = new LoxClass(stmt.name.lexeme, (LoxClass) superclass, methods);
@@ -119,7 +319,9 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitFunctionStmt(Stmt.Function stmt) {
-        LoxFunction function = new LoxFunction(stmt, env, false);
+        count(Allocations.Kind.CLOSURE);
+        charge(Footprint.CLOSURE, stmt.name);
+        LoxFunction function = new LoxFunction(stmt, env, false, resolution);
         env.define(stmt.name.lexeme, function);
         return null;
     }
@@ -140,15 +342,12 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         Object left = evaluate(expr.left);
 
         if (expr.operator.type == TokenType.OR) {
-            if (isTruthy(expr.left)) {
-                return left;
-            }
-            else {
-                if (!isTruthy(expr.left)) return left;
-            }
+            if (isTruthy(left)) return left;
+        } else {
+            if (!isTruthy(left)) return left;
         }
 
-        return expr.right;
+        return evaluate(expr.right);
     }
 
     @Override
@@ -160,23 +359,29 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         }
 
         Object value = evaluate(expr.value);
-        ((LoxInstance)object).set(expr.name, value);
+        if (((LoxInstance)object).set(expr.name, value)) charge(Footprint.ENTRY, expr.name);
         return value;
     }
 
     @Override
     public Object visitSuperExpr(Expr.Super expr) {
-        int distance = locals.get(expr);
-        LoxClass superclass = (LoxClass)this.env.getAt(distance, "super");
+        return superMethod(env, locals.get(expr), expr.method);
+    }
 
-        LoxInstance object = (LoxInstance)this.env.getAt(distance - 1, "this");
+    // The superclass's method, bound to this. The distance is where the Resolver found super.
+    Object superMethod(Environment env, int distance, Token name) {
+        LoxClass superclass = (LoxClass)env.getAt(distance, "super");
 
-        LoxFunction method = superclass.findMethod(expr.method.lexeme);
+        LoxInstance object = (LoxInstance)env.getAt(distance - 1, "this");
+
+        LoxFunction method = superclass.findMethod(name.lexeme);
 
         if (method == null) {
-            throw new RuntimeError(expr.method, "Undefined property '" + expr.method.lexeme + "'.");
+            throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
         }
 
+        count(Allocations.Kind.BOUND_METHOD);
+        charge(Footprint.BOUND_METHOD, name);
         return method.bind(object);
     }
 
@@ -185,14 +390,14 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return lookUpVariable(expr.keyword, expr);
     }
 
-    private Object evaluate(Expr expr) {
+    Object evaluate(Expr expr) {
         return expr.accept(this);
     }
 
 
     public Void visitPrintStmt(Stmt.Print stmt) {
         Object value = evaluate(stmt.expression);
-        System.out.println(stringify(value));
+        out.println(value);
         return null;
     }
 
@@ -220,13 +425,35 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitWhileStmt(Stmt.While stmt) {
+        long iterations = 0;
         while (isTruthy(evaluate(stmt.condition))) {
             execute(stmt.body);
+            backEdge(stmt);
+            backEdges++;
+            // A long running loop carries on in the compiled tier, once Tiering has compiled it
+            if (++iterations == loopThreshold) {
+                if (tierUp(stmt)) return null;
+                iterations = 0;
+            }
         }
 
         return null;
     }
 
+    // Runs the rest of the loop compiled, if it has been. A return in the loop returns from here as usual.
+    private boolean tierUp(Stmt.While loop) {
+        TierProfile profile = resolution.profile(loop);
+        ClosureCompiler.Code compiled = profile.code;
+        if (compiled == null) {
+            profile.iterated(loopThreshold);
+            return false;
+        }
+
+        Object result = compiled.run(this, env);
+        if (result != ClosureCompiler.NEXT) throw new Return(result);
+        return true;
+    }
+
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
         Object right = evaluate(expr.right);
@@ -236,7 +463,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 return !isTruthy(right);
             case MINUS:
                 checkNumberOperand(expr.operator, right);
-                return -(double)right;
+                return number(-(double)right);
         }
 
         // Should be unreachable.
@@ -271,18 +498,18 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return value;
     }
 
-    private void checkNumberOperand(Token operator, Object operand) {
+    static void checkNumberOperand(Token operator, Object operand) {
         if (operand instanceof Double) {return;}
         throw new RuntimeError(operator, "Operand must be a number");
     }
 
-    private void checkNumberOperands(Token operator, Object left, Object right) {
+    static void checkNumberOperands(Token operator, Object left, Object right) {
         if (left instanceof Double && right instanceof Double) return;
 
         throw new RuntimeError(operator, "Operand must be a number");
     }
 
-    private boolean isTruthy(Object object) {
+    static boolean isTruthy(Object object) {
         if (object == null) return false;
         if (object instanceof Boolean) {
             return (boolean)object;
@@ -296,18 +523,9 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
         switch (expr.operator.type) {
             case MINUS:
-                return (double)left - (double)right;
+                return number((double)left - (double)right);
             case PLUS:
-                if (left instanceof Double && right instanceof Double) {
-                    return (double)left + (double)right;
-                }
-
-                if (left instanceof String && right instanceof String) {
-                    return (String)left + (String)right;
-                }
-
-                throw new RuntimeError(expr.operator, "Operand must be a number");
-
+                return add(expr.operator, left, right);
             case GREATER:
                 checkNumberOperands(expr.operator, left, right);
                 return (double)left > (double)right;
@@ -322,10 +540,10 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 return (double)left <= (double)right;
             case SLASH:
                 checkNumberOperands(expr.operator, left, right);
-                return (double)left / (double)right;
+                return number((double)left / (double)right);
             case STAR:
                 checkNumberOperands(expr.operator, left, right);
-                return (double)left * (double)right;
+                return number((double)left * (double)right);
             case EQUAL_EQUAL:
                 return isEqual(left, right);
             case BANG_EQUAL:
@@ -336,60 +554,162 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return null;
     }
 
+    // Lox's +, which adds numbers and concatenates strings
+    Object add(Token operator, Object left, Object right) {
+        if (left instanceof Double && right instanceof Double) {
+            return number((double)left + (double)right);
+        }
+
+        if (left instanceof String && right instanceof String) {
+            count(Allocations.Kind.STRING);
+            String result = (String)left + (String)right;
+            charge(Footprint.string(result), operator);
+            return result;
+        }
+
+        throw new RuntimeError(operator, "Operand must be a number");
+    }
+
     @Override
     public Object visitCallExpr(Expr.Call expr) {
         Object callee = evaluate(expr.callee);
+        if (callee instanceof NativeFunction) {
+            NativeFunction function = (NativeFunction) callee;
+            if (function.isDirect() && function.arity() == expr.arguments.size()) return callNative(function, expr);
+        }
 
+        count(Allocations.Kind.ARGUMENTS);
         List<Object> args = new ArrayList<>();
         for (Expr arg : expr.arguments) {
             args.add(evaluate(arg));
         }
 
+        return call(callee, args, expr.paren);
+    }
+
+    // Calls the callee with arguments already evaluated, errors are reported at paren
+    Object call(Object callee, List<Object> args, Token paren) {
         if (!(callee instanceof LoxCallable)) {
-            throw new RuntimeError(expr.paren, "Can only call functions and classes");
+            throw new RuntimeError(paren, "Can only call functions and classes");
         }
 
         LoxCallable function = (LoxCallable)callee;
         if (args.size() != function.arity()) {
-            throw new RuntimeError(expr.paren,
+            throw new RuntimeError(paren,
                     "Expected " + function.arity() + " arguments but got " + args.size()
                     );
         }
-        return function.call(this, args);
+        try {
+            return function.call(this, args);
+        } catch (RuntimeError error) {
+            // Natives don't know where they were called from
+            if (error.token != null) throw error;
+            throw error.at(paren);
+        }
+    }
+
+    // Passes the arguments straight to the native, without collecting them in a list
+    private Object callNative(NativeFunction function, Expr.Call expr) {
+        List<Expr> arguments = expr.arguments;
+        try {
+            switch (arguments.size()) {
+                case 0:
+                    return function.invoke(this);
+                case 1:
+                    return function.invoke(this, evaluate(arguments.get(0)));
+                case 2: {
+                    Object a = evaluate(arguments.get(0));
+                    return function.invoke(this, a, evaluate(arguments.get(1)));
+                }
+                default: {
+                    Object a = evaluate(arguments.get(0));
+                    Object b = evaluate(arguments.get(1));
+                    return function.invoke(this, a, b, evaluate(arguments.get(2)));
+                }
+            }
+        } catch (RuntimeError error) {
+            if (error.token != null) throw error;
+            throw error.at(expr.paren);
+        }
     }
 
     @Override
     public Object visitGetExpr(Expr.Get expr) {
-        Object object = evaluate(expr.object);
+        return getProperty(evaluate(expr.object), expr.name);
+    }
+
+    Object getProperty(Object object, Token name) {
         if (object instanceof LoxInstance) {
-            return ((LoxInstance)object).get(expr.name);
+            return ((LoxInstance)object).get(this, name);
+        }
+        if (object instanceof LoxList) {
+            return ((LoxList)object).get(name);
         }
+        if (object instanceof LoxMap) {
+            return ((LoxMap)object).get(name);
+        }
+
+        throw new RuntimeError(name, "Ony instances have properties");
+    }
 
-        throw new RuntimeError(expr.name, "Ony instances have properties");
+    // For --alloc-stats, costs a field read otherwise
+    void count(Allocations.Kind kind) {
+        if (allocations != null) allocations.count(kind);
+    }
+
+    Object number(double value) {
+        if (allocations != null) allocations.count(Allocations.Kind.NUMBER);
+        return value;
     }
 
     // Lox's interpretation of equality
-    private boolean isEqual(Object left, Object right) {
+    static boolean isEqual(Object left, Object right) {
         if (left == null && right == null) return true;
         if (left == null) return false;
 
         return left.equals(right);
     }
 
-    private String stringify(Object object) {
+    static String stringify(Object object) {
         if (object == null) return "nil";
 
         if (object instanceof Double) {
-            String text = object.toString();
-            if (text.endsWith(".0")) {
-                text = text.substring(0, text.length() - 2);
-            }
-            return text;
+            StringBuilder text = new StringBuilder(24);
+            appendNumber(text, (double) object);
+            return text.toString();
         }
 
         return object.toString();
     }
 
+    // Appends what stringify returns, numbers without making a String first
+    static void stringify(StringBuilder out, Object object) {
+        if (object instanceof Double) {
+            appendNumber(out, (double) object);
+        } else {
+            out.append(stringify(object));
+        }
+    }
+
+    /**
+     * Appends the number as Double.toString writes it, less a trailing ".0". Integral numbers below 10^7,
+     * which Double.toString writes without an exponent, are appended as longs. Anything else goes through
+     * StringBuilder.append(double), which uses the same algorithm as Double.toString without the String.
+     */
+    static void appendNumber(StringBuilder out, double number) {
+        if (number == (long) number && Math.abs(number) < 1e7) {
+            // (long) -0.0 is 0, but Double.toString keeps the sign
+            if (number == 0 && Double.doubleToRawLongBits(number) != 0) out.append('-');
+            out.append((long) number);
+            return;
+        }
+
+        int start = out.length();
+        out.append(number);
+        int end = out.length();
+        if (end - start > 2 && out.charAt(end - 2) == '.' && out.charAt(end - 1) == '0') out.setLength(end - 2);
+    }
+
 }
 
 
@@ -0,0 +1,38 @@
+package craftinginterpreters.lox;
+
+/**
+ * Live counters of a running script, or of every program a LoxEngine runs, over JMX. See Lox --jmx and
+ * LoxEngine.registerMBean. Counts are published by the interpreter in batches, so they can be up to a
+ * thousand statements behind while a script runs.
+ */
+public interface InterpreterMXBean {
+    long getStatementsExecuted();
+
+    // Calls of Lox functions and methods, natives and classes not included
+    long getCallsMade();
+
+    // Lox calls in progress when the interpreter last published its counts
+    int getCurrentCallDepth();
+
+    int getMaxCallDepth();
+
+    // Variables in the global scope the interpreter last published from
+    int getGlobalsCount();
+
+    // Runtime errors that ended a script, a task or a call from Java
+    long getRuntimeErrors();
+
+    // Approximate bytes the last execution with an allocation limit allocated in all, garbage included, see
+    // ExecutionLimits.withAllocationLimit
+    long getLastExecutionAllocatedBytes();
+
+    // The most any one execution with an allocation limit allocated in all
+    long getMaxExecutionAllocatedBytes();
+
+    // How long the phases of the front end took for the last program compiled
+    long getLastScanNanos();
+
+    long getLastParseNanos();
+
+    long getLastResolveNanos();
+}
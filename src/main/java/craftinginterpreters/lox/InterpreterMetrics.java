@@ -0,0 +1,142 @@
+package craftinginterpreters.lox;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * The counters behind an InterpreterMXBean, shared by the Interpreters of a script and the tasks it spawns,
+ * or by every Interpreter a LoxEngine makes.
+ *
+ * An Interpreter counts in plain fields of its own and adds them here every PUBLISH_EVERY statements and when
+ * it finishes. The hot path never touches memory other threads write, and the adders keep Interpreters
+ * publishing on different threads from contending with each other or with JMX reading them.
+ */
+final class InterpreterMetrics implements InterpreterMXBean {
+    static final int PUBLISH_EVERY = 1024;
+
+    private final LongAdder statements = new LongAdder();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder runtimeErrors = new LongAdder();
+    private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+    private volatile int currentDepth;
+    private volatile int globalsCount;
+    // Of executions with an allocation limit
+    private volatile long lastExecutionAllocated;
+    private final LongAccumulator maxExecutionAllocated = new LongAccumulator(Math::max, 0);
+
+    private volatile long scanNanos;
+    private volatile long parseNanos;
+    private volatile long resolveNanos;
+
+    // Set while registered
+    private ObjectName objectName;
+
+    /**
+     * Registers with the platform MBean server as craftinginterpreters.lox:type=Interpreter,name=[name]
+     * @throws IllegalArgumentException If the name is taken
+     */
+    synchronized void register(String name) {
+        try {
+            ObjectName objectName = new ObjectName("craftinginterpreters.lox:type=Interpreter,name="
+                    + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.objectName = objectName;
+        } catch (JMException e) {
+            throw new IllegalArgumentException("Can't register interpreter MBean " + name, e);
+        }
+    }
+
+    // Frees the name, so a later engine can register under it. Does nothing if not registered.
+    synchronized void unregister() {
+        if (objectName == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            // Already unregistered through the server, which is all this was for
+        }
+        objectName = null;
+    }
+
+    // What an Interpreter counted since it last published, see Interpreter.publishMetrics
+    void publish(int statements, int calls, int depth, int maxDepth, int globalsCount) {
+        this.statements.add(statements);
+        this.calls.add(calls);
+        this.maxDepth.accumulate(maxDepth);
+        this.currentDepth = depth;
+        this.globalsCount = globalsCount;
+    }
+
+    // What an execution with an allocation limit allocated, see ExecutionLimits.withAllocationLimit
+    void executionAllocated(long bytes) {
+        lastExecutionAllocated = bytes;
+        maxExecutionAllocated.accumulate(bytes);
+    }
+
+    void runtimeError() {
+        runtimeErrors.increment();
+    }
+
+    void frontEnd(long scanNanos, long parseNanos, long resolveNanos) {
+        this.scanNanos = scanNanos;
+        this.parseNanos = parseNanos;
+        this.resolveNanos = resolveNanos;
+    }
+
+    @Override
+    public long getStatementsExecuted() {
+        return statements.sum();
+    }
+
+    @Override
+    public long getCallsMade() {
+        return calls.sum();
+    }
+
+    @Override
+    public int getCurrentCallDepth() {
+        return currentDepth;
+    }
+
+    @Override
+    public int getMaxCallDepth() {
+        return (int) maxDepth.get();
+    }
+
+    @Override
+    public int getGlobalsCount() {
+        return globalsCount;
+    }
+
+    @Override
+    public long getRuntimeErrors() {
+        return runtimeErrors.sum();
+    }
+
+    @Override
+    public long getLastExecutionAllocatedBytes() {
+        return lastExecutionAllocated;
+    }
+
+    @Override
+    public long getMaxExecutionAllocatedBytes() {
+        return maxExecutionAllocated.get();
+    }
+
+    @Override
+    public long getLastScanNanos() {
+        return scanNanos;
+    }
+
+    @Override
+    public long getLastParseNanos() {
+        return parseNanos;
+    }
+
+    @Override
+    public long getLastResolveNanos() {
+        return resolveNanos;
+    }
+}
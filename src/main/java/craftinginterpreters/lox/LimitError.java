@@ -0,0 +1,15 @@
+package craftinginterpreters.lox;
+
+/**
+ * The runtime error that stops an execution going over one of its ExecutionLimits
+ */
+class LimitError extends RuntimeError {
+    LimitError(Token token, String message) {
+        super(token, message);
+    }
+
+    @Override
+    RuntimeError at(Token token) {
+        return new LimitError(token, getMessage());
+    }
+}
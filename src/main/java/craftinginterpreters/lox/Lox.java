@@ -4,39 +4,230 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
+import java.nio.file.AccessDeniedException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 
 public class Lox {
-    static boolean hadError = false;
-    static boolean hadRuntimeError = false;
+    static final ErrorReporter reporter = new ErrorReporter();
 
-    private static final Interpreter interpreter = new Interpreter();
+    private static Interpreter interpreter = new Interpreter();
+    // Set with --coverage, the programs run are registered with it
+    private static Coverage coverage;
 
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: jlox [script]");
-            System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
+        List<String> paths = new ArrayList<>();
+        boolean lineBuffered = false;
+        String profile = null;
+        String lcov = null;
+        boolean allocStats = false;
+        boolean jmx = false;
+        ExecutionLimits limits = ExecutionLimits.NONE;
+        long tierCalls = Tiering.CALL_THRESHOLD;
+        long tierLoops = Tiering.LOOP_THRESHOLD;
+        for (String arg : args) {
+            // Writes every printed line through at once, as when the output goes to a terminal
+            if (arg.equals("--line-buffered")) {
+                lineBuffered = true;
+            } else if (arg.equals("--profile") || arg.startsWith("--profile=")) {
+                profile = arg.equals("--profile") ? "lox.collapsed" : arg.substring("--profile=".length());
+            } else if (arg.equals("--coverage") || arg.startsWith("--coverage=")) {
+                lcov = arg.equals("--coverage") ? "lox.lcov" : arg.substring("--coverage=".length());
+            } else if (arg.equals("--alloc-stats")) {
+                allocStats = true;
+            } else if (arg.equals("--jmx")) {
+                jmx = true;
+            } else if (arg.startsWith("--fuel=")) {
+                limits = limits.withFuel(count(arg, 1, Long.MAX_VALUE));
+            } else if (arg.startsWith("--timeout=")) {
+                // In milliseconds
+                limits = limits.withTimeout(Duration.ofMillis(count(arg, 1, Long.MAX_VALUE)));
+            } else if (arg.startsWith("--max-alloc=")) {
+                // In megabytes, allocated in all rather than live, see ExecutionLimits
+                limits = limits.withAllocationLimit(count(arg, 1, Long.MAX_VALUE >> 20) << 20);
+            } else if (arg.startsWith("--max-depth=")) {
+                limits = limits.withMaxCallDepth((int) count(arg, 1, Integer.MAX_VALUE));
+            } else if (arg.startsWith("--tier-calls=")) {
+                // 0 for never, see Tiering
+                tierCalls = Tiering.threshold(count(arg, 0, Long.MAX_VALUE));
+            } else if (arg.startsWith("--tier-loops=")) {
+                tierLoops = Tiering.threshold(count(arg, 0, Long.MAX_VALUE));
+            } else if (arg.equals("--tier-log")) {
+                Tiering.log = System.err;
+            } else {
+                paths.add(arg);
+            }
+        }
+
+        if (lcov != null) {
+            coverage(lcov);
+        } else {
+            interpreter.callThreshold = tierCalls;
+            interpreter.loopThreshold = tierLoops;
+        }
+        if (lineBuffered) interpreter.out.setLineBuffered(true);
+        if (profile != null) profile(profile);
+        if (allocStats) allocStats();
+        // For the whole run, every file and task included
+        if (limits != ExecutionLimits.NONE) limit(limits.start());
+        // Live counters of the script over JMX, see InterpreterMXBean
+        if (jmx) {
+            interpreter.metrics = new InterpreterMetrics();
+            interpreter.metrics.register("script");
+        }
+
+        if (paths.size() > 1) {
+            runFiles(paths);
+        } else if (paths.size() == 1) {
+            runFile(paths.get(0));
         } else {
             runPrompt();
         }
     }
 
+    /*
+    The whole number after the = of a --flag=value argument. Anything else, or a number out of range, is a
+    usage error.
+     */
+    private static long count(String arg, long min, long max) {
+        int equals = arg.indexOf('=');
+        String value = arg.substring(equals + 1);
+        try {
+            long count = Long.parseLong(value);
+            if (count >= min && count <= max) return count;
+        } catch (NumberFormatException e) {
+            // Reported below, like a number out of range
+        }
+
+        String range = max == Long.MAX_VALUE ? min + " or more" : "from " + min + " to " + max;
+        System.err.println("Invalid value '" + value + "' for " + arg.substring(0, equals)
+                + ", expected a whole number " + range);
+        System.err.println("Usage: jlox [options] [script...]");
+        System.exit(64);
+        return 0;
+    }
+
+    /*
+    Samples the Lox call stack while the script runs. On exit, however the script ends, writes the collapsed
+    stacks to the given file and a table of the time spent per function to stderr.
+     */
+    private static void profile(String collapsed) {
+        Profiler profiler = new Profiler();
+        interpreter.profiler = profiler;
+        profiler.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            profiler.stop();
+            try {
+                profiler.report(Paths.get(collapsed), System.err);
+            } catch (IOException e) {
+                System.err.println("Can't write profile to " + collapsed + ": " + e.getMessage());
+            }
+        }));
+    }
+
+    /*
+    Runs the script under the budget. With an allocation limit, reports on exit how much of it the script used.
+     */
+    private static void limit(ExecutionLimits.Budget budget) {
+        interpreter.limit(budget);
+        if (!budget.hasAllocationLimit()) return;
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() ->
+                System.err.println("Allocated about " + (budget.allocatedBytes() >> 10) + " KiB of the "
+                        + (budget.allocationLimit() >> 10) + " KiB allocation limit")));
+    }
+
+    /*
+    Counts the objects the interpreter allocates for the script, by the Lox function that allocated them.
+    The counts so far are available to the script through stats(), and on exit a table goes to stderr.
+     */
+    private static void allocStats() {
+        Allocations allocations = new Allocations();
+        interpreter.allocations = allocations;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> allocations.report(System.err)));
+    }
+
+    /*
+    Runs scripts in an Interpreter that counts every statement and expression it runs. On exit writes line
+    and branch coverage to the given file in lcov's format and the hottest lines to stderr.
+     */
+    private static void coverage(String lcov) {
+        coverage = new Coverage();
+        interpreter = new CoverageInterpreter(coverage);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                coverage.writeLcov(Paths.get(lcov));
+            } catch (IOException e) {
+                System.err.println("Can't write coverage to " + lcov + ": " + e.getMessage());
+            }
+            coverage.reportHotLines(System.err, 20);
+        }));
+    }
+
     /*
     Attempts to execute an arbitrary file.
      */
-    private static void runFile(String path) throws IOException {
-        byte[] byteData = Files.readAllBytes(Paths.get(path));
-        run(new String(byteData, Charset.defaultCharset()));
+    private static void runFile(String path) {
+        byte[] byteData;
+        try {
+            byteData = Files.readAllBytes(Paths.get(path));
+        } catch (IOException e) {
+            cantRead(path, e);
+            System.exit(66);
+            return;
+        }
+        run(path, new String(byteData, Charset.defaultCharset()));
 
-        if (hadError) {
+        if (reporter.hadError) {
             System.exit(65);
         }
-        if (hadRuntimeError) System.exit(70);
+        if (reporter.hadRuntimeError) System.exit(70);
+    }
+
+    // The file system exceptions only carry the path, so say what went wrong
+    private static void cantRead(String path, IOException e) {
+        String reason = e instanceof NoSuchFileException ? "no such file"
+                : e instanceof AccessDeniedException ? "permission denied"
+                : e.getMessage();
+        System.err.println("Can't read " + path + ": " + reason);
+    }
+
+    /*
+    Loads several files into the same global scope, e.g. a prelude and some libraries followed by the
+    entry script. The front end runs on all of them in parallel, then they are executed in the order given.
+    Errors name the file they come from, and nothing runs if a file can't be read.
+     */
+    private static void runFiles(List<String> paths) {
+        List<FrontEnd.Unit> units = FrontEnd.compileAll(paths, ForkJoinPool.commonPool());
+
+        boolean unreadable = false;
+        for (FrontEnd.Unit unit : units) {
+            if (unit.unreadable != null) {
+                cantRead(unit.path, unit.unreadable);
+                unreadable = true;
+            }
+        }
+        if (unreadable) System.exit(66);
+
+        for (FrontEnd.Unit unit : units) {
+            unit.errors.replay(new ErrorReporter(unit.path));
+            if (unit.errors.hadError) reporter.hadError = true;
+        }
+        if (reporter.hadError) System.exit(65);
+
+        for (FrontEnd.Unit unit : units) {
+            if (coverage != null) coverage.add(unit.path, unit.statements);
+            ErrorReporter fileReporter = new ErrorReporter(unit.path);
+            interpreter.resolve(unit.resolution);
+            interpreter.interpret(unit.statements, fileReporter);
+            if (fileReporter.hadRuntimeError) System.exit(70);
+        }
     }
 
     /*
@@ -52,56 +243,29 @@ public class Lox {
             if (line == null) {
                 break;
             }
-            run(line);
+            run(null, line);
             /*
              TODO: Idea: wrap run in try catch, failure means invalid statement,
               so write new helper function to evaluate as an expression,
               will need to re-add that functionality to Parser.java. Failure from expression
               eval means invalid altogether.
              */
-            hadError = false;
+            reporter.hadError = false;
         }
     }
 
-    // Core function
-    private static void run(String line) {
-        Scanner scanner = new Scanner(line);
-        List<Token> tokens = scanner.scanTokens();
-
-        Parser parser = new Parser(tokens);
-        List<Stmt> statements = parser.parse();
-
-        if (hadError) return;
-
-        Resolver resolver = new Resolver(interpreter);
-        resolver.resolve(statements);
-
-        if (hadError) return;
-
-        interpreter.interpret(statements);
-
-
-    }
-
-    static void error(int lineNumber, String message) {
-        report(lineNumber, "", message);
-    }
-
-    static void error(Token token, String message) {
-        if (token.type == TokenType.EOF) {
-            report(token.line, " at end", message);
+    // Core function, path is null for input from the prompt
+    private static void run(String path, String source) {
+        List<Stmt> statements;
+        if (FrontEnd.pipelines(source)) {
+            statements = FrontEnd.compilePipelined(source, interpreter.resolution, reporter, interpreter.metrics);
         } else {
-            report(token.line, " at '" + token.lexeme + "'", message);
+            statements = FrontEnd.compile(source, interpreter.resolution, reporter, interpreter.metrics);
         }
-    }
 
-    private static void report(int line, String where, String message) {
-        System.err.println("[line " + line + "] Error" + where + ": " + message);
-        hadError = true;
-    }
+        if (reporter.hadError) return;
 
-    static void runtimeError(RuntimeError error) {
-        System.err.println(error.getMessage() + "\n[line " + error.token.line + "]");
-        hadRuntimeError = true;
+        if (coverage != null && path != null) coverage.add(path, statements);
+        interpreter.interpret(statements);
     }
-}
\ No newline at end of file
+}
@@ -9,7 +9,7 @@ import java.util.Map;
  */
 public class LoxClass implements LoxCallable{
     final String name;
-    private final Map<String, LoxFunction> methods;
+    final Map<String, LoxFunction> methods;
     final LoxClass superclass;
 
     public LoxClass(String name, LoxClass superclass, Map<String, LoxFunction> methods) {
@@ -32,9 +32,29 @@ public class LoxClass implements LoxCallable{
 
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
+        LoxEvents.Instantiation event = new LoxEvents.Instantiation();
+        if (!event.isEnabled()) return instantiate(interpreter, arguments);
+
+        event.begin();
+        try {
+            return instantiate(interpreter, arguments);
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.className = name;
+                event.commit();
+            }
+        }
+    }
+
+    private LoxInstance instantiate(Interpreter interpreter, List<Object> arguments) {
+        interpreter.count(Allocations.Kind.INSTANCE);
+        interpreter.charge(Footprint.INSTANCE);
         LoxInstance instance = new LoxInstance(this);
         LoxFunction initializer = findMethod("init");
         if (initializer != null) {
+            interpreter.count(Allocations.Kind.BOUND_METHOD);
+            interpreter.charge(Footprint.BOUND_METHOD);
             initializer.bind(instance).call(interpreter, arguments);
         }
         return instance;
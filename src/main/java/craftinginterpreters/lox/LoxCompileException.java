@@ -0,0 +1,20 @@
+package craftinginterpreters.lox;
+
+import java.util.List;
+
+/**
+ * Thrown by LoxEngine.compile when the source has scanning, parsing or resolution errors.
+ */
+public class LoxCompileException extends LoxException {
+    private final List<String> errors;
+
+    LoxCompileException(List<String> errors) {
+        super(String.join("\n", errors));
+        this.errors = List.copyOf(errors);
+    }
+
+    // Every error found, in source order, formatted the way the command line prints them
+    public List<String> errors() {
+        return errors;
+    }
+}
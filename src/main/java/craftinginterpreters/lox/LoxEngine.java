@@ -0,0 +1,133 @@
+package craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.invoke.MethodHandles;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Entry point for running Lox from Java. Compile a source once and run the CompiledProgram as often as needed,
+ * from any number of threads, without going through the front end again:
+ *
+ * <pre>
+ *     LoxEngine engine = new LoxEngine();
+ *     CompiledProgram program = engine.compile("fun handle(n) { return n * 2; }");
+ *     LoxGlobals globals = program.run();
+ *     Object doubled = globals.call("handle", 21);
+ * </pre>
+ *
+ * Errors come back as LoxCompileException and LoxRuntimeException, nothing is printed to stderr. Close the
+ * engine when done with it if it registered an MBean, see registerMBean.
+ */
+public final class LoxEngine implements AutoCloseable {
+    private final PrintStream out;
+    // Defined in every global scope the engine makes, see defineNatives
+    private final List<NativeFunction> natives = new CopyOnWriteArrayList<>();
+    // Set by registerMBean
+    private volatile InterpreterMetrics metrics;
+    private volatile ExecutionLimits limits = ExecutionLimits.NONE;
+
+    public LoxEngine() {
+        this(System.out);
+    }
+
+    // Print statements of programs compiled by this engine go to out
+    public LoxEngine(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * @throws LoxCompileException With every error, if the source doesn't compile
+     */
+    public CompiledProgram compile(String source) {
+        CompiledProgram program = CompiledProgram.compile(source, this);
+        if (program.hadError()) throw new LoxCompileException(program.errors.messages());
+        return program;
+    }
+
+    /**
+     * Defines every static method of the class annotated with LoxNative as a global, in every LoxGlobals the
+     * engine makes from here on. Natives are the cheapest way to call Java from Lox: arguments are converted
+     * by method handles made here, not on every call.
+     * <pre>
+     *     class MathNatives {
+     *         {@literal @}LoxNative static double hypot(double x, double y) { return Math.hypot(x, y); }
+     *     }
+     *
+     *     engine.defineNatives(MethodHandles.lookup(), MathNatives.class);
+     * </pre>
+     * @param lookup Has access to the methods, usually MethodHandles.lookup() called in the class itself
+     * @throws IllegalArgumentException If an annotated method isn't static or has a type Lox can't call
+     */
+    public void defineNatives(MethodHandles.Lookup lookup, Class<?> holder) {
+        natives.addAll(NativeFunction.all(lookup, holder));
+    }
+
+    /**
+     * Registers an InterpreterMXBean with the platform MBean server, named
+     * craftinginterpreters.lox:type=Interpreter,name=[name]. It counts for every program the engine compiles
+     * and every LoxGlobals it makes from here on. The bean stays registered until the engine is closed or
+     * registers another one.
+     * @throws IllegalArgumentException If the name is taken
+     */
+    public synchronized InterpreterMXBean registerMBean(String name) {
+        InterpreterMetrics metrics = new InterpreterMetrics();
+        metrics.register(name);
+        if (this.metrics != null) this.metrics.unregister();
+        this.metrics = metrics;
+        return metrics;
+    }
+
+    /**
+     * Unregisters the engine's MBean, if it has one. Programs and globals the engine made keep working and
+     * keep counting, only no longer over JMX.
+     */
+    @Override
+    public synchronized void close() {
+        if (metrics != null) metrics.unregister();
+    }
+
+    /**
+     * Limits every run and call in the LoxGlobals the engine makes from here on, each of them gets a budget
+     * of its own. For scripts that can't be trusted to finish, see ExecutionLimits.
+     */
+    public void setLimits(ExecutionLimits limits) {
+        this.limits = limits;
+    }
+
+    InterpreterMetrics metrics() {
+        return metrics;
+    }
+
+    // Fresh globals, for running one or more programs in the same global scope
+    public LoxGlobals newGlobals() {
+        LoxGlobals globals = new LoxGlobals(globals(), out, List.of());
+        globals.metrics = metrics;
+        globals.limits = limits;
+        return globals;
+    }
+
+    /**
+     * Reads globals saved with LoxGlobals.save, with everything that was reachable from them. The programs
+     * that ran in them are compiled again, but not run.
+     */
+    public LoxGlobals restore(Path file) throws IOException {
+        return HeapSnapshot.read(this, file);
+    }
+
+    // Fresh globals for a snapshot made after the given programs ran
+    LoxGlobals restored(List<CompiledProgram> programs) {
+        LoxGlobals globals = new LoxGlobals(globals(), out, programs);
+        globals.metrics = metrics;
+        globals.limits = limits;
+        return globals;
+    }
+
+    private Environment globals() {
+        Environment globals = Interpreter.newGlobals();
+        for (NativeFunction function : natives) globals.define(function.name, function);
+        return globals;
+    }
+}
@@ -0,0 +1,118 @@
+package craftinginterpreters.lox;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JDK Flight Recorder events for Lox code, so a recording shows Lox calls, instantiations, runtime errors and
+ * front end phases next to GC and CPU in JMC. They are in the Lox category and recorded like any other
+ * event, e.g. java -XX:StartFlightRecording:filename=lox.jfr craftinginterpreters.lox.Lox script.lox.
+ *
+ * Each place that emits one first asks the event whether it is enabled. While no recording has it enabled
+ * that is a constant false and the JIT drops the event object altogether.
+ */
+final class LoxEvents {
+    private LoxEvents() {
+    }
+
+    @Name("lox.Call")
+    @Label("Lox Call")
+    @Category("Lox")
+    @Description("A call of a Lox function or method, by default only those taking a millisecond or more")
+    @Threshold("1 ms")
+    static final class Call extends Event {
+        @Label("Function")
+        String function;
+
+        @Label("Line")
+        @Description("Where the function is declared")
+        int line;
+
+        @Label("Depth")
+        @Description("Lox calls on the stack, this one included")
+        int depth;
+    }
+
+    @Name("lox.Instantiation")
+    @Label("Lox Instantiation")
+    @Category("Lox")
+    @Description("An instance made by calling a class, the duration includes init. Off by default, there can be "
+            + "millions a second.")
+    @Enabled(false)
+    static final class Instantiation extends Event {
+        @Label("Class")
+        String className;
+    }
+
+    @Name("lox.RuntimeError")
+    @Label("Lox Runtime Error")
+    @Category("Lox")
+    @Description("A runtime error that ended a script or a task")
+    @StackTrace(false)
+    static final class RuntimeError extends Event {
+        @Label("Message")
+        String message;
+
+        @Label("Line")
+        int line;
+    }
+
+    @Name("lox.FrontEndPhase")
+    @Label("Lox Front End Phase")
+    @Category("Lox")
+    @Description("Scanning, parsing or resolving a program. In the pipelined front end the phases overlap, each "
+            + "on a thread of its own.")
+    @StackTrace(false)
+    static final class Phase extends Event {
+        @Label("Phase")
+        String phase;
+    }
+
+    @Name("lox.Compilation")
+    @Label("Lox Compilation")
+    @Category("Lox")
+    @Description("A hot function or loop compiled by Tiering, on the compiler thread")
+    @StackTrace(false)
+    static final class Compilation extends Event {
+        @Label("Code")
+        @Description("The function or loop, and the line it starts on")
+        String code;
+
+        @Label("Calls")
+        @Description("Calls interpreted before compiling was asked for")
+        long calls;
+
+        @Label("Loop Iterations")
+        @Description("Loop iterations run under the interpreted calls, or by the loop itself")
+        long loops;
+
+        @Label("Compiled")
+        @Description("False if the code could not be compiled and stays interpreted")
+        boolean compiled;
+    }
+
+    static void runtimeError(craftinginterpreters.lox.RuntimeError error) {
+        RuntimeError event = new RuntimeError();
+        if (!event.isEnabled()) return;
+
+        event.message = error.getMessage();
+        event.line = error.token == null ? 0 : error.token.line();
+        event.commit();
+    }
+
+    // Started, the caller ends and commits it
+    static Phase phase(String name) {
+        Phase event = new Phase();
+        if (event.isEnabled()) {
+            event.phase = name;
+            event.begin();
+        }
+        return event;
+    }
+}
@@ -0,0 +1,10 @@
+package craftinginterpreters.lox;
+
+/**
+ * Base of the exceptions the embedding API throws, see LoxEngine.
+ */
+public class LoxException extends RuntimeException {
+    LoxException(String message) {
+        super(message);
+    }
+}
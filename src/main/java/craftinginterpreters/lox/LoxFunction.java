@@ -3,14 +3,26 @@ package craftinginterpreters.lox;
 import java.util.List;
 
 public class LoxFunction implements LoxCallable {
-    private final Stmt.Function declaration;
-    private final Environment closure;
-    private final boolean isInitializer;
+    final Stmt.Function declaration;
+    final Environment closure;
+    final boolean isInitializer;
+    // The tables the declaration was resolved into
+    final Resolution resolution;
+    // How hot the declaration is and its compiled code, shared by every closure made from it, see Tiering
+    private final TierProfile profile;
 
-    public LoxFunction(Stmt.Function declaration, Environment closure, boolean isInitializer) {
+    public LoxFunction(Stmt.Function declaration, Environment closure, boolean isInitializer,
+                       Resolution resolution) {
+        this(declaration, closure, isInitializer, resolution, resolution.profile(declaration));
+    }
+
+    private LoxFunction(Stmt.Function declaration, Environment closure, boolean isInitializer,
+                        Resolution resolution, TierProfile profile) {
         this.closure = closure;
         this.declaration = declaration;
         this.isInitializer = isInitializer;
+        this.resolution = resolution;
+        this.profile = profile;
     }
 
     @Override
@@ -20,24 +32,88 @@ public class LoxFunction implements LoxCallable {
 
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
-        Environment env = new Environment(closure);
+        LoxEvents.Call event = new LoxEvents.Call();
+        if (!event.isEnabled()) return profiled(interpreter, arguments);
+
+        event.begin();
+        try {
+            return profiled(interpreter, arguments);
+        } finally {
+            event.end();
+            if (event.shouldCommit()) {
+                event.function = declaration.name.lexeme;
+                event.line = declaration.name.line();
+                // The call has returned, so it no longer counts itself
+                event.depth = interpreter.depth + 1;
+                event.commit();
+            }
+        }
+    }
+
+    private Object profiled(Interpreter interpreter, List<Object> arguments) {
+        Profiler profiler = interpreter.profiler;
+        Allocations allocations = interpreter.allocations;
+        if (profiler == null && allocations == null) return callResolved(interpreter, arguments);
+
+        if (profiler != null) profiler.enter(declaration);
+        if (allocations != null) allocations.enter(declaration);
+        try {
+            return callResolved(interpreter, arguments);
+        } finally {
+            if (allocations != null) allocations.exit();
+            if (profiler != null) profiler.exit();
+        }
+    }
+
+    private Object callResolved(Interpreter interpreter, List<Object> arguments) {
+        Resolution caller = interpreter.resolution;
+        if (caller == resolution) return invoke(interpreter, arguments);
+
+        interpreter.use(resolution);
+        try {
+            return invoke(interpreter, arguments);
+        } finally {
+            interpreter.use(caller);
+        }
+    }
+
+    private Object invoke(Interpreter interpreter, List<Object> arguments) {
+        interpreter.count(Allocations.Kind.ENVIRONMENT);
+        Environment env = new Environment(closure, profile.layout);
         // Bind the params
         for (int i = 0; i < this.declaration.params.size(); i++) {
             env.define(declaration.params.get(i).lexeme, arguments.get(i));
         }
 
+        interpreter.enterCall(declaration.name);
+        ClosureCompiler.Code compiled = profile.code;
         try {
-            interpreter.executeBlock(declaration.body, env);
+            if (compiled != null) return compiledResult(compiled.run(interpreter, env));
+
+            int loops = interpreter.backEdges;
+            try {
+                interpreter.executeBlock(declaration.body, env);
+            } finally {
+                profile.interpreted(interpreter, interpreter.backEdges - loops);
+            }
         } catch (Return returnValue) {
             if (isInitializer) return closure.getAt(0, "this");
 
             return returnValue.value;
+        } finally {
+            interpreter.depth--;
         }
 
         if (isInitializer) return this.closure.getAt(0, "this");
         return null;
     }
 
+    // What the call returns, given what the compiled body returned
+    private Object compiledResult(Object result) {
+        if (isInitializer) return closure.getAt(0, "this");
+        return result == ClosureCompiler.NEXT ? null : result;
+    }
+
     @Override
     public String toString() {
         return "<fn " + declaration.name.lexeme + ">";
@@ -47,6 +123,6 @@ public class LoxFunction implements LoxCallable {
     public LoxFunction bind(LoxInstance instance) {
         Environment env = new Environment(closure);
         env.define("this", instance);
-        return new LoxFunction(declaration, env, isInitializer);
+        return new LoxFunction(declaration, env, isInitializer, resolution, profile);
     }
 }
@@ -0,0 +1,133 @@
+package craftinginterpreters.lox;
+
+import java.io.PrintStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A global scope for programs run through the embedding API, with the natives already defined. Values go in
+ * and come out as Java values: numbers are Doubles, strings Strings, booleans Booleans and nil is null.
+ * Functions, classes, instances, lists and maps come out as opaque objects that can be handed back to Lox.
+ */
+public final class LoxGlobals {
+    // Functions called from Java look their variables up in their own tables, so these stay empty
+    private static final Resolution NOTHING_RESOLVED = new Resolution();
+
+    final Environment environment;
+    final PrintStream out;
+    // Set by the engine that made the globals, see LoxEngine.registerMBean
+    InterpreterMetrics metrics;
+    // Every run and call in these globals gets a budget of its own, see LoxEngine.setLimits
+    ExecutionLimits limits = ExecutionLimits.NONE;
+    // Every program that ran in these globals, the functions they defined point into them
+    final List<CompiledProgram> programs;
+    // How many of the programs were there before the first run, see reset
+    private final int initialPrograms;
+
+    LoxGlobals(Environment environment, PrintStream out, List<CompiledProgram> programs) {
+        this.environment = environment;
+        this.out = out;
+        this.programs = new ArrayList<>(programs);
+        this.initialPrograms = programs.size();
+    }
+
+    public boolean contains(String name) {
+        return environment.contains(name);
+    }
+
+    /**
+     * @throws IllegalArgumentException If no global has that name
+     */
+    public Object get(String name) {
+        if (!contains(name)) throw new IllegalArgumentException("Undefined variable '" + name + "'.");
+        return environment.lookup(name);
+    }
+
+    /**
+     * Defines or redefines a global
+     * @throws IllegalArgumentException If the value has no Lox equivalent
+     */
+    public void set(String name, Object value) {
+        environment.define(name, toLox(value));
+    }
+
+    /**
+     * Writes everything reachable from these globals to a file, see LoxEngine.restore
+     * @throws IllegalStateException If a task or channel is reachable, they can't be saved
+     */
+    public void save(Path file) throws IOException {
+        HeapSnapshot.write(this, file);
+    }
+
+    /**
+     * Calls the function, class or native held by a global
+     * @return What the callee returned
+     * @throws LoxRuntimeException If the call stopped with a runtime error
+     */
+    public Object call(String name, Object... arguments) {
+        Object callee = get(name);
+        if (!(callee instanceof LoxCallable)) {
+            throw new IllegalArgumentException("'" + name + "' is not a function or class");
+        }
+
+        LoxCallable function = (LoxCallable) callee;
+        if (arguments.length != function.arity()) {
+            throw new IllegalArgumentException(
+                    "Expected " + function.arity() + " arguments but got " + arguments.length);
+        }
+
+        List<Object> values = new ArrayList<>(arguments.length);
+        for (Object argument : arguments) values.add(toLox(argument));
+
+        ErrorReporter.Captured reporter = new ErrorReporter.Captured();
+        Interpreter interpreter = new Interpreter(NOTHING_RESOLVED, environment, reporter, new Output(out));
+        interpreter.metrics = metrics;
+        ExecutionLimits.Budget budget = limits.start();
+        interpreter.limit(budget);
+        Object result;
+        try {
+            result = function.call(interpreter, values);
+        } catch (RuntimeError error) {
+            LoxEvents.runtimeError(error);
+            if (metrics != null) metrics.runtimeError();
+            reporter.runtimeError(error);
+            result = null;
+        } finally {
+            interpreter.out.flush();
+            interpreter.finish();
+            if (metrics != null && budget.hasAllocationLimit()) metrics.executionAllocated(budget.allocatedBytes());
+        }
+        reporter.rethrow();
+        return result;
+    }
+
+    void ran(CompiledProgram program) {
+        for (CompiledProgram known : programs) {
+            if (known == program) return;
+        }
+        programs.add(program);
+    }
+
+    // Back to how the globals were before the first run, only for globals restored from a snapshot
+    void reset() {
+        environment.reset();
+        programs.subList(initialPrograms, programs.size()).clear();
+    }
+
+    private static Object toLox(Object value) {
+        if (value == null || value instanceof Double || value instanceof Boolean || value instanceof String) {
+            return value;
+        }
+        if (value instanceof Number) return ((Number) value).doubleValue();
+        if (value instanceof CharSequence || value instanceof Character) return value.toString();
+        if (value instanceof LoxCallable || value instanceof LoxInstance || value instanceof LoxList
+                || value instanceof LoxMap
+                || value instanceof Tasks.Task || value instanceof Tasks.Channel) {
+            return value;
+        }
+
+        throw new IllegalArgumentException("No Lox value for " + value.getClass().getName());
+    }
+}
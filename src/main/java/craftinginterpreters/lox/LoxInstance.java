@@ -4,8 +4,10 @@ import java.util.HashMap;
 import java.util.Map;
 
 public class LoxInstance {
-    private LoxClass klass;
-    private final Map<String, Object> fields = new HashMap<>();
+    final LoxClass klass;
+    final Map<String, Object> fields = new HashMap<>();
+    // Set for what a LoxPool's prelude made, which every pooled request shares
+    boolean frozen = false;
 
     public LoxInstance(LoxClass klass) {
         this.klass = klass;
@@ -16,20 +18,28 @@ public class LoxInstance {
         return klass.name + " instance";
     }
 
-    Object get(Token name) {
+    Object get(Interpreter interpreter, Token name) {
         if (fields.containsKey(name.lexeme)) {
             return fields.get(name.lexeme);
         }
 
         LoxFunction method = klass.findMethod(name.lexeme);
 
-        if (method != null) return method.bind(this);
+        if (method != null) {
+            interpreter.count(Allocations.Kind.BOUND_METHOD);
+            interpreter.charge(Footprint.BOUND_METHOD, name);
+            return method.bind(this);
+        }
 
         throw new RuntimeError(name, "Undefined property " + name.lexeme);
 
     }
 
-    void set(Token name, Object value) {
+    // True if the field is new
+    boolean set(Token name, Object value) {
+        if (frozen) throw new RuntimeError(name, LoxPool.FROZEN);
+        int size = fields.size();
         fields.put(name.lexeme, value);
+        return fields.size() != size;
     }
 }
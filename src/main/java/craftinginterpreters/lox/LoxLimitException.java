@@ -0,0 +1,10 @@
+package craftinginterpreters.lox;
+
+/**
+ * Thrown when a script run through the embedding API goes over the engine's ExecutionLimits
+ */
+public class LoxLimitException extends LoxRuntimeException {
+    LoxLimitException(String message, int line) {
+        super(message, line);
+    }
+}
@@ -0,0 +1,134 @@
+package craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Lox's built in list, made by the list() native. Elements are read and written through methods:
+ * get(index), set(index, value), append(value) and length().
+ *
+ * While every element is a number they are kept unboxed in a double[]. The first element that isn't a
+ * number widens the storage to an Object[] for good.
+ */
+final class LoxList {
+    private static final int INITIAL_CAPACITY = 8;
+
+    // Exactly one of the two is in use, numbers until the list is widened
+    private double[] numbers = new double[INITIAL_CAPACITY];
+    private Object[] values;
+    private int size = 0;
+    // Set for what a LoxPool's prelude made, which every pooled request shares
+    boolean frozen = false;
+
+    int length() {
+        return size;
+    }
+
+    boolean isNumeric() {
+        return values == null;
+    }
+
+    Object get(int index) {
+        checkIndex(index);
+        return values == null ? (Object) numbers[index] : values[index];
+    }
+
+    void set(int index, Object value) {
+        checkIndex(index);
+        if (frozen) throw new RuntimeError(null, LoxPool.FROZEN);
+        if (values == null && value instanceof Double) {
+            numbers[index] = (double) value;
+            return;
+        }
+
+        widen();
+        values[index] = value;
+    }
+
+    void append(Object value) {
+        if (frozen) throw new RuntimeError(null, LoxPool.FROZEN);
+        if (values == null && value instanceof Double) {
+            if (size == numbers.length) numbers = Arrays.copyOf(numbers, size * 2);
+            numbers[size++] = (double) value;
+            return;
+        }
+
+        widen();
+        if (size == values.length) values = Arrays.copyOf(values, size * 2);
+        values[size++] = value;
+    }
+
+    // The methods are looked up like an instance's and come back bound to the list
+    Object get(Token name) {
+        switch (name.lexeme) {
+            case "get":
+                return new NativeMethod(this, "list." + name.lexeme, 1) {
+                    @Override
+                    public Object call(Interpreter interpreter, List<Object> arguments) {
+                        return get(index(arguments.get(0)));
+                    }
+                };
+            case "set":
+                return new NativeMethod(this, "list." + name.lexeme, 2) {
+                    @Override
+                    public Object call(Interpreter interpreter, List<Object> arguments) {
+                        set(index(arguments.get(0)), arguments.get(1));
+                        return arguments.get(1);
+                    }
+                };
+            case "append":
+                return new NativeMethod(this, "list." + name.lexeme, 1) {
+                    @Override
+                    public Object call(Interpreter interpreter, List<Object> arguments) {
+                        interpreter.charge(Footprint.LIST_ELEMENT);
+                        append(arguments.get(0));
+                        return null;
+                    }
+                };
+            case "length":
+                return new NativeMethod(this, "list." + name.lexeme, 0) {
+                    @Override
+                    public Object call(Interpreter interpreter, List<Object> arguments) {
+                        return (double) size;
+                    }
+                };
+        }
+
+        throw new RuntimeError(name, "Undefined property " + name.lexeme);
+    }
+
+    private void widen() {
+        if (values != null) return;
+
+        values = new Object[Math.max(numbers.length, INITIAL_CAPACITY)];
+        for (int i = 0; i < size; i++) values[i] = numbers[i];
+        numbers = null;
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new RuntimeError(null, "List index " + index + " out of range for length " + size);
+        }
+    }
+
+    private static int index(Object index) {
+        if (!(index instanceof Double) || (double) index != Math.floor((double) index)) {
+            throw new RuntimeError(null, "List index must be an integer");
+        }
+        double value = (double) index;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new RuntimeError(null, "List index out of range");
+        }
+        return (int) value;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder res = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) res.append(", ");
+            Interpreter.stringify(res, get(i));
+        }
+        return res.append("]").toString();
+    }
+}
@@ -0,0 +1,301 @@
+package craftinginterpreters.lox;
+
+import java.util.List;
+
+/**
+ * Lox's built in map, made by the map() native. Any value can be a key: numbers, strings and booleans by
+ * value, nil, and everything else by identity. Methods: get(key), which is nil for a missing key,
+ * set(key, value), has(key), remove(key), size(), and keys() and values(), which return lists.
+ *
+ * An open addressing table with linear probing, kept in parallel arrays. Number keys sit unboxed in a
+ * double[], and every slot caches its key's hash so most mismatches are rejected without calling equals.
+ */
+final class LoxMap {
+    private static final int INITIAL_CAPACITY = 16;
+
+    // What each slot holds
+    private static final byte EMPTY = 0;
+    private static final byte NUMBER = 1;
+    private static final byte OBJECT = 2;
+    private static final byte NIL = 3;
+
+    private byte[] kinds = new byte[INITIAL_CAPACITY];
+    private int[] hashes = new int[INITIAL_CAPACITY];
+    private double[] numberKeys = new double[INITIAL_CAPACITY];
+    private Object[] objectKeys = new Object[INITIAL_CAPACITY];
+    private Object[] values = new Object[INITIAL_CAPACITY];
+    private int size = 0;
+    // Set for what a LoxPool's prelude made, which every pooled request shares
+    boolean frozen = false;
+
+    int size() {
+        return size;
+    }
+
+    Object get(Object key) {
+        int slot = find(key);
+        return slot < 0 ? null : values[slot];
+    }
+
+    boolean has(Object key) {
+        return find(key) >= 0;
+    }
+
+    void set(Object key, Object value) {
+        if (frozen) throw new RuntimeError(null, LoxPool.FROZEN);
+        int slot = find(key);
+        if (slot >= 0) {
+            values[slot] = value;
+            return;
+        }
+
+        // Keeps the table at most two thirds full, so probe sequences stay short
+        if ((size + 1) * 3 > kinds.length * 2) resize(kinds.length * 2);
+        insert(kindOf(key), hash(key), key, value);
+        size++;
+    }
+
+    boolean remove(Object key) {
+        if (frozen) throw new RuntimeError(null, LoxPool.FROZEN);
+        int slot = find(key);
+        if (slot < 0) return false;
+
+        clear(slot);
+        size--;
+
+        // Moves the rest of the probe run back so lookups never stop early at the hole, no tombstones needed
+        int mask = kinds.length - 1;
+        int hole = slot;
+        for (int next = (slot + 1) & mask; kinds[next] != EMPTY; next = (next + 1) & mask) {
+            int home = hashes[next] & mask;
+            // An entry can move into the hole only if the hole lies between its home slot and where it is now
+            boolean movable = hole <= next ? (home <= hole || home > next) : (home <= hole && home > next);
+            if (movable) {
+                move(next, hole);
+                hole = next;
+            }
+        }
+        return true;
+    }
+
+    LoxList keys() {
+        LoxList keys = new LoxList();
+        for (int slot = 0; slot < kinds.length; slot++) {
+            if (kinds[slot] != EMPTY) keys.append(keyAt(slot));
+        }
+        return keys;
+    }
+
+    LoxList values() {
+        LoxList res = new LoxList();
+        for (int slot = 0; slot < kinds.length; slot++) {
+            if (kinds[slot] != EMPTY) res.append(values[slot]);
+        }
+        return res;
+    }
+
+    // The key in the slot, boxed again if it is a number
+    Object keyAt(int slot) {
+        switch (kinds[slot]) {
+            case NUMBER: return numberKeys[slot];
+            case OBJECT: return objectKeys[slot];
+            default: return null;
+        }
+    }
+
+    // Slots run from 0 to capacity, empty ones have kind EMPTY, see HeapSnapshot
+    int capacity() {
+        return kinds.length;
+    }
+
+    boolean isEmpty(int slot) {
+        return kinds[slot] == EMPTY;
+    }
+
+    Object valueAt(int slot) {
+        return values[slot];
+    }
+
+    // The methods are looked up like an instance's and come back bound to the map
+    Object get(Token name) {
+        switch (name.lexeme) {
+            case "get":
+                return new NativeMethod(this, "map." + name.lexeme, 1) {
+                    @Override
+                    public Object call(Interpreter interpreter, List<Object> arguments) {
+                        return get(arguments.get(0));
+                    }
+                };
+            case "set":
+                return new NativeMethod(this, "map." + name.lexeme, 2) {
+                    @Override
+                    public Object call(Interpreter interpreter, List<Object> arguments) {
+                        int before = size;
+                        set(arguments.get(0), arguments.get(1));
+                        if (size != before) interpreter.charge(Footprint.MAP_ENTRY);
+                        return arguments.get(1);
+                    }
+                };
+            case "has":
+                return new NativeMethod(this, "map." + name.lexeme, 1) {
+                    @Override
+                    public Object call(Interpreter interpreter, List<Object> arguments) {
+                        return has(arguments.get(0));
+                    }
+                };
+            case "remove":
+                return new NativeMethod(this, "map." + name.lexeme, 1) {
+                    @Override
+                    public Object call(Interpreter interpreter, List<Object> arguments) {
+                        return remove(arguments.get(0));
+                    }
+                };
+            case "size":
+                return new NativeMethod(this, "map." + name.lexeme, 0) {
+                    @Override
+                    public Object call(Interpreter interpreter, List<Object> arguments) {
+                        return (double) size;
+                    }
+                };
+            case "keys":
+                return new NativeMethod(this, "map." + name.lexeme, 0) {
+                    @Override
+                    public Object call(Interpreter interpreter, List<Object> arguments) {
+                        return keys();
+                    }
+                };
+            case "values":
+                return new NativeMethod(this, "map." + name.lexeme, 0) {
+                    @Override
+                    public Object call(Interpreter interpreter, List<Object> arguments) {
+                        return values();
+                    }
+                };
+        }
+
+        throw new RuntimeError(name, "Undefined property " + name.lexeme);
+    }
+
+    private int find(Object key) {
+        int mask = kinds.length - 1;
+        int hash = hash(key);
+        int slot = hash & mask;
+
+        if (key instanceof Double) {
+            long bits = Double.doubleToLongBits((double) key);
+            for (; kinds[slot] != EMPTY; slot = (slot + 1) & mask) {
+                if (kinds[slot] == NUMBER && hashes[slot] == hash
+                        && Double.doubleToLongBits(numberKeys[slot]) == bits) {
+                    return slot;
+                }
+            }
+            return -1;
+        }
+
+        if (key == null) {
+            for (; kinds[slot] != EMPTY; slot = (slot + 1) & mask) {
+                if (kinds[slot] == NIL) return slot;
+            }
+            return -1;
+        }
+
+        for (; kinds[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (kinds[slot] == OBJECT && hashes[slot] == hash) {
+                Object other = objectKeys[slot];
+                if (other == key || other.equals(key)) return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void insert(byte kind, int hash, Object key, Object value) {
+        int mask = kinds.length - 1;
+        int slot = hash & mask;
+        while (kinds[slot] != EMPTY) slot = (slot + 1) & mask;
+
+        kinds[slot] = kind;
+        hashes[slot] = hash;
+        if (kind == NUMBER) {
+            numberKeys[slot] = (double) key;
+        } else if (kind == OBJECT) {
+            objectKeys[slot] = key;
+        }
+        values[slot] = value;
+    }
+
+    private void resize(int capacity) {
+        byte[] oldKinds = kinds;
+        int[] oldHashes = hashes;
+        double[] oldNumberKeys = numberKeys;
+        Object[] oldObjectKeys = objectKeys;
+        Object[] oldValues = values;
+
+        kinds = new byte[capacity];
+        hashes = new int[capacity];
+        numberKeys = new double[capacity];
+        objectKeys = new Object[capacity];
+        values = new Object[capacity];
+
+        for (int slot = 0; slot < oldKinds.length; slot++) {
+            byte kind = oldKinds[slot];
+            if (kind == EMPTY) continue;
+            Object key = kind == NUMBER ? null : oldObjectKeys[slot];
+            int hash = oldHashes[slot];
+
+            int mask = capacity - 1;
+            int target = hash & mask;
+            while (kinds[target] != EMPTY) target = (target + 1) & mask;
+            kinds[target] = kind;
+            hashes[target] = hash;
+            numberKeys[target] = oldNumberKeys[slot];
+            objectKeys[target] = key;
+            values[target] = oldValues[slot];
+        }
+    }
+
+    private void move(int from, int to) {
+        kinds[to] = kinds[from];
+        hashes[to] = hashes[from];
+        numberKeys[to] = numberKeys[from];
+        objectKeys[to] = objectKeys[from];
+        values[to] = values[from];
+        clear(from);
+    }
+
+    private void clear(int slot) {
+        kinds[slot] = EMPTY;
+        objectKeys[slot] = null;
+        values[slot] = null;
+    }
+
+    private static byte kindOf(Object key) {
+        if (key instanceof Double) return NUMBER;
+        return key == null ? NIL : OBJECT;
+    }
+
+    // Spread so that keys differing only in their high bits, like small integral doubles, still spread out
+    private static int hash(Object key) {
+        int hash;
+        if (key instanceof Double) {
+            long bits = Double.doubleToLongBits((double) key);
+            hash = (int) (bits ^ (bits >>> 32));
+        } else {
+            hash = key == null ? 0 : key.hashCode();
+        }
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder res = new StringBuilder("{");
+        for (int slot = 0; slot < kinds.length; slot++) {
+            if (kinds[slot] == EMPTY) continue;
+            if (res.length() > 1) res.append(", ");
+            Interpreter.stringify(res, keyAt(slot));
+            res.append(": ");
+            Interpreter.stringify(res, values[slot]);
+        }
+        return res.append("}").toString();
+    }
+}
@@ -0,0 +1,21 @@
+package craftinginterpreters.lox;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a static method to be defined as a Lox native, see LoxEngine.defineNatives.
+ *
+ * Parameters can be Object, which takes any Lox value as LoxGlobals hands them out, double, boolean, String
+ * or LoxCallable. Calls with arguments of the wrong type fail with a runtime error. The method can return
+ * void, which is nil in Lox, a number type, boolean, String or Object, which must then hold a Lox value.
+ * Exceptions it throws stop the script with a runtime error.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface LoxNative {
+    // The name of the global, the method's name if empty
+    String value() default "";
+}
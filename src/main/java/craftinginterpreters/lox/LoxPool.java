@@ -0,0 +1,131 @@
+package craftinginterpreters.lox;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Function;
+
+/**
+ * A fixed number of LoxGlobals that all start out as what a prelude left behind, so requests get a clean
+ * global scope with the prelude's functions and classes in it without running the prelude again.
+ *
+ * The prelude runs once. Its globals are captured in a snapshot that every pooled LoxGlobals reads through to
+ * and writes over, and releasing one just drops its writes. The snapshot is shallow, so everything the prelude
+ * made that can change (instances, lists, maps and the scopes its closures captured) is frozen: requests share
+ * it, and writing to it stops the request with a runtime error. A prelude that leaves tasks or channels in its
+ * globals is rejected. Tasks a request spawned must be joined before it is released.
+ */
+public final class LoxPool {
+    static final String FROZEN = "Can't change what the pool's prelude made, every request shares it";
+
+    private final BlockingQueue<LoxGlobals> idle;
+    private final Set<LoxGlobals> members = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * @throws LoxRuntimeException If the prelude stopped with a runtime error
+     * @throws IllegalArgumentException If the prelude left a task or a channel in its globals
+     */
+    public LoxPool(CompiledProgram prelude, int size) {
+        if (size < 1) throw new IllegalArgumentException("Pool size must be positive");
+
+        LoxGlobals warmed = prelude.run();
+        Map<String, Object> snapshot = warmed.environment.snapshot();
+        freeze(snapshot.values());
+
+        this.idle = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++) {
+            LoxGlobals globals = new LoxGlobals(Environment.fromSnapshot(snapshot), warmed.out, warmed.programs);
+            globals.metrics = warmed.metrics;
+            globals.limits = warmed.limits;
+            members.add(globals);
+            idle.add(globals);
+        }
+    }
+
+    // Freezes everything reachable from the values
+    private static void freeze(Collection<?> values) {
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Object> pending = new ArrayDeque<>();
+        addAll(pending, values);
+        while (!pending.isEmpty()) {
+            Object value = pending.pop();
+            if (!seen.add(value)) continue;
+
+            if (value instanceof LoxInstance) {
+                LoxInstance instance = (LoxInstance) value;
+                instance.frozen = true;
+                pending.push(instance.klass);
+                addAll(pending, instance.fields.values());
+            } else if (value instanceof LoxClass) {
+                LoxClass klass = (LoxClass) value;
+                if (klass.superclass != null) pending.push(klass.superclass);
+                addAll(pending, klass.methods.values());
+            } else if (value instanceof LoxFunction) {
+                pending.push(((LoxFunction) value).closure);
+            } else if (value instanceof Environment) {
+                Environment environment = (Environment) value;
+                environment.frozen = true;
+                environment.forEach((name, variable) -> {
+                    if (variable != null) pending.push(variable);
+                });
+                if (environment.enclosing != null) pending.push(environment.enclosing);
+            } else if (value instanceof LoxList) {
+                LoxList list = (LoxList) value;
+                list.frozen = true;
+                for (int i = 0; i < list.length(); i++) {
+                    if (list.get(i) != null) pending.push(list.get(i));
+                }
+            } else if (value instanceof LoxMap) {
+                LoxMap map = (LoxMap) value;
+                map.frozen = true;
+                for (int slot = 0; slot < map.capacity(); slot++) {
+                    if (map.isEmpty(slot)) continue;
+                    if (map.keyAt(slot) != null) pending.push(map.keyAt(slot));
+                    if (map.valueAt(slot) != null) pending.push(map.valueAt(slot));
+                }
+            } else if (value instanceof NativeMethod) {
+                pending.push(((NativeMethod) value).receiver);
+            } else if (value instanceof Tasks.Task || value instanceof Tasks.Channel) {
+                throw new IllegalArgumentException("The prelude left a " + value
+                        + " in its globals, pooled requests can't share it");
+            }
+        }
+    }
+
+    private static void addAll(Deque<Object> pending, Collection<?> values) {
+        for (Object value : values) {
+            if (value != null) pending.push(value);
+        }
+    }
+
+    // Waits until one of the pooled globals is free
+    public LoxGlobals acquire() throws InterruptedException {
+        return idle.take();
+    }
+
+    // Resets the globals to the prelude's snapshot and hands them to the next request
+    public void release(LoxGlobals globals) {
+        if (!members.contains(globals)) throw new IllegalArgumentException("Globals do not belong to this pool");
+
+        globals.reset();
+        idle.add(globals);
+    }
+
+    /**
+     * Runs one request on pooled globals, releasing them afterwards even if the request fails
+     */
+    public <T> T run(Function<LoxGlobals, T> request) throws InterruptedException {
+        LoxGlobals globals = acquire();
+        try {
+            return request.apply(globals);
+        } finally {
+            release(globals);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package craftinginterpreters.lox;
+
+/**
+ * Thrown when a script run through the embedding API stops with a runtime error.
+ */
+public class LoxRuntimeException extends LoxException {
+    private final int line;
+
+    LoxRuntimeException(String message, int line) {
+        super(line > 0 ? message + " [line " + line + "]" : message);
+        this.line = line;
+    }
+
+    // The line the error happened on, 0 if it came from a native called directly from Java
+    public int line() {
+        return line;
+    }
+}
@@ -0,0 +1,215 @@
+package craftinginterpreters.lox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A static Java method annotated with LoxNative, called through a MethodHandle. The checks and conversions
+ * of its arguments and result are bound into the handle once, when the native is made, so a call is one
+ * invokeExact. The Interpreter calls natives with up to three arguments through invoke, without collecting
+ * the arguments into a list first.
+ *
+ * A method whose first parameter is an Interpreter gets the calling Interpreter there, it doesn't count
+ * towards the arity.
+ */
+final class NativeFunction implements LoxCallable {
+    private static final int MAX_DIRECT_ARITY = 3;
+
+    // The names parameter types go by in error messages
+    private static final Map<Class<?>, String> TYPE_NAMES = Map.of(
+            String.class, "a string",
+            Boolean.class, "a boolean",
+            LoxCallable.class, "a function",
+            LoxList.class, "a list",
+            LoxMap.class, "a map");
+    private static final Set<Class<?>> RESULT_TYPES = Set.of(
+            Object.class, String.class, Boolean.class, Double.class, LoxCallable.class, LoxList.class, LoxMap.class);
+
+    private static final MethodHandle TO_NUMBER;
+    private static final MethodHandle CHECK_TYPE;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            TO_NUMBER = lookup.findStatic(NativeFunction.class, "toNumber",
+                    MethodType.methodType(double.class, String.class, Object.class));
+            CHECK_TYPE = lookup.findStatic(NativeFunction.class, "checkType",
+                    MethodType.methodType(Object.class, Class.class, String.class, Object.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    final String name;
+    private final int arity;
+    // Of type (Interpreter, Object...) Object, taking arity Objects
+    private final MethodHandle handle;
+
+    private NativeFunction(String name, int arity, MethodHandle handle) {
+        this.name = name;
+        this.arity = arity;
+        this.handle = handle;
+    }
+
+    /**
+     * Makes a native of every static method of the class annotated with LoxNative
+     * @param lookup Has access to the methods, MethodHandles.lookup() called in the class itself
+     * @throws IllegalArgumentException If an annotated method isn't static or has a type Lox can't call
+     */
+    static List<NativeFunction> all(MethodHandles.Lookup lookup, Class<?> holder) {
+        List<NativeFunction> natives = new ArrayList<>();
+        for (Method method : holder.getDeclaredMethods()) {
+            LoxNative annotation = method.getAnnotation(LoxNative.class);
+            if (annotation == null) continue;
+
+            String name = annotation.value().isEmpty() ? method.getName() : annotation.value();
+            if (!Modifier.isStatic(method.getModifiers())) {
+                throw new IllegalArgumentException("Native " + name + " must be static");
+            }
+            try {
+                natives.add(of(name, lookup.unreflect(method)));
+            } catch (IllegalAccessException e) {
+                throw new IllegalArgumentException("Can't access " + method, e);
+            }
+        }
+        return natives;
+    }
+
+    private static NativeFunction of(String name, MethodHandle method) {
+        MethodType type = method.type();
+        int first = type.parameterCount() > 0 && type.parameterType(0) == Interpreter.class ? 1 : 0;
+        int arity = type.parameterCount() - first;
+
+        MethodHandle[] filters = new MethodHandle[arity];
+        for (int i = 0; i < arity; i++) {
+            filters[i] = argument(type.parameterType(first + i), "Argument " + (i + 1) + " of " + name);
+        }
+        MethodHandle handle = MethodHandles.filterArguments(method, first, filters);
+        if (first == 0) handle = MethodHandles.dropArguments(handle, 0, Interpreter.class);
+
+        handle = result(name, handle);
+        MethodType generic = MethodType.genericMethodType(arity).insertParameterTypes(0, Interpreter.class);
+        return new NativeFunction(name, arity, handle.asType(generic));
+    }
+
+    // Turns a Lox value into the parameter type, failing with a runtime error if it has another type
+    private static MethodHandle argument(Class<?> type, String what) {
+        if (type == Object.class) return null;
+        if (type == double.class) return MethodHandles.insertArguments(TO_NUMBER, 0, what);
+
+        Class<?> boxed = type == boolean.class ? Boolean.class : type;
+        if (!TYPE_NAMES.containsKey(boxed)) {
+            throw new IllegalArgumentException(what + " has type " + type.getName() + ", which Lox doesn't have");
+        }
+        return MethodHandles.insertArguments(CHECK_TYPE, 0, boxed, what)
+                .asType(MethodType.methodType(type, Object.class));
+    }
+
+    // Makes the method return a Lox value
+    private static MethodHandle result(String name, MethodHandle handle) {
+        Class<?> type = handle.type().returnType();
+        // void comes back as null, which is nil
+        if (type == void.class) return handle;
+        // Numbers are doubles in Lox
+        if (type == int.class || type == long.class || type == float.class) {
+            return handle.asType(handle.type().changeReturnType(double.class));
+        }
+        if (type == double.class || type == boolean.class) return handle;
+
+        if (!RESULT_TYPES.contains(type)) {
+            throw new IllegalArgumentException("Native " + name + " returns " + type.getName()
+                    + ", which Lox doesn't have");
+        }
+        return handle;
+    }
+
+    private static double toNumber(String what, Object value) {
+        if (value instanceof Double) return (double) value;
+        throw new RuntimeError(null, what + " must be a number");
+    }
+
+    private static Object checkType(Class<?> type, String what, Object value) {
+        if (type.isInstance(value)) return value;
+        throw new RuntimeError(null, what + " must be " + TYPE_NAMES.get(type));
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    // Whether invoke with arity arguments can be used
+    boolean isDirect() {
+        return arity <= MAX_DIRECT_ARITY;
+    }
+
+    Object invoke(Interpreter interpreter) {
+        try {
+            return (Object) handle.invokeExact(interpreter);
+        } catch (Throwable t) {
+            throw failed(t);
+        }
+    }
+
+    Object invoke(Interpreter interpreter, Object a) {
+        try {
+            return (Object) handle.invokeExact(interpreter, a);
+        } catch (Throwable t) {
+            throw failed(t);
+        }
+    }
+
+    Object invoke(Interpreter interpreter, Object a, Object b) {
+        try {
+            return (Object) handle.invokeExact(interpreter, a, b);
+        } catch (Throwable t) {
+            throw failed(t);
+        }
+    }
+
+    Object invoke(Interpreter interpreter, Object a, Object b, Object c) {
+        try {
+            return (Object) handle.invokeExact(interpreter, a, b, c);
+        } catch (Throwable t) {
+            throw failed(t);
+        }
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        switch (arguments.size()) {
+            case 0: return invoke(interpreter);
+            case 1: return invoke(interpreter, arguments.get(0));
+            case 2: return invoke(interpreter, arguments.get(0), arguments.get(1));
+            case 3: return invoke(interpreter, arguments.get(0), arguments.get(1), arguments.get(2));
+        }
+
+        List<Object> all = new ArrayList<>(arguments.size() + 1);
+        all.add(interpreter);
+        all.addAll(arguments);
+        try {
+            return handle.invokeWithArguments(all);
+        } catch (Throwable t) {
+            throw failed(t);
+        }
+    }
+
+    // Runtime errors go through as they are, exceptions from the Java code become runtime errors
+    private RuntimeException failed(Throwable t) {
+        if (t instanceof RuntimeError) return (RuntimeError) t;
+        if (t instanceof Error) throw (Error) t;
+        return new RuntimeError(null, "Native " + name + " failed: " + t);
+    }
+
+    @Override
+    public String toString() {
+        return "<native " + name + ">";
+    }
+}
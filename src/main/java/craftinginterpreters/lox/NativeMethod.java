@@ -0,0 +1,27 @@
+package craftinginterpreters.lox;
+
+/**
+ * A method of a built in type, bound to the list or map it was looked up on
+ */
+abstract class NativeMethod implements LoxCallable {
+    // The list or map
+    final Object receiver;
+    private final String name;
+    private final int arity;
+
+    NativeMethod(Object receiver, String name, int arity) {
+        this.receiver = receiver;
+        this.name = name;
+        this.arity = arity;
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    @Override
+    public String toString() {
+        return "<native " + name + ">";
+    }
+}
@@ -0,0 +1,60 @@
+package craftinginterpreters.lox;
+
+import java.io.PrintStream;
+
+/**
+ * Where print statements go. Lines are collected and handed to the stream in large blocks, so a script that
+ * prints millions of lines doesn't pay for a synchronized write and a flush on every one of them.
+ * The Interpreter flushes when it finishes or stops with a runtime error, before the error goes to stderr,
+ * and scripts can flush themselves with the flush() native. Line buffered output writes every line through
+ * at once, as interactive use wants.
+ *
+ * Shared by every task a script spawns, so the methods are synchronized.
+ */
+final class Output {
+    // Characters collected before they are written out
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final PrintStream stream;
+    // Grows as needed, embedded runs often print little or nothing
+    private final StringBuilder buffer = new StringBuilder();
+    private volatile boolean lineBuffered;
+
+    Output(PrintStream stream) {
+        this(stream, false);
+    }
+
+    Output(PrintStream stream, boolean lineBuffered) {
+        this.stream = stream;
+        this.lineBuffered = lineBuffered;
+    }
+
+    void setLineBuffered(boolean lineBuffered) {
+        this.lineBuffered = lineBuffered;
+        if (lineBuffered) flush();
+    }
+
+    // Prints the value as Interpreter.stringify formats it
+    synchronized void println(Object value) {
+        if (lineBuffered) {
+            stream.println(Interpreter.stringify(value));
+            stream.flush();
+            return;
+        }
+
+        Interpreter.stringify(buffer, value);
+        buffer.append(System.lineSeparator());
+        if (buffer.length() >= BUFFER_SIZE) drain();
+    }
+
+    synchronized void flush() {
+        drain();
+        stream.flush();
+    }
+
+    private void drain() {
+        if (buffer.length() == 0) return;
+        stream.print(buffer);
+        buffer.setLength(0);
+    }
+}
@@ -3,6 +3,7 @@ package craftinginterpreters.lox;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static craftinginterpreters.lox.TokenType.*;
 
@@ -10,21 +11,61 @@ public class Parser {
     private static class ParseError extends RuntimeException {}
 
     private final List<Token> tokens;
+    private final ErrorReporter reporter;
+    // When streaming, tokens are pulled from here as the parser needs them
+    private final RingBuffer<Token> source;
     private int current = 0;
 
 
 
     public Parser(List<Token> tokens) {
+        this(tokens, Lox.reporter);
+    }
+
+    Parser(List<Token> tokens, ErrorReporter reporter) {
         this.tokens = tokens;
+        this.reporter = reporter;
+        this.source = null;
+    }
+
+    /**
+     * A parser that reads its tokens from a scanner running on another thread.
+     */
+    Parser(RingBuffer<Token> source, ErrorReporter reporter) {
+        this.tokens = new ArrayList<>();
+        this.reporter = reporter;
+        this.source = source;
     }
 
     public List<Stmt> parse() {
         List<Stmt> statements = new ArrayList<>();
+        parse(statements::add);
+        return statements;
+    }
+
+    /**
+     * Parses the whole program, handing every top level declaration to the sink as soon as it is complete.
+     * Declarations that failed to parse are passed on as null, like parse() does.
+     */
+    void parse(Consumer<Stmt> sink) {
         while (!isAtEnd()) {
-            statements.add(declaration());
+            sink.accept(declaration());
         }
+    }
 
-        return statements;
+    // The pieces of parse() that Document uses to parse one top level declaration at a time
+
+    boolean atEnd() {
+        return isAtEnd();
+    }
+
+    Stmt nextDeclaration() {
+        return declaration();
+    }
+
+    // Index of the next token to be consumed
+    int position() {
+        return current;
     }
 
     private Stmt declaration() {
@@ -108,7 +149,8 @@ public class Parser {
             ));
         }
 
-        if (condition == null) condition = new Expr.Literal(true);
+        // Line 0, the condition isn't in the source
+        if (condition == null) condition = new Expr.Literal(true, 0);
         body = new Stmt.While(condition, body);
 
         if (initializer != null) body = new Stmt.Block(Arrays.asList(initializer, body));
@@ -368,12 +410,12 @@ public class Parser {
     }
 
     private Expr primary() {
-        if (match(FALSE)) return new Expr.Literal(false);
-        if (match(TRUE)) return new Expr.Literal(true);
-        if (match(NIL)) return new Expr.Literal(null);
+        if (match(FALSE)) return new Expr.Literal(false, previous().line());
+        if (match(TRUE)) return new Expr.Literal(true, previous().line());
+        if (match(NIL)) return new Expr.Literal(null, previous().line());
 
         if (match(NUMBER, STRING)) {
-            return new Expr.Literal(previous().literal);
+            return new Expr.Literal(previous().literal, previous().line());
         }
 
         if (match(SUPER)) {
@@ -406,7 +448,7 @@ public class Parser {
 
     // Error handling function
     private ParseError error(Token token, String text) {
-        Lox.error(token, text);
+        reporter.error(token, text);
         return new ParseError();
     }
 
@@ -461,10 +503,18 @@ public class Parser {
     }
 
     private Token peek(){
+        if (this.current == tokens.size()) fill();
 
         return tokens.get(this.current);
     }
 
+    // Only reached when streaming, a token list handed to the constructor always ends with EOF
+    private void fill() {
+        Token token = source.take();
+        if (token == null) throw new IllegalStateException("Token stream ended before EOF");
+        tokens.add(token);
+    }
+
     private Token previous() {
         return tokens.get(this.current - 1);
     }
@@ -0,0 +1,177 @@
+package craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A sampling profiler for Lox code, see Lox --profile. LoxFunction.call keeps a shadow stack of the Lox
+ * functions being run, and a daemon thread copies it every two milliseconds. The interpreter publishes the
+ * stack through a volatile write of its depth, so the sampler always sees the frames below the depth it
+ * read. It doesn't lock, so a sample taken during a call or return can be a frame off, which washes out
+ * over thousands of samples.
+ *
+ * The samples are written as collapsed stacks, one "frame;frame;frame count" line per distinct stack, which
+ * flamegraph.pl and speedscope read. Frames are function names with the line they are declared on.
+ * Only the thread running the script is sampled, not the tasks it spawns.
+ */
+final class Profiler {
+    private static final long INTERVAL_NANOS = 2_000_000;
+    private static final String ROOT = "<script>";
+
+    // The shadow stack, written by the interpreter thread only. A frame is stored before the depth that
+    // includes it, and the sampler reads the depth first.
+    private Stmt.Function[] frames = new Stmt.Function[64];
+    private volatile int depth = 0;
+
+    // The samples as a tree of call paths from the script down. Only touched by the sampler until stop returns.
+    private final Node root = new Node(null);
+    private long samples = 0;
+
+    private final Thread sampler = new Thread(this::sample, "lox-profiler");
+    private volatile boolean running = false;
+    private long startNanos;
+    private long elapsedNanos;
+
+    void enter(Stmt.Function function) {
+        int depth = this.depth;
+        if (depth == frames.length) {
+            Stmt.Function[] grown = new Stmt.Function[depth * 2];
+            System.arraycopy(frames, 0, grown, 0, depth);
+            frames = grown;
+        }
+        frames[depth] = function;
+        this.depth = depth + 1;
+    }
+
+    void exit() {
+        depth--;
+    }
+
+    void start() {
+        running = true;
+        startNanos = System.nanoTime();
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    void stop() {
+        running = false;
+        elapsedNanos = System.nanoTime() - startNanos;
+        try {
+            sampler.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void sample() {
+        while (running) {
+            LockSupport.parkNanos(INTERVAL_NANOS);
+
+            // The depth first: the array read after it is at least as long and holds the frames below it. The
+            // interpreter may have returned and called something else since, which is the frame off. If it grew
+            // the array meanwhile, the copy it made isn't published to this thread and can show a null.
+            int depth = this.depth;
+            Stmt.Function[] frames = this.frames;
+
+            // Walks down the tree without building the stack's name, that waits for report
+            Node node = root;
+            for (int i = 0; i < depth; i++) {
+                Stmt.Function function = frames[i];
+                if (function != null) node = node.child(function);
+            }
+            node.samples++;
+            samples++;
+        }
+    }
+
+    /**
+     * Writes the collapsed stacks to the file and a table of where the time went to the stream, after stop
+     */
+    void report(Path collapsed, PrintStream table) throws IOException {
+        Map<String, Long> stacks = new HashMap<>();
+        root.collapse(ROOT, stacks);
+
+        try (Writer out = Files.newBufferedWriter(collapsed)) {
+            for (Map.Entry<String, Long> stack : stacks.entrySet()) {
+                out.write(stack.getKey() + " " + stack.getValue() + "\n");
+            }
+        }
+
+        // Self counts samples with the function on top, total samples with it anywhere, recursion counted once
+        Map<String, long[]> functions = new HashMap<>();
+        for (Map.Entry<String, Long> stack : stacks.entrySet()) {
+            String[] frames = stack.getKey().split(";");
+            long count = stack.getValue();
+            Set<String> seen = new HashSet<>();
+            for (String frame : frames) {
+                if (seen.add(frame)) functions.computeIfAbsent(frame, f -> new long[2])[1] += count;
+            }
+            functions.get(frames[frames.length - 1])[0] += count;
+        }
+
+        List<Map.Entry<String, long[]>> rows = new ArrayList<>(functions.entrySet());
+        rows.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+
+        double millisPerSample = samples == 0 ? 0 : elapsedNanos / 1e6 / samples;
+        table.printf("%d samples over %.0f ms, collapsed stacks in %s%n", samples, elapsedNanos / 1e6, collapsed);
+        table.printf("%10s %7s %10s %7s  %s%n", "self ms", "self", "total ms", "total", "function");
+        for (Map.Entry<String, long[]> row : rows) {
+            long self = row.getValue()[0];
+            long total = row.getValue()[1];
+            table.printf("%10.0f %6.1f%% %10.0f %6.1f%%  %s%n", self * millisPerSample, 100.0 * self / samples,
+                    total * millisPerSample, 100.0 * total / samples, row.getKey());
+        }
+    }
+
+    // A call path, the samples taken with exactly this path on the stack
+    private static final class Node {
+        private final Stmt.Function function;
+        private final Map<Stmt.Function, Node> children = new IdentityHashMap<>();
+        private long samples = 0;
+
+        Node(Stmt.Function function) {
+            this.function = function;
+        }
+
+        Node child(Stmt.Function function) {
+            Node child = children.get(function);
+            if (child == null) {
+                child = new Node(function);
+                children.put(function, child);
+            }
+            return child;
+        }
+
+        // Adds the samples of this path and every path below it, by the names of their collapsed stacks. Walks
+        // the tree with a stack of its own, a deeply recursive script makes as deep a tree.
+        void collapse(String stack, Map<String, Long> stacks) {
+            ArrayDeque<Node> nodes = new ArrayDeque<>();
+            ArrayDeque<String> names = new ArrayDeque<>();
+            nodes.push(this);
+            names.push(stack);
+            while (!nodes.isEmpty()) {
+                Node node = nodes.pop();
+                String name = names.pop();
+                if (node.samples > 0) stacks.merge(name, node.samples, Long::sum);
+                for (Node child : node.children.values()) {
+                    Stmt.Function function = child.function;
+                    nodes.push(child);
+                    names.push(name + ";" + function.name.lexeme + ":" + function.name.line());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package craftinginterpreters.lox;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * What the Resolver works out about a program: how many scopes up every local variable reference has to
+ * look, and the layout of every block and function scope.
+ */
+class Resolution {
+    final Map<Expr, Integer> locals;
+    final Map<Stmt, ScopeLayout> layouts;
+    // Tiering's counts and compiled code, for the functions and loops that have run
+    private final Map<Stmt, TierProfile> profiles = new ConcurrentHashMap<>();
+
+    Resolution() {
+        this(new HashMap<>(), new HashMap<>());
+    }
+
+    Resolution(Map<Expr, Integer> locals, Map<Stmt, ScopeLayout> layouts) {
+        this.locals = locals;
+        this.layouts = layouts;
+    }
+
+    void addAll(Resolution other) {
+        locals.putAll(other.locals);
+        layouts.putAll(other.layouts);
+    }
+
+    // The profile of a function declaration or a loop resolved here
+    TierProfile profile(Stmt code) {
+        TierProfile profile = profiles.get(code);
+        if (profile == null) profile = profiles.computeIfAbsent(code, unit -> new TierProfile(unit, this));
+        return profile;
+    }
+}
@@ -1,22 +1,33 @@
 package craftinginterpreters.lox;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.Stack;
 
 /**
  * A Class that facilitates static analysis of Lox code
  */
 public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
-    private final Interpreter interpreter;
-    // Keeps track of the different scopes we are aware of
-    private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+    // Where resolved scope distances and scope layouts go, usually the interpreter's own tables
+    private final Map<Expr, Integer> locals;
+    private final Map<Stmt, ScopeLayout> layouts;
+    private final ErrorReporter reporter;
+    // Keeps track of the different scopes we are aware of, the innermost one is scopes[scopeCount - 1].
+    // Scope objects stay in the array when popped and are reused by the next scope at that depth.
+    private Scope[] scopes = new Scope[16];
+    private int scopeCount = 0;
+    // How many functions deep we are, to tell when a variable is used from a nested function
     private FunctionType currentFunction = FunctionType.NONE;
     private ClassType currentClass = ClassType.NONE;
 
     public Resolver(Interpreter interpreter) {
-        this.interpreter = interpreter;
+        this(interpreter.resolution, Lox.reporter);
+    }
+
+    Resolver(Resolution resolution, ErrorReporter reporter) {
+        this.locals = resolution.locals;
+        this.layouts = resolution.layouts;
+        this.reporter = reporter;
     }
 
     private enum FunctionType {
@@ -37,20 +48,20 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
     public Void visitBlockStmt(Stmt.Block stmt) {
         beginScope();
         resolve(stmt.statements);
-        endScope();
+        endScope(stmt);
         return null;
     }
 
     @Override
     public Void visitClassStmt(Stmt.Class stmt) {
         ClassType enclosingClass = this.currentClass;
-        currentClass = ClassType.NONE;
+        currentClass = ClassType.CLASS;
 
         declare(stmt.name);
         define(stmt.name);
 
         if (stmt.superclass != null && stmt.name.lexeme.equals(stmt.superclass.name.lexeme)) {
-            Lox.error(stmt.superclass.name, "A class cannot inherit from itself");
+            reporter.error(stmt.superclass.name, "A class cannot inherit from itself");
         }
 
         if (stmt.superclass != null) {
@@ -60,11 +71,11 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
 
         if (stmt.superclass != null) {
             beginScope();
-            scopes.peek().put("super", true);
+            peek().define("super");
         }
 
         beginScope();
-        scopes.peek().put("this", true);
+        peek().define("this");
 
         for (Stmt.Function method : stmt.methods) {
             FunctionType declaration = FunctionType.METHOD;
@@ -73,9 +84,9 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
             }
             resolveFunction(method, declaration);
         }
-        endScope();
+        endScope(null);
 
-        if (stmt.superclass != null) endScope();
+        if (stmt.superclass != null) endScope(null);
 
         currentClass = enclosingClass;
         return null;
@@ -113,12 +124,12 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
     @Override
     public Void visitReturnStmt(Stmt.Return stmt) {
         if (currentFunction == FunctionType.NONE) {
-            Lox.error(stmt.keyword, "Can't return from top level code");
+            reporter.error(stmt.keyword, "Can't return from top level code");
         }
 
         if (stmt.value != null) {
             if (currentFunction == FunctionType.INITIALIZER) {
-                Lox.error(stmt.keyword, "Can't return a value from an initializer");
+                reporter.error(stmt.keyword, "Can't return a value from an initializer");
             }
             resolve(stmt.value);
         }
@@ -144,7 +155,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
         }
 
         resolve(function.body);
-        endScope();
+        endScope(function);
         currentFunction = enclosingFunction;
     }
 
@@ -163,11 +174,29 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
     }
 
     private void beginScope() {
-        this.scopes.push(new HashMap<String, Boolean>());
+        if (scopeCount == scopes.length) scopes = Arrays.copyOf(scopes, scopeCount * 2);
+
+        Scope scope = scopes[scopeCount];
+        if (scope == null) {
+            scope = new Scope();
+            scopes[scopeCount] = scope;
+        }
+        scope.reset();
+        scopeCount++;
+    }
+
+    /**
+     * Leaves the innermost scope
+     * @param owner The block or function the scope belongs to, gets the scope's layout. Null for the scopes
+     *              holding 'this' and 'super', which the interpreter builds by hand.
+     */
+    private void endScope(Stmt owner) {
+        scopeCount--;
+        if (owner != null) layouts.put(owner, scopes[scopeCount].layout());
     }
 
-    private void endScope() {
-        this.scopes.pop();
+    private Scope peek() {
+        return scopes[scopeCount - 1];
     }
 
     @Override
@@ -241,9 +270,9 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
     public Void visitSuperExpr(Expr.Super expr) {
         // Check for valid super usage
         if (currentClass == ClassType.NONE) {
-            Lox.error(expr.keyword, "Cannot call super outside of a class");
+            reporter.error(expr.keyword, "Cannot call super outside of a class");
         } else if (currentClass != ClassType.SUBCLASS) {
-            Lox.error(expr.keyword, "Cannot call super in a class with no superclass");
+            reporter.error(expr.keyword, "Cannot call super in a class with no superclass");
         }
 
         resolveLocal(expr, expr.keyword);
@@ -253,7 +282,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
     @Override
     public Void visitThisExpr(Expr.This expr) {
         if (this.currentClass == ClassType.NONE) {
-            Lox.error(expr.keyword, "Cannot use 'this' outside of a class");
+            reporter.error(expr.keyword, "Cannot use 'this' outside of a class");
             return null;
         }
         resolveLocal(expr, expr.keyword);
@@ -271,19 +300,19 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
      * @param name
      */
     private void declare(Token name) {
-        if (scopes.isEmpty()) return;
+        if (scopeCount == 0) return;
 
-        Map<String, Boolean> scope = scopes.peek();
-        if(scope.containsKey(name.lexeme)) {
-            Lox.error(name, "Already a variable with this name in scope");
+        Scope scope = peek();
+        if(scope.indexOf(name.lexeme) >= 0) {
+            reporter.error(name, "Already a variable with this name in scope");
         }
-        scope.put(name.lexeme, false);
+        scope.declare(name.lexeme);
     }
 
     // Declaration and definition are seperated
     private void define(Token name) {
-        if (scopes.isEmpty()) return;
-        scopes.peek().put(name.lexeme, true);
+        if (scopeCount == 0) return;
+        peek().define(name.lexeme);
     }
 
     @Override
@@ -292,8 +321,8 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
             Covers the case where we declared the variable but did not define it yet
             i.e var a = a; (NOT VALID)
          */
-        if (!scopes.isEmpty() && scopes.peek().get(expr.name.lexeme) == Boolean.FALSE) {
-            Lox.error(expr.name, "Cannot read local variable in its own initializer");
+        if (scopeCount > 0 && peek().isDeclaredOnly(expr.name.lexeme)) {
+            reporter.error(expr.name, "Cannot read local variable in its own initializer");
         }
 
         resolveLocal(expr, expr.name);
@@ -302,13 +331,76 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void>{
 
     //Resolve a local variable of the given name
     private void resolveLocal(Expr expr, Token name) {
-        for (int i = scopes.size() - 1; i >= 0; i--) {
-            if (scopes.get(i).containsKey(name.lexeme)) {
-                interpreter.resolve(expr, scopes.size() - 1 - i);
+        int hash = name.lexeme.hashCode();
+        for (int i = scopeCount - 1; i >= 0; i--) {
+            Scope scope = scopes[i];
+            int slot = scope.indexOf(name.lexeme, hash);
+            if (slot >= 0) {
+                locals.put(expr, scopeCount - 1 - i);
                 return;
             }
         }
     }
 
+    /**
+     * The names of one scope in declaration order. Scopes rarely hold more than a handful of names, so they
+     * are found by a linear scan over their hashes rather than through a hash table.
+     */
+    private static class Scope {
+        private String[] names = new String[8];
+        private int[] hashes = new int[8];
+        private boolean[] defined = new boolean[8];
+        private int count = 0;
+
+        void reset() {
+            Arrays.fill(names, 0, count, null);
+            this.count = 0;
+        }
+
+        int indexOf(String name) {
+            return indexOf(name, name.hashCode());
+        }
+
+        int indexOf(String name, int hash) {
+            for (int i = 0; i < count; i++) {
+                if (hashes[i] == hash && names[i].equals(name)) return i;
+            }
+            return -1;
+        }
+
+        void declare(String name) {
+            int slot = indexOf(name);
+            if (slot < 0) slot = add(name);
+            defined[slot] = false;
+        }
+
+        void define(String name) {
+            int slot = indexOf(name);
+            if (slot < 0) slot = add(name);
+            defined[slot] = true;
+        }
+
+        boolean isDeclaredOnly(String name) {
+            int slot = indexOf(name);
+            return slot >= 0 && !defined[slot];
+        }
+
+        ScopeLayout layout() {
+            return new ScopeLayout(Arrays.copyOf(names, count));
+        }
+
+        private int add(String name) {
+            if (count == names.length) {
+                int capacity = count * 2;
+                names = Arrays.copyOf(names, capacity);
+                hashes = Arrays.copyOf(hashes, capacity);
+                defined = Arrays.copyOf(defined, capacity);
+            }
+            names[count] = name;
+            hashes[count] = name.hashCode();
+            return count++;
+        }
+    }
+
 
 }
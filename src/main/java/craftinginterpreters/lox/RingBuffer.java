@@ -0,0 +1,93 @@
+package craftinginterpreters.lox;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock free queue for exactly one producer thread and one consumer thread. Used to hand tokens
+ * from the scanner to the parser and declarations from the parser to the resolver.
+ *
+ * Each side owns one counter and only reads the other one when its cached copy says the buffer looks
+ * full (producer) or empty (consumer), so in the steady state neither side touches the other's cache line.
+ */
+class RingBuffer<E> {
+    private final Object[] buffer;
+    private final int mask;
+
+    // Next slot to read, written by the consumer only
+    private final AtomicLong head = new AtomicLong();
+    // Next slot to write, written by the producer only
+    private final AtomicLong tail = new AtomicLong();
+
+    private long cachedHead = 0;
+    private long cachedTail = 0;
+
+    private volatile boolean closed = false;
+
+    RingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.buffer = new Object[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Blocks (spinning, then parking) until there is room for the element.
+     * Elements put after the buffer was closed are dropped.
+     */
+    void put(E element) {
+        long t = tail.get();
+        int idle = 0;
+        while (t - cachedHead == buffer.length) {
+            cachedHead = head.get();
+            if (t - cachedHead < buffer.length) break;
+            if (closed) return;
+            idle = backOff(idle);
+        }
+
+        buffer[(int) t & mask] = element;
+        tail.lazySet(t + 1);
+    }
+
+    /**
+     * Blocks until an element is available.
+     * @return The next element, or null once the buffer is closed and drained
+     */
+    @SuppressWarnings("unchecked")
+    E take() {
+        long h = head.get();
+        int idle = 0;
+        while (h == cachedTail) {
+            cachedTail = tail.get();
+            if (h < cachedTail) break;
+            if (closed) {
+                // Whatever was put before close() is still ours to read
+                cachedTail = tail.get();
+                if (h < cachedTail) break;
+                return null;
+            }
+            idle = backOff(idle);
+        }
+
+        int index = (int) h & mask;
+        E element = (E) buffer[index];
+        buffer[index] = null;
+        head.lazySet(h + 1);
+        return element;
+    }
+
+    // Marks the end of the stream. Also used to unblock the producer when the consumer gives up early.
+    void close() {
+        closed = true;
+    }
+
+    private static int backOff(int idle) {
+        if (idle < 100) {
+            Thread.onSpinWait();
+        } else if (idle < 200) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(10_000);
+        }
+        return idle + 1;
+    }
+}
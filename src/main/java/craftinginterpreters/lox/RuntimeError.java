@@ -7,4 +7,9 @@ public class RuntimeError extends RuntimeException {
         super(message);
         this.token = token;
     }
+
+    // The same error reported at the token, for errors from natives, which don't know where they were called from
+    RuntimeError at(Token token) {
+        return new RuntimeError(token, getMessage());
+    }
 }
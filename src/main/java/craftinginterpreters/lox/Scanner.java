@@ -1,19 +1,28 @@
 package craftinginterpreters.lox;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
 
 import static craftinginterpreters.lox.TokenType.*;
 
 public class Scanner {
     private final String source;
+    private final ErrorReporter reporter;
     private final List<Token> tokens = new ArrayList<>();
+    private Consumer<Token> sink;
+    // Where each emitted token starts in the source, in emission order. Only kept when scanning part of the
+    // source, for Document.
+    private int[] offsets;
+    private int tokenCount = 0;
 
     private int start = 0;
     private int current = 0;
     private int line = 1;
+    private final int end;
 
     private static final Map<String, TokenType> keywords;
 
@@ -38,17 +47,61 @@ public class Scanner {
     }
 
     public Scanner(String source) {
+        this(source, Lox.reporter);
+    }
+
+    Scanner(String source, ErrorReporter reporter) {
+        this.source = source;
+        this.end = source.length();
+        this.reporter = reporter;
+    }
+
+    /**
+     * A scanner for part of the source only, used to rescan the text around an edit. It also records where
+     * each token starts, see offsetOf.
+     * @param source The full text
+     * @param start Offset of the first character to scan
+     * @param end Offset just past the last character to scan
+     * @param line The line the first character is on
+     * @param reporter Receives the errors
+     */
+    Scanner(String source, int start, int end, int line, ErrorReporter reporter) {
         this.source = source;
+        this.start = start;
+        this.current = start;
+        this.end = end;
+        this.line = line;
+        this.reporter = reporter;
+        this.offsets = new int[64];
     }
 
     public List<Token> scanTokens() {
+        scanTokens(tokens::add);
+        return tokens;
+    }
+
+    /**
+     * Scans the whole source, handing every token (including the final EOF) to the sink as soon as it
+     * has been scanned instead of collecting them.
+     */
+    void scanTokens(Consumer<Token> sink) {
+        this.sink = sink;
         while (!isAtEnd()) {
             start = current;
             scanToken();
         }
 
-        tokens.add(new Token(EOF, "", null, line));
-        return tokens;
+        emit(new Token(EOF, "", null, line), current);
+    }
+
+    // Source offset of the n-th token this scanner produced, for scanners of part of the source
+    int offsetOf(int token) {
+        return offsets[token];
+    }
+
+    // The line the scanner stopped on
+    int line() {
+        return line;
     }
 
     private void scanToken() {
@@ -107,7 +160,7 @@ public class Scanner {
                     identifier();
                 }
                 else {
-                    Lox.error(line, "Unexpected character '" + c + "'");
+                    reporter.error(line, "Unexpected character '" + c + "'");
                 }
                 break;
         }
@@ -142,7 +195,7 @@ public class Scanner {
         }
 
         if (isAtEnd()) {
-            Lox.error(line, "Unterminated string");
+            reporter.error(line, "Unterminated string");
             return;
         }
 
@@ -168,7 +221,7 @@ public class Scanner {
     }
 
     private char peekNext() {
-        if (current + 1 >= source.length()) return '\0';
+        if (current + 1 >= end) return '\0';
         return source.charAt(current + 1);
     }
 
@@ -194,10 +247,18 @@ public class Scanner {
 
     private void addToken(TokenType type, Object literal) {
         String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+        emit(new Token(type, text, literal, line), start);
+    }
+
+    private void emit(Token token, int offset) {
+        if (offsets != null) {
+            if (tokenCount == offsets.length) offsets = Arrays.copyOf(offsets, tokenCount * 2);
+            offsets[tokenCount++] = offset;
+        }
+        sink.accept(token);
     }
 
     private boolean isAtEnd() {
-        return current >= source.length();
+        return current >= end;
     }
 }
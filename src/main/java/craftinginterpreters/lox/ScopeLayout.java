@@ -0,0 +1,22 @@
+package craftinginterpreters.lox;
+
+/**
+ * The shape of one block or function scope as worked out by the Resolver: the names declared in it, in
+ * declaration order. Calls and compiled blocks use it to size the Environment for the scope up front.
+ */
+final class ScopeLayout {
+    final String[] names;
+
+    ScopeLayout(String[] names) {
+        this.names = names;
+    }
+
+    int size() {
+        return names.length;
+    }
+
+    // Initial capacity for a HashMap that holds every variable of the scope without resizing
+    int capacity() {
+        return (int) (names.length / 0.75f) + 1;
+    }
+}
@@ -0,0 +1,185 @@
+package craftinginterpreters.lox;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The concurrency natives: spawn(fn) runs a function that takes no arguments as a task of its own and returns
+ * a handle, join(handle) waits for the task and returns what the function returned. channel(capacity) makes
+ * a bounded channel, send(channel, value) and receive(channel) block while it is full or empty.
+ *
+ * Tasks run on virtual threads where the JVM has them (JDK 21 and later), so thousands of tasks blocked on
+ * channels cost little. On older JVMs, JDK 17 included, they run on a cached pool of platform threads, one
+ * thread per task that is running or blocked. That pool is deliberately unbounded: a bounded one would
+ * deadlock a program whose running tasks wait on channels that only tasks still queued would feed.
+ * Each task gets its own Interpreter over the shared globals. Variables and instances shared between tasks
+ * are not synchronized, channels are the way to hand values over.
+ */
+class Tasks {
+    private static final Executor EXECUTOR = executor();
+    // Made once, like the builtins, and shared by every global scope
+    private static final List<NativeFunction> NATIVES = NativeFunction.all(MethodHandles.lookup(), Tasks.class);
+    // A channel's buffer is allocated up front, so its size is capped
+    static final int MAX_CHANNEL_CAPACITY = 1 << 16;
+
+    static void define(Environment globals) {
+        for (NativeFunction function : NATIVES) globals.define(function.name, function);
+    }
+
+    @LoxNative
+    static Object spawn(Interpreter interpreter, Object function) {
+        if (!(function instanceof LoxCallable) || ((LoxCallable) function).arity() != 0) {
+            throw new RuntimeError(null, "Can only spawn functions that take no arguments");
+        }
+        return spawn(interpreter, (LoxCallable) function);
+    }
+
+    @LoxNative
+    static Object join(Object task) {
+        if (!(task instanceof Task)) throw new RuntimeError(null, "Can only join tasks");
+        return ((Task) task).join();
+    }
+
+    @LoxNative
+    static Object channel(Interpreter interpreter, double capacity) {
+        if (capacity != Math.floor(capacity) || capacity < 1 || capacity > MAX_CHANNEL_CAPACITY) {
+            throw new RuntimeError(null, "Channel capacity must be a whole number from 1 to " + MAX_CHANNEL_CAPACITY);
+        }
+        interpreter.charge(Footprint.channel((int) capacity));
+        return new Channel((int) capacity);
+    }
+
+    @LoxNative
+    static void send(Object channel, Object value) {
+        channel(channel).send(value);
+    }
+
+    @LoxNative
+    static Object receive(Object channel) {
+        return channel(channel).receive();
+    }
+
+    private static Task spawn(Interpreter parent, LoxCallable function) {
+        Task task = new Task();
+        EXECUTOR.execute(() -> {
+            Interpreter interpreter = new Interpreter(parent);
+            Object result = null;
+            Throwable failure = null;
+            try {
+                result = function.call(interpreter, List.of());
+            } catch (RuntimeError error) {
+                failure = error;
+                // Reported right away so it isn't lost if nobody joins the task
+                interpreter.out.flush();
+                LoxEvents.runtimeError(error);
+                if (interpreter.metrics != null) interpreter.metrics.runtimeError();
+                interpreter.reporter.runtimeError(error);
+            } catch (Throwable t) {
+                failure = t;
+                throw t;
+            } finally {
+                // Whatever goes wrong on the way out, a join must not wait forever
+                try {
+                    interpreter.out.flush();
+                    interpreter.finish();
+                } finally {
+                    if (failure == null) task.result.complete(result);
+                    else task.result.completeExceptionally(failure);
+                }
+            }
+        });
+        return task;
+    }
+
+    private static Channel channel(Object value) {
+        if (!(value instanceof Channel)) throw new RuntimeError(null, "Expected a channel");
+        return (Channel) value;
+    }
+
+    // Virtual threads came with JDK 21, so they are looked up at runtime to keep running on older JVMs
+    private static Executor executor() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            ThreadFactory threads = (ThreadFactory) factory.invoke(builder);
+            return task -> threads.newThread(task).start();
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "lox-task");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    static boolean usesVirtualThreads() {
+        return !(EXECUTOR instanceof ExecutorService);
+    }
+
+    // The handle spawn returns
+    static final class Task {
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        Object join() {
+            try {
+                return result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeError(null, "Interrupted while joining a task");
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeError) throw new RuntimeError(null, "Joined task failed");
+                if (e.getCause() instanceof Error) throw (Error) e.getCause();
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "<task>";
+        }
+    }
+
+    static final class Channel {
+        // Stands in for nil, the queue can't hold null
+        private static final Object NIL = new Object();
+
+        private final BlockingQueue<Object> queue;
+
+        Channel(int capacity) {
+            this.queue = new ArrayBlockingQueue<>(capacity);
+        }
+
+        void send(Object value) {
+            try {
+                queue.put(value == null ? NIL : value);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeError(null, "Interrupted while sending");
+            }
+        }
+
+        Object receive() {
+            try {
+                Object value = queue.take();
+                return value == NIL ? null : value;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeError(null, "Interrupted while receiving");
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "<channel>";
+        }
+    }
+}
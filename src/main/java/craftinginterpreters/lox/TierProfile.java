@@ -0,0 +1,68 @@
+package craftinginterpreters.lox;
+
+/**
+ * What Tiering knows about one function declaration or loop: how hot it has run in the Interpreter and,
+ * once it is compiled, the compiled code. There is one per Resolution, shared by every Interpreter and task
+ * running it, so the counts are only approximate when several threads run the code at once.
+ */
+final class TierProfile {
+    // A Stmt.Function or a Stmt.While
+    final Stmt unit;
+    final Resolution resolution;
+    // The layout of a function's scope, looked up once here rather than on every call
+    final ScopeLayout layout;
+
+    // Calls interpreted and loop iterations run under them
+    private long calls = 0;
+    private long loops = 0;
+    // Set once compiling has been asked for, it is never asked for twice
+    private volatile boolean requested = false;
+    // Null until compiled
+    volatile ClosureCompiler.Code code;
+
+    TierProfile(Stmt unit, Resolution resolution) {
+        this.unit = unit;
+        this.resolution = resolution;
+        this.layout = resolution.layouts.get(unit);
+    }
+
+    // Counts a call the Interpreter ran, and the loop iterations it took, callees' included
+    void interpreted(Interpreter interpreter, int iterations) {
+        calls++;
+        loops += iterations;
+        if (calls >= interpreter.callThreshold || loops >= interpreter.loopThreshold) Tiering.request(this);
+    }
+
+    // Counts the iterations of a run of the loop past the loop threshold, which is hot enough on its own
+    void iterated(long iterations) {
+        loops += iterations;
+        Tiering.request(this);
+    }
+
+    // True for the one caller that gets to ask for compiling
+    boolean claim() {
+        if (requested) return false;
+        synchronized (this) {
+            if (requested) return false;
+            requested = true;
+            return true;
+        }
+    }
+
+    long calls() {
+        return calls;
+    }
+
+    long loops() {
+        return loops;
+    }
+
+    // For the log, e.g. "fib (line 1)" or "while loop (line 4)"
+    String describe() {
+        if (unit instanceof Stmt.Function) {
+            Token name = ((Stmt.Function) unit).name;
+            return name.lexeme + " (line " + name.line() + ")";
+        }
+        return "while loop (line " + Coverage.line(unit) + ")";
+    }
+}
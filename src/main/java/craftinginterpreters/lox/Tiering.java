@@ -0,0 +1,90 @@
+package craftinginterpreters.lox;
+
+import java.io.PrintStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Tiered execution. Code starts out in the tree-walking Interpreter, which counts, per function declaration,
+ * the calls it interprets and the loop iterations run under them. Once either count crosses its threshold the
+ * function is compiled by ClosureCompiler on a background thread while the Interpreter carries on, and the
+ * calls that start after that run the compiled code. A single run of a loop that iterates past the loop
+ * threshold is compiled the same way, and the Interpreter hands the rest of the loop over to the compiled
+ * code as soon as it is ready, so loops at the top level or in a function called once speed up too.
+ *
+ * The thresholds come from the lox.tier.calls and lox.tier.loops system properties, or Lox --tier-calls and
+ * --tier-loops, and 0 turns that trigger off. Compilations are logged to stderr with -Dlox.tier.log=true or
+ * Lox --tier-log, and recorded as lox.Compilation JFR events.
+ */
+final class Tiering {
+    static final long CALL_THRESHOLD = threshold(Long.getLong("lox.tier.calls", 1_000));
+    static final long LOOP_THRESHOLD = threshold(Long.getLong("lox.tier.loops", 10_000));
+
+    // Where compilations are logged, null for nowhere
+    static volatile PrintStream log = Boolean.getBoolean("lox.tier.log") ? System.err : null;
+
+    private Tiering() {
+    }
+
+    // 0 for never
+    static long threshold(long count) {
+        return count <= 0 ? Long.MAX_VALUE : count;
+    }
+
+    // Compiles the function or loop in the background, unless that has been asked for already
+    static void request(TierProfile profile) {
+        if (!profile.claim()) return;
+
+        long calls = profile.calls();
+        long loops = profile.loops();
+        Compiler.THREAD.execute(() -> compile(profile, calls, loops));
+    }
+
+    private static void compile(TierProfile profile, long calls, long loops) {
+        LoxEvents.Compilation event = new LoxEvents.Compilation();
+        event.begin();
+        long start = System.nanoTime();
+        String failure = null;
+        try {
+            ClosureCompiler compiler = new ClosureCompiler(profile.resolution);
+            if (profile.unit instanceof Stmt.Function) {
+                profile.code = compiler.function((Stmt.Function) profile.unit);
+            } else {
+                profile.code = compiler.loop((Stmt.While) profile.unit);
+            }
+        } catch (RuntimeException e) {
+            // Stays in the Interpreter, which runs any code
+            failure = e.toString();
+        }
+        long micros = (System.nanoTime() - start) / 1_000;
+        event.end();
+
+        if (event.shouldCommit()) {
+            event.code = profile.describe();
+            event.calls = calls;
+            event.loops = loops;
+            event.compiled = failure == null;
+            event.commit();
+        }
+
+        PrintStream out = log;
+        if (out == null) return;
+        String counts = profile.unit instanceof Stmt.Function
+                ? "after " + calls + " calls and " + loops + " loop iterations"
+                : "after " + loops + " iterations";
+        if (failure == null) {
+            out.println("[tier] compiled " + profile.describe() + " " + counts + " in " + micros + " us");
+        } else {
+            out.println("[tier] could not compile " + profile.describe() + " " + counts + ": " + failure);
+        }
+    }
+
+    // Started on the first request, so runs that never get hot don't start a thread
+    private static final class Compiler {
+        static final ExecutorService THREAD = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "lox-compiler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
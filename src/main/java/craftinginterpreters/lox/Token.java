@@ -5,7 +5,7 @@ public class Token {
     final TokenType type;
     final String lexeme;
     final Object literal;
-    final int line;
+    private final int line;
 
     Token(TokenType type, String lexeme, Object literal, int line) {
         this.type = type;
@@ -14,6 +14,11 @@ public class Token {
         this.line = line;
     }
 
+    // Document's tokens override this: they move down when lines are inserted above them
+    int line() {
+        return line;
+    }
+
     public String toString() {
         return type + " " + lexeme + " " + literal;
     }
@@ -22,7 +22,7 @@ public class GenerateAst {
                 "Call     : Expr callee, Token paren, List<Expr> arguments",
                 "Get      : Expr object, Token name",
                 "Grouping : Expr expression",
-                "Literal  : Object value",
+                "Literal  : Object value, int line",
                 "Logical  : Expr left, Token operator, Expr right",
                 "Set      : Expr object, Token name, Expr value",
                 "Super    : Token keyword, Token method",
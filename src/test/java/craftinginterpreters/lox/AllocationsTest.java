@@ -0,0 +1,118 @@
+package craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+class AllocationsTest {
+    private final Resolution resolution = new Resolution();
+    private final ErrorReporter.Captured reporter = new ErrorReporter.Captured();
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final Interpreter interpreter =
+            new Interpreter(resolution, reporter, new Output(new PrintStream(out, true)));
+    private final Allocations allocations = new Allocations();
+
+    AllocationsTest() {
+        interpreter.allocations = allocations;
+    }
+
+    private void run(String source) {
+        ErrorReporter errors = new ErrorReporter();
+        List<Stmt> statements = FrontEnd.compile(source, resolution, errors);
+        assertFalse(errors.hadError, source);
+        interpreter.interpret(statements);
+    }
+
+    // The report's counts by kind, in Kind order, per "<script>" or "name:line"
+    private Map<String, long[]> rows() {
+        ByteArrayOutputStream table = new ByteArrayOutputStream();
+        allocations.report(new PrintStream(table, true));
+        Map<String, long[]> rows = new HashMap<>();
+        String[] lines = table.toString().split("\\R");
+        for (int i = 1; i < lines.length; i++) {
+            String[] columns = lines[i].trim().split("\\s+");
+            long[] counts = new long[Allocations.Kind.values().length];
+            for (int kind = 0; kind < counts.length; kind++) counts[kind] = Long.parseLong(columns[kind]);
+            rows.put(columns[columns.length - 1], counts);
+        }
+        return rows;
+    }
+
+    // Counts in Kind order: environment, closure, bound method, arguments, number, string, instance
+    private static long[] counts(long... counts) {
+        return counts;
+    }
+
+    @Test
+    void countsEachKindForTheFunctionRunning() {
+        run("class Point {\n"
+                + "  init(x) { this.x = x; }\n"
+                + "  twice() { return this.x * 2; }\n"
+                + "}\n"
+                + "fun make(n) {\n"
+                + "  var label = \"p\" + \"t\";\n"
+                + "  return Point(n).twice();\n"
+                + "}\n"
+                + "var total = 0;\n"
+                + "for (var i = 0; i < 3; i = i + 1) total = total + make(i);\n"
+                + "print stats().get(\"instance\");\n");
+
+        // stats() sees the instances while the script runs
+        assertEquals("3" + System.lineSeparator(), out.toString());
+
+        Map<String, long[]> rows = rows();
+        // The for loop's scope and one per iteration for its body, the declared functions and methods, the
+        // arguments of the three calls to make and the one to stats, and the sums
+        assertArrayEquals(counts(4, 3, 0, 4, 6, 0, 0), rows.get("<script>"));
+        // The instance and the bound methods go to the function calling the class and the method, each call's
+        // environment to the function called
+        assertArrayEquals(counts(3, 0, 6, 6, 0, 3, 3), rows.get("make:5"));
+        assertArrayEquals(counts(3, 0, 0, 0, 0, 0, 0), rows.get("init:2"));
+        assertArrayEquals(counts(3, 0, 0, 0, 3, 0, 0), rows.get("twice:3"));
+        assertEquals(3.0, allocations.totals().get("instance"));
+    }
+
+    @Test
+    void returningFromALoopLeavesTheCaller() {
+        run("fun find() {\n"
+                + "  for (var i = 0; i < 10; i = i + 1) {\n"
+                + "    if (i == 2) return i;\n"
+                + "  }\n"
+                + "}\n"
+                + "find();\n");
+        long[] before = rows().get("find:1").clone();
+
+        run("var after = 1 + 2;\n");
+        assertArrayEquals(before, rows().get("find:1"));
+        assertEquals(1, rows().get("<script>")[Allocations.Kind.NUMBER.ordinal()]);
+    }
+
+    @Test
+    void runtimeErrorsThrownThroughCallsLeaveEveryCaller() {
+        run("fun inner() {\n"
+                + "  var s = \"a\" + \"b\";\n"
+                + "  return s + 1;\n"
+                + "}\n"
+                + "fun outer() {\n"
+                + "  return inner();\n"
+                + "}\n"
+                + "outer();\n");
+        assertTrue(reporter.hadRuntimeError);
+        Map<String, long[]> failed = rows();
+
+        run("var after = 1 + 2;\n");
+        Map<String, long[]> rows = rows();
+        assertArrayEquals(failed.get("inner:1"), rows.get("inner:1"));
+        assertArrayEquals(failed.get("outer:5"), rows.get("outer:5"));
+        assertEquals(1, rows.get("<script>")[Allocations.Kind.NUMBER.ordinal()]);
+    }
+}
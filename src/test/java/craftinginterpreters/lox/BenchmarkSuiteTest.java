@@ -0,0 +1,41 @@
+package craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class BenchmarkSuiteTest {
+    @Test
+    void comparesMediansWithTheBaselineAgainstTheThreshold(@TempDir Path dir) throws IOException {
+        Path file = dir.resolve("baseline.tsv");
+        Files.writeString(file, "# benchmark\tmedian ns\tmean ns\n"
+                + "fib\t1000000\t1100000\n"
+                + "\n"
+                + "strings\t2000000\t2000000\n");
+        Map<String, long[]> baseline = BenchmarkSuite.readBaseline(file);
+        assertEquals(2, baseline.size());
+
+        // 15% slower than the baseline is over a 10% threshold, but not over 20%
+        String regression = BenchmarkSuite.compare(baseline.get("fib"), 1150000, 10);
+        assertTrue(regression.endsWith(BenchmarkSuite.SLOWER), regression);
+        assertTrue(regression.startsWith("+15"), regression);
+        assertFalse(BenchmarkSuite.compare(baseline.get("fib"), 1150000, 20).endsWith(BenchmarkSuite.SLOWER));
+
+        String improvement = BenchmarkSuite.compare(baseline.get("strings"), 1500000, 10);
+        assertFalse(improvement.endsWith(BenchmarkSuite.SLOWER), improvement);
+        assertTrue(improvement.startsWith("-25"), improvement);
+
+        // A workload added since the baseline was saved has nothing to compare with, which isn't a regression
+        assertNull(baseline.get("maps"));
+        assertEquals("", BenchmarkSuite.compare(baseline.get("maps"), 5000000, 10));
+    }
+}
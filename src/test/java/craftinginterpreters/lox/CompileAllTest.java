@@ -0,0 +1,55 @@
+package craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CompileAllTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void unreadableFilesAreKeptPerUnit() throws IOException {
+        Path lib = Files.writeString(dir.resolve("lib.lox"), "fun f() { return 1; }\n");
+        Path broken = Files.writeString(dir.resolve("broken.lox"), "var = 1;\n");
+        String missing = dir.resolve("missing.lox").toString();
+
+        List<FrontEnd.Unit> units = FrontEnd.compileAll(
+                List.of(lib.toString(), missing, broken.toString()), ForkJoinPool.commonPool());
+
+        assertEquals(3, units.size());
+        assertNull(units.get(0).unreadable);
+        assertEquals(1, units.get(0).statements.size());
+        assertNotNull(units.get(1).unreadable);
+        assertTrue(units.get(1).statements.isEmpty());
+        assertFalse(units.get(1).errors.hadError);
+        assertNull(units.get(2).unreadable);
+        assertTrue(units.get(2).errors.hadError);
+    }
+
+    @Test
+    void runtimeErrorsGoToTheGivenReporter() {
+        ErrorReporter.Captured file = new ErrorReporter.Captured();
+        ErrorReporter.Captured script = new ErrorReporter.Captured();
+        Resolution resolution = new Resolution();
+        List<Stmt> statements = FrontEnd.compile("print 1 + nil;", resolution, new ErrorReporter());
+        Interpreter interpreter = new Interpreter(resolution, script, new Output(System.out, false));
+
+        interpreter.interpret(statements, file);
+
+        assertTrue(file.hadRuntimeError);
+        assertFalse(script.hadRuntimeError);
+        assertEquals(script, interpreter.reporter);
+    }
+}
@@ -0,0 +1,60 @@
+package craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.jupiter.api.Test;
+
+class ConcurrentRunTest {
+    private static final String SCRIPT = ""
+            + "fun fib(n) {\n"
+            + "  if (n < 2) return n;\n"
+            + "  return fib(n - 1) + fib(n - 2);\n"
+            + "}\n"
+            + "fun counter() {\n"
+            + "  var count = 0;\n"
+            + "  fun next() { count = count + 1; return count; }\n"
+            + "  return next;\n"
+            + "}\n"
+            + "var next = counter();\n"
+            + "var total = 0;\n"
+            + "while (total < 500) total = total + next();\n"
+            + "print fib(15);\n"
+            + "print total;\n";
+
+    private static String run(CompiledProgram program) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ErrorReporter.Captured reporter = new ErrorReporter.Captured();
+        program.run(reporter, new PrintStream(output, true));
+        reporter.rethrow();
+        return output.toString().replace(System.lineSeparator(), "\n");
+    }
+
+    @Test
+    void concurrentRunsDoNotInterfere() throws Exception {
+        CompiledProgram program = CompiledProgram.compile(SCRIPT);
+        assertFalse(program.hadError());
+        assertEquals("610\n528\n", run(program));
+
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                results.add(pool.submit(() -> run(program)));
+            }
+            for (Future<String> result : results) {
+                assertEquals("610\n528\n", result.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class CoverageTest {
+    private static final String SOURCE = ""
+            + "fun pick(n) {\n"
+            + "  if (n > 1) {\n"
+            + "    print \"big\";\n"
+            + "  } else {\n"
+            + "    print \"small\";\n"
+            + "  }\n"
+            + "}\n"
+            + "fun unused() {\n"
+            + "  print \"never\";\n"
+            + "}\n"
+            + "var i = 0;\n"
+            + "while (i < 3) i = i + 1;\n"
+            + "pick(i);\n"
+            + "print i > 0 or nil;\n"
+            + "if (false) {\n"
+            + "  print nil and true;\n"
+            + "}\n";
+
+    @Test
+    void lcovCountsLinesBranchesAndFunctions(@TempDir Path dir) throws IOException {
+        Coverage coverage = new Coverage();
+        CoverageInterpreter interpreter = new CoverageInterpreter(coverage);
+        ErrorReporter reporter = new ErrorReporter();
+        List<Stmt> statements = FrontEnd.compile(SOURCE, interpreter.resolution, reporter);
+        assertFalse(reporter.hadError);
+
+        coverage.add("script.lox", statements);
+        interpreter.interpret(statements);
+        Path lcov = dir.resolve("script.lcov");
+        coverage.writeLcov(lcov);
+        List<String> records = Files.readAllLines(lcov);
+
+        // Calls per function, counted by their bodies
+        assertTrue(records.contains("FN:1,pick"), records::toString);
+        assertTrue(records.contains("FNDA:1,pick"), records::toString);
+        assertTrue(records.contains("FNDA:0,unused"), records::toString);
+        assertTrue(records.contains("FNH:1"), records::toString);
+
+        // Both sides of every branch: the if and the while ran, the 'and' was never reached
+        assertBranch(records, 2, "1", "0");
+        assertBranch(records, 12, "3", "1");
+        assertBranch(records, 14, "0", "1");
+        assertBranch(records, 15, "0", "1");
+        assertBranch(records, 16, "-", "-");
+        assertTrue(records.contains("BRF:10"), records::toString);
+        assertTrue(records.contains("BRH:5"), records::toString);
+
+        // Lines with statements, as often as the statement on them that ran the most
+        for (String line : List.of("DA:3,1", "DA:5,0", "DA:9,0", "DA:12,3", "DA:13,1", "DA:14,1", "DA:16,0")) {
+            assertTrue(records.contains(line), () -> line + " in " + records);
+        }
+        assertEquals("end_of_record", records.get(records.size() - 1));
+    }
+
+    // The two BRDA records of the branch on the line: taken counts, or "-" when the branch was never reached
+    private static void assertBranch(List<String> records, int line, String first, String second) {
+        String prefix = "BRDA:" + line + ",";
+        List<String> branch = records.stream().filter(record -> record.startsWith(prefix)).toList();
+        assertEquals(2, branch.size(), () -> prefix + " in " + records);
+        assertTrue(branch.get(0).matches("BRDA:" + line + ",\\d+,0," + first), branch::toString);
+        assertTrue(branch.get(1).matches("BRDA:" + line + ",\\d+,1," + second), branch::toString);
+    }
+}
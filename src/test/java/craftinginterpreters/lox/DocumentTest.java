@@ -0,0 +1,118 @@
+package craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class DocumentTest {
+    // The errors the regular front end reports for the text, as they would be printed
+    private static List<String> compileErrors(String source) {
+        ErrorReporter.Buffered errors = new ErrorReporter.Buffered();
+        FrontEnd.compile(source, new Resolution(), errors);
+        return errors.messages();
+    }
+
+    private static List<String> documentErrors(Document document) {
+        List<String> messages = new ArrayList<>();
+        for (Document.Diagnostic diagnostic : document.diagnostics()) {
+            messages.add(diagnostic.message());
+        }
+        return messages;
+    }
+
+    private static void assertMatchesCompile(Document document, String after) {
+        String source = document.text();
+        ErrorReporter.Buffered errors = new ErrorReporter.Buffered();
+        List<Stmt> statements = FrontEnd.compile(source, new Resolution(), errors);
+
+        assertEquals(errors.messages(), documentErrors(document), after);
+        assertEquals(errors.hadError, document.hadError(), after);
+        AstPrinter printer = new AstPrinter();
+        assertEquals(printer.print(statements), printer.print(document.statements()), after);
+    }
+
+    @Test
+    void randomEditsMatchAFullCompile() {
+        // Trailing lines put the end of the text below the last declaration
+        Document document = new Document(Sources.functions(300) + "\n// end\n\n");
+        Random random = new Random(42);
+        String[] typed = {"\n", " ", "x", "{", "}", "(", "/", "\""};
+
+        int offset = 0;
+        for (int i = 0; i < 4000; i++) {
+            // Type a character somewhere and take it back again with the next edit
+            if (i % 2 == 0) {
+                offset = random.nextInt(document.text().length());
+                document.edit(offset, 0, typed[random.nextInt(typed.length)]);
+            } else {
+                document.edit(offset, 1, "");
+            }
+            if (i % 25 == 0 || i % 25 == 1) assertMatchesCompile(document, "after edit " + i);
+        }
+    }
+
+    @Test
+    void errorAtEndHasTheLineOfTheEndOfFile() {
+        String source = "fun f() {\n  print 1;\n}\n\n// trailing\n\n";
+        Document document = new Document(source);
+        document.edit(source.indexOf('}'), 1, "");
+
+        assertTrue(document.hadError());
+        assertEquals(compileErrors(document.text()), documentErrors(document));
+    }
+
+    @Test
+    void movedDeclarationsRunAtTheirNewLines() {
+        Document document = new Document("fun f() {\n  return 1 + nil;\n}\nf();\n");
+        document.edit(0, 0, "\n\n");
+
+        ErrorReporter.Captured reporter = new ErrorReporter.Captured();
+        document.execute(new Interpreter(new Resolution(), reporter, new Output(System.out, false)));
+
+        LoxRuntimeException error = assertThrows(LoxRuntimeException.class, reporter::rethrow);
+        assertEquals(4, error.line());
+    }
+
+    @Test
+    void insertingLinesReusesTheDeclarationsBelow() {
+        String source = Sources.functions(20) + "print f0(0, 0) + nil;\n";
+        Document document = new Document(source);
+        List<Stmt> before = document.statements();
+
+        document.edit(0, 0, "\n\n\n");
+
+        assertEquals(1, document.lastReparsed());
+        List<Stmt> after = document.statements();
+        for (int i = 1; i < before.size(); i++) {
+            assertSame(before.get(i), after.get(i), "declaration " + i);
+        }
+        assertMatchesCompile(document, "after inserting lines");
+
+        ErrorReporter.Captured reporter = new ErrorReporter.Captured();
+        document.execute(new Interpreter(new Resolution(), reporter, new Output(System.out, false)));
+        LoxRuntimeException error = assertThrows(LoxRuntimeException.class, reporter::rethrow);
+        assertEquals(countLines(document.text()), error.line());
+    }
+
+    @Test
+    void diagnosticsMoveWithTheirDeclarations() {
+        Document document = new Document("print 1;\nfun f() {\n  var a = 1;\n  var a = 2;\n}\n");
+        document.edit(0, 0, "\n\n");
+
+        List<Document.Diagnostic> diagnostics = document.diagnostics();
+        assertEquals(1, diagnostics.size());
+        assertEquals(6, diagnostics.get(0).line());
+        assertEquals(compileErrors(document.text()), documentErrors(document));
+    }
+
+    private static int countLines(String text) {
+        return (int) text.chars().filter(c -> c == '\n').count();
+    }
+}
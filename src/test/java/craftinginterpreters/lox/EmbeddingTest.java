@@ -0,0 +1,44 @@
+package craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import org.junit.jupiter.api.Test;
+
+class EmbeddingTest {
+    // A handler next to a library of helpers it doesn't need, as request scripts tend to be
+    private static final String SOURCE = Sources.functions(50)
+            + "var requests = 0;\n"
+            + "fun handle(n) {\n"
+            + "  requests = requests + 1;\n"
+            + "  var total = 0;\n"
+            + "  for (var i = 0; i < n; i = i + 1) total = total + i;\n"
+            + "  return total;\n"
+            + "}\n";
+
+    private final LoxEngine engine = new LoxEngine(new PrintStream(OutputStream.nullOutputStream()));
+
+    @Test
+    void compiledOnceAnswersLikeCompiledPerRequest() {
+        CompiledProgram program = engine.compile(SOURCE);
+        for (int i = 0; i < 20; i++) {
+            assertEquals(45.0, engine.compile(SOURCE).run().call("handle", 10));
+            assertEquals(45.0, program.run().call("handle", 10));
+        }
+    }
+
+    @Test
+    void everyRunStartsWithFreshGlobals() {
+        CompiledProgram program = engine.compile(SOURCE);
+        LoxGlobals first = program.run();
+        first.call("handle", 3.0);
+        first.call("handle", 3.0);
+        LoxGlobals second = program.run();
+        second.call("handle", 3.0);
+
+        assertEquals(2.0, first.get("requests"));
+        assertEquals(1.0, second.get("requests"));
+    }
+}
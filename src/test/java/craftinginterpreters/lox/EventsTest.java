@@ -0,0 +1,87 @@
+package craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class EventsTest {
+    private static final String SOURCE = ""
+            + "fun square(n) {\n"
+            + "  return n * n;\n"
+            + "}\n"
+            + "fun fail(n) {\n"
+            + "  return n + \"!\";\n"
+            + "}\n"
+            + "print square(square(3));\n";
+
+    // Runs the work under a recording of every Lox call and runtime error, and returns the events
+    private static List<RecordedEvent> record(Path dir, Runnable work) throws IOException {
+        Path file = dir.resolve("lox.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("lox.Call").withThreshold(Duration.ZERO);
+            recording.enable("lox.RuntimeError");
+            recording.start();
+            work.run();
+            recording.stop();
+            recording.dump(file);
+        }
+        return RecordingFile.readAllEvents(file);
+    }
+
+    private static List<RecordedEvent> named(List<RecordedEvent> events, String name) {
+        return events.stream()
+                .filter(event -> event.getEventType().getName().equals(name))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void callsAndRuntimeErrorsAreRecorded(@TempDir Path dir) throws IOException {
+        LoxEngine engine = new LoxEngine(new PrintStream(OutputStream.nullOutputStream()));
+        List<RecordedEvent> events = record(dir, () -> {
+            CompiledProgram program = engine.compile(SOURCE + "fail(1);\n");
+            assertThrows(LoxRuntimeException.class, program::run);
+        });
+
+        List<RecordedEvent> calls = named(events, "lox.Call");
+        assertEquals(3, calls.size(), calls::toString);
+        for (RecordedEvent call : calls) {
+            String function = call.getString("function");
+            assertTrue(function.equals("square") || function.equals("fail"), function);
+            assertEquals(function.equals("square") ? 1 : 4, call.getInt("line"));
+        }
+        // square(3) returns before the outer square is called, so no call runs inside another
+        assertTrue(calls.stream().allMatch(call -> call.getInt("depth") == 1), calls::toString);
+
+        List<RecordedEvent> errors = named(events, "lox.RuntimeError");
+        assertEquals(1, errors.size(), errors::toString);
+        assertEquals(5, errors.get(0).getInt("line"));
+        assertEquals("Operand must be a number", errors.get(0).getString("message"));
+    }
+
+    @Test
+    void runtimeErrorsOfCallsFromJavaAreRecorded(@TempDir Path dir) throws IOException {
+        LoxEngine engine = new LoxEngine(new PrintStream(OutputStream.nullOutputStream()));
+        LoxGlobals globals = engine.compile(SOURCE).run();
+        List<RecordedEvent> events = record(dir,
+                () -> assertThrows(LoxRuntimeException.class, () -> globals.call("fail", 1.0)));
+
+        List<RecordedEvent> errors = named(events, "lox.RuntimeError");
+        assertEquals(1, errors.size(), errors::toString);
+        assertEquals(5, errors.get(0).getInt("line"));
+        assertEquals("fail", named(events, "lox.Call").get(0).getString("function"));
+    }
+}
@@ -0,0 +1,76 @@
+package craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.openjdk.jol.info.GraphLayout;
+
+class FlatAstTest {
+    private static List<Stmt> parse(String source) {
+        return new Parser(new Scanner(source).scanTokens()).parse();
+    }
+
+    // What the statements print when resolved and run
+    private static String run(List<Stmt> statements) {
+        Resolution resolution = new Resolution();
+        new Resolver(resolution, new ErrorReporter()).resolve(statements);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Interpreter(resolution, new ErrorReporter(), new Output(new PrintStream(out, true)))
+                .interpret(statements);
+        return out.toString();
+    }
+
+    @Test
+    void encodingPrintsTheSameProgram() {
+        List<Stmt> statements = parse(Sources.functions(200));
+        FlatAst ast = FlatAst.encode(statements);
+
+        assertEquals(new AstPrinter().print(statements), new AstPrinter().print(ast));
+        assertEquals(NodeCounter.count(statements), ast.nodeCount());
+    }
+
+    @Test
+    void encodingKeepsClassesAndOperators() {
+        List<Stmt> statements = parse(""
+                + "class A { init(x) { this.x = x; } get() { return this.x; } }\n"
+                + "class B < A { get() { return -super.get() or nil and !true; } }\n"
+                + "var b = B((1 + 2) * 3);\n"
+                + "while (b.x > 0) { b.x = b.x - 1; }\n"
+                + "print b.get();\n");
+
+        assertEquals(new AstPrinter().print(statements), new AstPrinter().print(FlatAst.encode(statements)));
+    }
+
+    @Test
+    void decodedProgramRunsLikeTheTree() {
+        String source = ""
+                + "class A { init(x) { this.x = x; } get() { return this.x; } }\n"
+                + "class B < A { get() { return super.get() * 2; } }\n"
+                + "fun counter() { var n = 0; fun next() { n = n + 1; return n; } return next; }\n"
+                + "var next = counter();\n"
+                + "next();\n"
+                + "print B(next()).get();\n";
+        assertEquals(run(parse(source)), run(FlatAst.encode(parse(source)).statements()));
+    }
+
+    @Test
+    void flatFormRetainsLessThanTheTree() {
+        List<Stmt> statements = parse(Sources.functions(500));
+        FlatAst ast = FlatAst.encode(statements);
+        long tree = GraphLayout.parseInstance(statements).totalSize();
+        long flat = GraphLayout.parseInstance(ast).totalSize();
+        assertTrue(flat * 2 < tree, "flat " + flat + " bytes, tree " + tree + " bytes");
+
+        // Decoding for the visitors hands the caller a tree of its own, the FlatAst keeps nothing of it
+        List<Stmt> decoded = ast.statements();
+        assertNotSame(decoded.get(0), ast.statements().get(0));
+        new AstPrinter().print(ast);
+        assertEquals(flat, GraphLayout.parseInstance(ast).totalSize());
+    }
+}
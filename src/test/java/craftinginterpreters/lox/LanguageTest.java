@@ -0,0 +1,59 @@
+package craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.jupiter.api.Test;
+
+class LanguageTest {
+    // What the program prints, one line per print statement
+    private static String run(String source) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new LoxEngine(new PrintStream(out, true)).compile(source).run();
+        return out.toString().replace(System.lineSeparator(), "\n");
+    }
+
+    @Test
+    void thisInsideMethods() {
+        String source = ""
+                + "class Box {\n"
+                + "  self() { return this; }\n"
+                + "  name() { return this.label; }\n"
+                + "}\n"
+                + "var box = Box();\n"
+                + "box.label = \"box\";\n"
+                + "print box.self() == box;\n"
+                + "print box.name();\n";
+        assertEquals("true\nbox\n", run(source));
+    }
+
+    @Test
+    void logicalOperatorsReturnOperandValues() {
+        String source = ""
+                + "print nil or \"right\";\n"
+                + "print \"left\" or \"right\";\n"
+                + "print false and \"right\";\n"
+                + "print 1 and 2;\n"
+                + "var calls = 0;\n"
+                + "fun touch() { calls = calls + 1; return true; }\n"
+                + "print true or touch();\n"
+                + "print false and touch();\n"
+                + "print calls;\n";
+        assertEquals("right\nleft\nfalse\n2\ntrue\nfalse\n0\n", run(source));
+    }
+
+    @Test
+    void initializerRunsAndReturnsTheInstance() {
+        String source = ""
+                + "class Point {\n"
+                + "  init(x, y) { this.x = x; this.y = y; return; }\n"
+                + "}\n"
+                + "var point = Point(1, 2);\n"
+                + "print point.x + point.y;\n"
+                + "print point.init(3, 4) == point;\n"
+                + "print point.x;\n";
+        assertEquals("3\ntrue\n3\n", run(source));
+    }
+}
@@ -0,0 +1,91 @@
+package craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+class LimitsTest {
+    // Keeps one short string alive, but allocates a new one on every iteration
+    private static String garbage(int iterations) {
+        return ""
+                + "var s;\n"
+                + "for (var i = 0; i < " + iterations + "; i = i + 1) s = \"ab\" + \"cd\";\n";
+    }
+
+    private static LoxEngine engine(long allocationLimit) {
+        LoxEngine engine = new LoxEngine(new PrintStream(OutputStream.nullOutputStream()));
+        engine.setLimits(ExecutionLimits.NONE.withAllocationLimit(allocationLimit));
+        return engine;
+    }
+
+    @Test
+    void garbageCountsAgainstTheAllocationLimit() {
+        int iterations = 100_000;
+        LoxEngine engine = engine((long) iterations * Footprint.string("abcd") / 2);
+        LoxLimitException error = assertThrows(LoxLimitException.class,
+                () -> engine.compile(garbage(iterations)).run());
+        assertTrue(error.getMessage().startsWith("Allocated more than the limit of"), error.getMessage());
+    }
+
+    @Test
+    void limitSizedForTheTotalAllocation() {
+        int iterations = 100_000;
+        long limit = (long) iterations * Footprint.string("abcd") + (1 << 20);
+        try (LoxEngine engine = engine(limit)) {
+            InterpreterMXBean bean = engine.registerMBean("limits-test");
+            engine.compile(garbage(iterations)).run();
+
+            long allocated = bean.getLastExecutionAllocatedBytes();
+            assertTrue(allocated >= (long) iterations * Footprint.string("abcd"), "allocated " + allocated);
+            assertTrue(allocated <= limit, "allocated " + allocated);
+        }
+    }
+
+    @Test
+    void taskOutOfFuelOnItsFirstCallFailsItsJoin() {
+        // The loop takes all the fuel there is, so the task runs out calling its function
+        String source = ""
+                + "fun task() { return 1; }\n"
+                + "var i = 0;\n"
+                + "while (i < 10) i = i + 1;\n"
+                + "print join(spawn(task));\n";
+        LoxEngine engine = new LoxEngine(new PrintStream(OutputStream.nullOutputStream()));
+        engine.setLimits(ExecutionLimits.NONE.withFuel(1000));
+
+        LoxLimitException error = assertTimeoutPreemptively(Duration.ofSeconds(10),
+                () -> assertThrows(LoxLimitException.class, () -> engine.compile(source).run()));
+        assertTrue(error.getMessage().startsWith("Out of fuel"), error.getMessage());
+        assertEquals(1, error.line());
+    }
+
+    @Test
+    void tasksGiveBackTheFuelTheyDidNotUse() {
+        // About 1300 loop iterations and calls in all, but every task takes a chunk of 1024 to start with
+        String source = ""
+                + "fun task() {\n"
+                + "  var i = 0;\n"
+                + "  while (i < 10) i = i + 1;\n"
+                + "  return i;\n"
+                + "}\n"
+                + "var sum = 0;\n"
+                + "for (var k = 0; k < 100; k = k + 1) sum = sum + join(spawn(task));\n"
+                + "print sum;\n";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        LoxEngine engine = new LoxEngine(new PrintStream(out, true));
+        engine.setLimits(ExecutionLimits.NONE.withFuel(5000));
+        engine.compile(source).run();
+        assertEquals("1000" + System.lineSeparator(), out.toString());
+
+        // The limit still holds
+        engine.setLimits(ExecutionLimits.NONE.withFuel(1000));
+        assertThrows(LoxLimitException.class, () -> engine.compile(source).run());
+    }
+}
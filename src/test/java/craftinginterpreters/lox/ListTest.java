@@ -0,0 +1,43 @@
+package craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import org.junit.jupiter.api.Test;
+
+class ListTest {
+    @Test
+    void listAndInstanceChainAgree() {
+        int elements = 2000;
+        LoxEngine engine = new LoxEngine(new PrintStream(OutputStream.nullOutputStream()));
+        LoxGlobals list = engine.compile(Sources.listSum(elements)).run();
+        LoxGlobals chain = engine.compile(Sources.chainSum(elements)).run();
+
+        double sum = (double) elements * (elements - 1) / 2;
+        assertEquals(sum, list.get("sum"));
+        assertEquals(sum, chain.get("sum"));
+        assertEquals(100.0 * (elements / 2), list.get("probe"));
+        assertEquals(list.get("probe"), chain.get("probe"));
+    }
+
+    @Test
+    void staysNumericUntilWidened() {
+        LoxList list = new LoxList();
+        for (int i = 0; i < 100; i++) list.append((double) i);
+        assertTrue(list.isNumeric());
+
+        list.set(0, "widened");
+        assertFalse(list.isNumeric());
+        assertEquals(100, list.length());
+        assertEquals("widened", list.get(0));
+        for (int i = 1; i < 100; i++) assertEquals((double) i, list.get(i));
+
+        list.append(100.0);
+        assertFalse(list.isNumeric());
+        assertEquals(100.0, list.get(100));
+    }
+}
@@ -0,0 +1,54 @@
+package craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class MapTest {
+    @Test
+    void numberKeysAgreeWithTheChain() {
+        check(true);
+    }
+
+    @Test
+    void stringKeysAgreeWithTheChain() {
+        check(false);
+    }
+
+    private static void check(boolean numbers) {
+        Random random = new Random(42);
+        LoxList keys = new LoxList();
+        Map<Object, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 2000; i++) {
+            int n = random.nextInt(50);
+            Object key = numbers ? (Object) (double) n : "key" + n;
+            keys.append(key);
+            expected.merge(key, 1, Integer::sum);
+        }
+
+        LoxEngine engine = new LoxEngine(new PrintStream(OutputStream.nullOutputStream()));
+        LoxGlobals map = run(engine, Sources.mapCounts(), keys);
+        LoxGlobals chain = run(engine, Sources.chainCounts(), keys);
+
+        for (Map.Entry<Object, Integer> entry : expected.entrySet()) {
+            Object key = entry.getKey();
+            double count = entry.getValue();
+            assertEquals(count, map.call("countOf", key), "countOf " + key);
+            assertEquals(count, map.call("groupSize", key), "groupSize " + key);
+            assertEquals(count, chain.call("countOf", key), "chain countOf " + key);
+            assertEquals(count, chain.call("groupSize", key), "chain groupSize " + key);
+        }
+    }
+
+    private static LoxGlobals run(LoxEngine engine, String source, LoxList keys) {
+        LoxGlobals globals = engine.newGlobals();
+        globals.set("keys", keys);
+        return engine.compile(source).run(globals);
+    }
+}
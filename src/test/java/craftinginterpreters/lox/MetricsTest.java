@@ -0,0 +1,63 @@
+package craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.Test;
+
+class MetricsTest {
+    private static final MBeanServer SERVER = ManagementFactory.getPlatformMBeanServer();
+
+    private static LoxEngine engine() {
+        return new LoxEngine(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @Test
+    void closeFreesTheName() throws Exception {
+        ObjectName name = new ObjectName("craftinginterpreters.lox:type=Interpreter,name=\"metrics-test\"");
+        for (int i = 0; i < 3; i++) {
+            try (LoxEngine engine = engine()) {
+                engine.registerMBean("metrics-test");
+                assertTrue(SERVER.isRegistered(name));
+            }
+            assertFalse(SERVER.isRegistered(name));
+        }
+    }
+
+    @Test
+    void registeringAgainReplacesTheBean() throws Exception {
+        ObjectName first = new ObjectName("craftinginterpreters.lox:type=Interpreter,name=\"metrics-first\"");
+        ObjectName second = new ObjectName("craftinginterpreters.lox:type=Interpreter,name=\"metrics-second\"");
+        try (LoxEngine engine = engine()) {
+            engine.registerMBean("metrics-first");
+            engine.registerMBean("metrics-second");
+            assertFalse(SERVER.isRegistered(first));
+            assertTrue(SERVER.isRegistered(second));
+        }
+        assertFalse(SERVER.isRegistered(second));
+    }
+
+    @Test
+    void countsWhatTheProgramRan() {
+        try (LoxEngine engine = engine()) {
+            InterpreterMXBean bean = engine.registerMBean("metrics-counts");
+            engine.compile(""
+                    + "var a = 1;\n"
+                    + "var b = 2;\n"
+                    + "fun f(n) { if (n > 0) return f(n - 1); return n; }\n"
+                    + "f(5);\n").run();
+
+            assertEquals(6, bean.getCallsMade());
+            assertEquals(6, bean.getMaxCallDepth());
+            assertEquals(0, bean.getCurrentCallDepth());
+            assertTrue(bean.getGlobalsCount() >= 3, "globals " + bean.getGlobalsCount());
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import org.junit.jupiter.api.Test;
+
+class NativeTest {
+    @Test
+    void everyClampGivesTheSameTotal() {
+        int calls = 5000;
+        LoxEngine engine = new LoxEngine(new PrintStream(OutputStream.nullOutputStream()));
+        LoxGlobals globals = Clamps.define(engine);
+
+        // 10 for i below 10, i up to 1000, 1000 after that
+        double expected = 10 * 10 + (10 + 1000) * 991 / 2 + 1000.0 * (calls - 1001);
+        for (String helper : Clamps.HELPERS) {
+            engine.compile(Clamps.loop(helper, calls)).run(globals);
+            assertEquals(expected, globals.get("total"), helper);
+        }
+    }
+
+    @Test
+    void nonNumberArgumentIsARuntimeError() {
+        LoxEngine engine = new LoxEngine(new PrintStream(OutputStream.nullOutputStream()));
+        LoxGlobals globals = Clamps.define(engine);
+        for (String helper : new String[] {"clamp", "listClamp"}) {
+            LoxRuntimeException error = assertThrows(LoxRuntimeException.class,
+                    () -> engine.compile("var x = " + helper + "(\"five\", 1, 2);").run(globals));
+            assertTrue(error.getMessage().contains("must be"), error.getMessage());
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class OutputTest {
+    // Prints more than the buffer holds, so it is drained part way through as well as at the end
+    private static final String SOURCE = ""
+            + "for (var i = 0; i < 20000; i = i + 1) {\n"
+            + "  print \"row \";\n"
+            + "  print i;\n"
+            + "}\n";
+
+    private static String run(String source, boolean lineBuffered) {
+        Resolution resolution = new Resolution();
+        List<Stmt> statements = FrontEnd.compile(source, resolution, new ErrorReporter());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PrintStream stream = new PrintStream(out, true);
+        new Interpreter(resolution, new ErrorReporter.Captured(), new Output(stream, lineBuffered))
+                .interpret(statements);
+        return out.toString();
+    }
+
+    @Test
+    void bufferedMatchesLineBuffered() {
+        String lineBuffered = run(SOURCE, true);
+        assertTrue(lineBuffered.length() > 1 << 16);
+        assertEquals(lineBuffered, run(SOURCE, false));
+    }
+
+    @Test
+    void flushedBeforeARuntimeError() {
+        String source = "print \"before\";\nprint 1 + nil;\nprint \"after\";\n";
+        assertEquals("before" + System.lineSeparator(), run(source, false));
+    }
+}
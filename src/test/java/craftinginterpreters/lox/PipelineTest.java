@@ -0,0 +1,68 @@
+package craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class PipelineTest {
+    // What one front end run produced
+    private static class Result {
+        final String program;
+        final String errors;
+        final int resolved;
+
+        Result(String source, boolean pipelined) {
+            StringBuilder errors = new StringBuilder();
+            ErrorReporter reporter = new ErrorReporter() {
+                @Override
+                void report(int line, String where, String message) {
+                    errors.append("[line ").append(line).append("] Error").append(where)
+                            .append(": ").append(message).append("\n");
+                    hadError = true;
+                }
+            };
+            Resolution resolution = new Resolution();
+            List<Stmt> statements = pipelined
+                    ? FrontEnd.compilePipelined(source, resolution, reporter)
+                    : FrontEnd.compile(source, resolution, reporter);
+
+            StringBuilder program = new StringBuilder();
+            AstPrinter printer = new AstPrinter();
+            for (Stmt statement : statements) {
+                program.append(statement == null ? "<error>" : printer.print(statement)).append("\n");
+            }
+            this.program = program.toString();
+            this.errors = errors.toString();
+            this.resolved = resolution.locals.size();
+        }
+    }
+
+    private static void assertSameResult(String source) {
+        Result sequential = new Result(source, false);
+        Result pipelined = new Result(source, true);
+
+        assertEquals(sequential.program, pipelined.program);
+        assertEquals(sequential.errors, pipelined.errors);
+        assertEquals(sequential.resolved, pipelined.resolved);
+    }
+
+    @Test
+    void validSourceCompilesTheSame() {
+        String source = Sources.functions(2000);
+        assertSameResult(source);
+        assertTrue(new Result(source, true).errors.isEmpty());
+    }
+
+    @Test
+    void errorsAreReportedInTheSameOrder() {
+        // Scanner, parser and resolver errors scattered through the file
+        String source = Sources.functions(2000).replace("f17(", "f17 @(").replace("f29(a, b)", "f29(a, b")
+                + "fun bad() { var x = x; }\n" + "return 1;\n";
+        assertSameResult(source);
+        assertFalse(new Result(source, true).errors.isEmpty());
+    }
+}
@@ -0,0 +1,80 @@
+package craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import org.junit.jupiter.api.Test;
+
+class PoolTest {
+    private final LoxEngine engine = new LoxEngine(new PrintStream(OutputStream.nullOutputStream()));
+
+    @Test
+    void requestsStartFromThePreludesGlobals() throws InterruptedException {
+        StringBuilder prelude = new StringBuilder(Sources.functions(30));
+        for (int i = 0; i < 10; i++) {
+            prelude.append("class C").append(i).append(" { value() { return ").append(i).append("; } }\n");
+        }
+        prelude.append("var requestCount = 0;\n");
+        LoxPool pool = new LoxPool(engine.compile(prelude.toString()), 2);
+        // Writes a global the prelude defined and defines one of its own, both must be gone for the next request
+        CompiledProgram request = engine.compile(""
+                + "requestCount = requestCount + 1;\n"
+                + "var answer = f7(10, 3) + C5().value() + requestCount;\n");
+
+        // f7(10, 3) is 76, C5().value() is 5 and a clean global scope makes requestCount 1
+        for (int i = 0; i < 5; i++) {
+            assertEquals(82.0, pool.<Object>run(globals -> request.run(globals).get("answer")));
+        }
+    }
+
+    @Test
+    void pooledRunsCantChangeAPreludeInstance() throws InterruptedException {
+        LoxPool pool = new LoxPool(engine.compile(""
+                + "class Config {}\n"
+                + "var config = Config();\n"
+                + "config.hits = 0;\n"), 1);
+        CompiledProgram request = engine.compile("config.hits = config.hits + 1;\n");
+
+        for (int i = 0; i < 2; i++) {
+            LoxRuntimeException error = assertThrows(LoxRuntimeException.class,
+                    () -> pool.run(globals -> request.run(globals)));
+            assertEquals(LoxPool.FROZEN + " [line 1]", error.getMessage());
+        }
+        CompiledProgram read = engine.compile("var hits = config.hits;\n");
+        assertEquals(0.0, pool.<Object>run(globals -> read.run(globals).get("hits")));
+    }
+
+    @Test
+    void listsMapsAndCapturedScopesAreFrozen() throws InterruptedException {
+        LoxPool pool = new LoxPool(engine.compile(""
+                + "var names = list();\n"
+                + "names.append(\"a\");\n"
+                + "var seen = map();\n"
+                + "fun counter() { var count = 0; fun next() { count = count + 1; return count; } return next; }\n"
+                + "var next = counter();\n"), 1);
+
+        for (String write : new String[] {"names.append(\"b\");", "names.set(0, \"b\");",
+                "seen.set(1, 2);", "seen.remove(1);", "next();"}) {
+            CompiledProgram request = engine.compile(write);
+            assertThrows(LoxRuntimeException.class, () -> pool.run(globals -> request.run(globals)), write);
+        }
+
+        // Reading is fine, and so is replacing the global with something of the request's own
+        CompiledProgram request = engine.compile(""
+                + "var first = names.get(0);\n"
+                + "names = list();\n"
+                + "names.append(first);\n"
+                + "var length = names.length();\n");
+        assertEquals(1.0, pool.<Object>run(globals -> request.run(globals).get("length")));
+        assertEquals(1.0, pool.<Object>run(globals -> request.run(globals).get("length")));
+    }
+
+    @Test
+    void preludesLeavingChannelsAreRejected() {
+        CompiledProgram prelude = engine.compile("var jobs = channel(4);\n");
+        assertThrows(IllegalArgumentException.class, () -> new LoxPool(prelude, 1));
+    }
+}
@@ -0,0 +1,75 @@
+package craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class ProfilerTest {
+    private static final String SOURCE = ""
+            + "fun fib(n) {\n"
+            + "  if (n < 2) return n;\n"
+            + "  return fib(n - 1) + fib(n - 2);\n"
+            + "}\n"
+            + "print fib(24);\n";
+
+    // Runs the script under a profiler and returns the collapsed stacks
+    private static List<String> profile(String source, String expected, Path collapsed) throws IOException {
+        Resolution resolution = new Resolution();
+        List<Stmt> statements = FrontEnd.compile(source, resolution, new ErrorReporter());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Interpreter interpreter = new Interpreter(resolution, new ErrorReporter(), new Output(new PrintStream(out, true)));
+        Profiler profiler = new Profiler();
+        interpreter.profiler = profiler;
+
+        profiler.start();
+        interpreter.interpret(statements);
+        profiler.stop();
+
+        // Profiling doesn't change what the script does
+        assertEquals(expected + System.lineSeparator(), out.toString());
+
+        profiler.report(collapsed, new PrintStream(OutputStream.nullOutputStream()));
+        return Files.readAllLines(collapsed);
+    }
+
+    @Test
+    void profiledRunSamplesTheShadowStack(@TempDir Path dir) throws IOException {
+        List<String> stacks = profile(SOURCE, "46368", dir.resolve("fib.collapsed"));
+        assertFalse(stacks.isEmpty());
+        for (String stack : stacks) {
+            assertTrue(stack.matches("<script>(;fib:1)* \\d+"), stack);
+        }
+        assertTrue(stacks.stream().anyMatch(stack -> stack.startsWith("<script>;fib:1;fib:1")));
+    }
+
+    @Test
+    void deepStacksGrowTheShadowStackWhileItIsSampled(@TempDir Path dir) throws IOException {
+        // Goes far past the initial 64 frames, so the array grows while the sampler runs and most samples are deep
+        String source = ""
+                + "fun down(n) {\n"
+                + "  if (n == 0) return 0;\n"
+                + "  return 1 + down(n - 1);\n"
+                + "}\n"
+                + "var sum = 0;\n"
+                + "for (var i = 0; i < 400; i = i + 1) sum = sum + down(300);\n"
+                + "print sum;\n";
+
+        List<String> stacks = profile(source, "120000", dir.resolve("down.collapsed"));
+        assertFalse(stacks.isEmpty());
+        for (String stack : stacks) {
+            assertTrue(stack.matches("<script>(;down:1)* \\d+"), stack);
+        }
+        assertTrue(stacks.stream().anyMatch(stack -> stack.split(";").length > 65));
+    }
+}
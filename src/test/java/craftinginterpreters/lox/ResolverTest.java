@@ -0,0 +1,48 @@
+package craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+class ResolverTest {
+    @Test
+    void deepNestingResolvesEveryReference() {
+        int depth = 40;
+        int copies = 3;
+        List<Stmt> statements = new Parser(new Scanner(Sources.nested(depth, copies)).scanTokens()).parse();
+        ErrorReporter.Buffered errors = new ErrorReporter.Buffered();
+        Resolution resolution = new Resolution();
+        new Resolver(resolution, errors).resolve(statements);
+
+        // Per level: v in w's initializer, every third level above it, and w in the print
+        int references = 0;
+        for (int level = 0; level < depth; level++) {
+            references += 2 + (level + 2) / 3;
+        }
+        assertFalse(errors.hadError);
+        assertEquals(copies * references, resolution.locals.size());
+    }
+
+    @Test
+    void closuresSeeTheScopeTheyWereDeclaredIn() {
+        String source = ""
+                + "var a = \"global\";\n"
+                + "{\n"
+                + "  fun show() { print a; }\n"
+                + "  show();\n"
+                + "  var a = \"block\";\n"
+                + "  show();\n"
+                + "  print a;\n"
+                + "  { var b = a; fun inner() { return b + \"!\"; } print inner(); }\n"
+                + "}\n";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new LoxEngine(new PrintStream(out, true)).compile(source).run();
+
+        assertEquals("global\nglobal\nblock\nblock!\n", out.toString().replace(System.lineSeparator(), "\n"));
+    }
+}
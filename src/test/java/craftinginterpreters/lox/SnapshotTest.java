@@ -0,0 +1,99 @@
+package craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class SnapshotTest {
+    @TempDir
+    Path dir;
+
+    private final LoxEngine engine = new LoxEngine(new PrintStream(OutputStream.nullOutputStream()));
+
+    // A table of instances, state held in a closure and a lookup over both
+    private static String init(int entries) {
+        return ""
+                + "class Entry {}\n"
+                + "fun score(n) {\n"
+                + "  var score = 0;\n"
+                + "  for (var i = 0; i < 20; i = i + 1) score = score + (n * i) / (i + 1);\n"
+                + "  return score;\n"
+                + "}\n"
+                + "fun makeTable(n) {\n"
+                + "  var head = nil;\n"
+                + "  for (var i = 0; i < n; i = i + 1) {\n"
+                + "    var entry = Entry();\n"
+                + "    entry.key = i;\n"
+                + "    entry.value = score(i);\n"
+                + "    entry.next = head;\n"
+                + "    head = entry;\n"
+                + "  }\n"
+                + "  return head;\n"
+                + "}\n"
+                + "var table = makeTable(" + entries + ");\n"
+                + "fun counterFrom(start) {\n"
+                + "  var count = start;\n"
+                + "  fun next() { count = count + 1; return count; }\n"
+                + "  return next;\n"
+                + "}\n"
+                + "var counter = counterFrom(100);\n"
+                + "counter();\n"
+                + "fun lookup(key) {\n"
+                + "  var entry = table;\n"
+                + "  while (entry != nil) {\n"
+                + "    if (entry.key == key) return entry.value;\n"
+                + "    entry = entry.next;\n"
+                + "  }\n"
+                + "  return nil;\n"
+                + "}\n";
+    }
+
+    private LoxGlobals saveAndRestore(LoxGlobals globals) throws IOException {
+        Path file = dir.resolve("heap.snapshot");
+        globals.save(file);
+        return engine.restore(file);
+    }
+
+    @Test
+    void restoredGlobalsAnswerLikeTheInitializedOnes() throws IOException {
+        int entries = 2000;
+        LoxGlobals initialized = engine.compile(init(entries)).run();
+        LoxGlobals restored = saveAndRestore(initialized);
+
+        for (int key : new int[] {0, 1, entries / 2, entries - 1, entries}) {
+            assertEquals(initialized.call("lookup", key), restored.call("lookup", key), "lookup(" + key + ")");
+        }
+        assertEquals(102.0, initialized.call("counter"));
+        assertEquals(102.0, restored.call("counter"));
+        assertEquals(103.0, restored.call("counter"));
+    }
+
+    @Test
+    void listsMapsAndInheritanceAreRestored() throws IOException {
+        LoxGlobals initialized = engine.compile(""
+                + "class Base { name() { return \"base\"; } }\n"
+                + "class Derived < Base { name() { return \"derived \" + super.name(); } }\n"
+                + "var items = list();\n"
+                + "items.append(1);\n"
+                + "items.append(\"two\");\n"
+                + "items.append(Derived());\n"
+                + "var index = map();\n"
+                + "index.set(\"first\", items);\n"
+                + "fun describe() { return index.get(\"first\").get(2).name(); }\n")
+                .run();
+        LoxGlobals restored = saveAndRestore(initialized);
+
+        assertEquals("derived base", restored.call("describe"));
+        assertEquals(3, ((LoxList) restored.get("items")).length());
+        assertEquals("two", ((LoxList) restored.get("items")).get(1));
+        // Still one list, reachable from both globals
+        assertSame(restored.get("items"), ((LoxMap) restored.get("index")).get("first"));
+    }
+}
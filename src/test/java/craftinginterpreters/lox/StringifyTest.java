@@ -0,0 +1,57 @@
+package craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class StringifyTest {
+    // What stringify did before appendNumber
+    private static String legacy(double number) {
+        String text = Double.toString(number);
+        if (text.endsWith(".0")) {
+            text = text.substring(0, text.length() - 2);
+        }
+        return text;
+    }
+
+    private static void compare(double number) {
+        String expected = legacy(number);
+        StringBuilder text = new StringBuilder();
+        Interpreter.appendNumber(text, number);
+        assertEquals(expected, text.toString(), () -> "bits " + Double.doubleToRawLongBits(number));
+        assertEquals(expected, Interpreter.stringify(number), () -> "bits " + Double.doubleToRawLongBits(number));
+    }
+
+    @Test
+    void edgeCasesMatchDoubleToString() {
+        double[] edges = {
+            0.0, -0.0, 1.0, -1.0, 0.5, 0.001, 0.00099, 1e7, -1e7, 9999999.0, -9999999.0, 9999999.5, 1e7 + 1,
+            Math.ulp(1e7), 1e-3 - Math.ulp(1e-3), 0x1p63, -0x1p63, 0x1p64, 0x1p53, 0x1p53 + 2, 1e23, 2e-3,
+            Double.MIN_VALUE, -Double.MIN_VALUE, Double.MIN_NORMAL, Double.MAX_VALUE, -Double.MAX_VALUE,
+            Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+        };
+        for (double edge : edges) {
+            compare(edge);
+            compare(Math.nextUp(edge));
+            compare(Math.nextDown(edge));
+        }
+    }
+
+    @Test
+    void randomNumbersMatchDoubleToString() {
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            // Any bit pattern, including NaNs and subnormals
+            compare(Double.longBitsToDouble(random.nextLong()));
+            // Integers of every size, around the 10^7 cut over and past where longs overflow
+            compare((double) (random.nextLong() >> random.nextInt(64)));
+            compare(random.nextInt(20_000_001) - 10_000_000 + (random.nextBoolean() ? 0 : 0.5));
+            // Short decimals, sums of them and numbers near powers of ten
+            compare(random.nextInt(2_000_000) / Math.pow(10, random.nextInt(12)) * (random.nextBoolean() ? 1 : -1));
+            compare(random.nextInt(1000) / 10.0 + random.nextInt(1000) / 100.0);
+            compare(Math.pow(10, random.nextInt(40) - 20) * (1 + (random.nextInt(3) - 1) * Math.ulp(1.0)));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.jupiter.api.Test;
+
+class TasksTest {
+    private static String run(String source) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new LoxEngine(new PrintStream(out, true)).compile(source).run();
+        return out.toString().replace(System.lineSeparator(), "\n");
+    }
+
+    @Test
+    void blockedTasksAllGetTheirMessage() {
+        int tasks = 200;
+        String source = ""
+                + "var start = channel(" + tasks + ");\n"
+                + "var done = channel(" + tasks + ");\n"
+                + "var i = 0;\n"
+                + "while (i < " + tasks + ") {\n"
+                + "  fun task() { send(done, receive(start) * 2); }\n"
+                + "  spawn(task);\n"
+                + "  i = i + 1;\n"
+                + "}\n"
+                + "i = 0;\n"
+                + "while (i < " + tasks + ") { send(start, i); i = i + 1; }\n"
+                + "var sum = 0;\n"
+                + "i = 0;\n"
+                + "while (i < " + tasks + ") { sum = sum + receive(done); i = i + 1; }\n"
+                + "print sum;\n";
+
+        assertEquals(tasks * (tasks - 1) + "\n", run(source));
+    }
+
+    @Test
+    void messagesArriveInOrderThroughASmallChannel() {
+        int messages = 5000;
+        String source = ""
+                + "var messages = channel(4);\n"
+                + "fun producer() {\n"
+                + "  var i = 0;\n"
+                + "  while (i < " + messages + ") { send(messages, i); i = i + 1; }\n"
+                + "  send(messages, nil);\n"
+                + "  return i;\n"
+                + "}\n"
+                + "var task = spawn(producer);\n"
+                + "var expected = 0;\n"
+                + "var message = receive(messages);\n"
+                + "while (message != nil) {\n"
+                + "  if (message != expected) print \"out of order\";\n"
+                + "  expected = expected + 1;\n"
+                + "  message = receive(messages);\n"
+                + "}\n"
+                + "print join(task);\n"
+                + "print expected;\n";
+
+        assertEquals(messages + "\n" + messages + "\n", run(source));
+    }
+
+    @Test
+    void channelCapacityMustBeAWholeNumberInRange() {
+        for (String capacity : new String[] {"2.5", "0", "-1", "1000000000000"}) {
+            LoxRuntimeException error = assertThrows(LoxRuntimeException.class,
+                    () -> run("channel(" + capacity + ");"));
+            assertTrue(error.getMessage().startsWith("Channel capacity must be a whole number"), capacity);
+        }
+        assertEquals("<channel>\n", run("print channel(" + Tasks.MAX_CHANNEL_CAPACITY + ");"));
+    }
+}
@@ -0,0 +1,228 @@
+package craftinginterpreters.lox;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+
+class TieringTest {
+    private static final String CLOSURES = ""
+            + "fun counter() {\n"
+            + "  var count = 0;\n"
+            + "  fun increment() { count = count + 1; return count; }\n"
+            + "  return increment;\n"
+            + "}\n"
+            + "var counters = list();\n"
+            + "for (var i = 0; i < 50; i = i + 1) counters.append(counter());\n"
+            + "var total = 0;\n"
+            + "for (var i = 0; i < 50; i = i + 1) {\n"
+            + "  for (var j = 0; j <= i; j = j + 1) total = total + counters.get(i)();\n"
+            + "}\n"
+            + "print total;\n";
+
+    private static final String CLASSES = ""
+            + "class Shape {\n"
+            + "  init(name) { this.name = name; }\n"
+            + "  area() { return 0; }\n"
+            + "  describe() { return this.name; }\n"
+            + "}\n"
+            + "class Square < Shape {\n"
+            + "  init(side) { super.init(\"square\"); this.side = side; }\n"
+            + "  area() { return this.side * this.side; }\n"
+            + "}\n"
+            + "class Unit < Square {\n"
+            + "  init() { super.init(1); }\n"
+            + "  describe() { return \"unit \" + super.describe(); }\n"
+            + "}\n"
+            + "var sum = 0;\n"
+            + "for (var i = 0; i < 200; i = i + 1) sum = sum + Square(i).area();\n"
+            + "print sum;\n"
+            + "var unit = Unit();\n"
+            + "print unit.describe();\n"
+            + "print unit.area();\n";
+
+    private static final String EARLY_RETURNS = ""
+            + "fun find(limit, target) {\n"
+            + "  var i = 0;\n"
+            + "  while (i < limit) {\n"
+            + "    for (var j = 0; j < 3; j = j + 1) {\n"
+            + "      if (i * 3 + j == target) return i * 10 + j;\n"
+            + "    }\n"
+            + "    i = i + 1;\n"
+            + "  }\n"
+            + "  return nil;\n"
+            + "}\n"
+            + "var found = 0;\n"
+            + "for (var k = 0; k < 300; k = k + 1) {\n"
+            + "  var result = find(100, k);\n"
+            + "  if (result != nil) found = found + result;\n"
+            + "}\n"
+            + "print found;\n"
+            + "print find(2, 100);\n";
+
+    // The error comes from a function after it has run often enough to be compiled
+    private static final String ERROR_IN_FUNCTION = ""
+            + "fun half(n) {\n"
+            + "  if (n == 500) return \"a\" * 2;\n"
+            + "  return n / 2;\n"
+            + "}\n"
+            + "var sum = 0;\n"
+            + "for (var i = 0; i < 1000; i = i + 1) {\n"
+            + "  sum = sum + half(i);\n"
+            + "  if (i == 499) print sum;\n"
+            + "}\n";
+
+    // And from a loop after it has run long enough to be handed over
+    private static final String ERROR_IN_LOOP = ""
+            + "var values = list();\n"
+            + "for (var i = 0; i < 3000; i = i + 1) {\n"
+            + "  if (i == 2500) values.append(nil); else values.append(i);\n"
+            + "}\n"
+            + "var sum = 0;\n"
+            + "var i = 0;\n"
+            + "while (i < values.length()) {\n"
+            + "  sum = sum + values.get(i);\n"
+            + "  i = i + 1;\n"
+            + "}\n"
+            + "print sum;\n";
+
+    private enum Tier {
+        // The thresholds at never
+        INTERPRETED,
+        // The thresholds at 1, so everything is compiled in the background while it runs
+        AT_ONE,
+        // Every function and loop compiled before the run starts
+        COMPILED
+    }
+
+    // What the program printed and the runtime error it stopped with, as the embedding API reports it
+    private static String run(String source, Tier tier) {
+        Resolution resolution = new Resolution();
+        ErrorReporter errors = new ErrorReporter();
+        List<Stmt> statements = FrontEnd.compile(source, resolution, errors);
+        assertFalse(errors.hadError);
+        if (tier == Tier.COMPILED) compile(statements, resolution);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ErrorReporter.Captured reporter = new ErrorReporter.Captured();
+        Interpreter interpreter = new Interpreter(resolution, reporter, new Output(new PrintStream(out, true)));
+        long threshold = Tiering.threshold(tier == Tier.INTERPRETED ? 0 : 1);
+        interpreter.callThreshold = threshold;
+        interpreter.loopThreshold = threshold;
+        interpreter.interpret(statements);
+
+        String printed = out.toString().replace(System.lineSeparator(), "\n");
+        try {
+            reporter.rethrow();
+            return printed;
+        } catch (LoxRuntimeException error) {
+            return printed + "error: " + error.getMessage() + "\n";
+        }
+    }
+
+    // Compiles every function and loop in the statements, as Tiering would once they got hot
+    private static void compile(List<Stmt> statements, Resolution resolution) {
+        ClosureCompiler compiler = new ClosureCompiler(resolution);
+        for (Stmt statement : statements) {
+            if (statement instanceof Stmt.Block) {
+                compile(((Stmt.Block) statement).statements, resolution);
+            } else if (statement instanceof Stmt.Class) {
+                compile(new ArrayList<>(((Stmt.Class) statement).methods), resolution);
+            } else if (statement instanceof Stmt.Function) {
+                Stmt.Function function = (Stmt.Function) statement;
+                compile(function.body, resolution);
+                claim(resolution.profile(function)).code = compiler.function(function);
+            } else if (statement instanceof Stmt.If) {
+                Stmt.If stmt = (Stmt.If) statement;
+                compile(List.of(stmt.thenBranch), resolution);
+                if (stmt.elseBranch != null) compile(List.of(stmt.elseBranch), resolution);
+            } else if (statement instanceof Stmt.While) {
+                Stmt.While loop = (Stmt.While) statement;
+                compile(List.of(loop.body), resolution);
+                claim(resolution.profile(loop)).code = compiler.loop(loop);
+            }
+        }
+    }
+
+    // So Tiering doesn't compile it again
+    private static TierProfile claim(TierProfile profile) {
+        assertTrue(profile.claim());
+        return profile;
+    }
+
+    private static String assertSameInEveryTier(String name, String source) {
+        String interpreted = run(source, Tier.INTERPRETED);
+        assertEquals(interpreted, run(source, Tier.AT_ONE), name + " with the thresholds at 1");
+        assertEquals(interpreted, run(source, Tier.COMPILED), name + " compiled up front");
+        return interpreted;
+    }
+
+    @Test
+    void closuresClassesAndEarlyReturnsRunTheSameInEveryTier() {
+        assertEquals("22100\n", assertSameInEveryTier("closures", CLOSURES));
+        assertEquals("2646700\nunit square\n1\n", assertSameInEveryTier("classes", CLASSES));
+        assertEquals("148800\nnil\n", assertSameInEveryTier("early returns", EARLY_RETURNS));
+    }
+
+    @Test
+    void compiledCodeFailsWithTheSameErrorAtTheSameLine() {
+        assertEquals("62375\nerror: Operand must be a number [line 2]\n",
+                assertSameInEveryTier("error in a function", ERROR_IN_FUNCTION));
+        assertEquals("error: Operand must be a number [line 8]\n",
+                assertSameInEveryTier("error in a loop", ERROR_IN_LOOP));
+    }
+
+    @Test
+    void benchmarkWorkloadsRunTheSameInEveryTier() throws IOException {
+        List<Path> workloads;
+        try (Stream<Path> files = Files.list(Paths.get("src/main/resources/benchmark"))) {
+            workloads = files.filter(file -> file.toString().endsWith(".lox")).sorted().collect(Collectors.toList());
+        }
+        assertFalse(workloads.isEmpty());
+        for (Path workload : workloads) {
+            String source = Files.readString(workload);
+            String printed = assertSameInEveryTier(workload.toString(), source);
+            assertFalse(printed.contains("error:"), workload + " " + printed);
+        }
+    }
+
+    @Test
+    void tieringUpMidLoopDoesNotRunIterationsAgain() {
+        String source = ""
+                + "var runs = 0;\n"
+                + "var i = 0;\n"
+                + "while (i < 10) {\n"
+                + "  print i;\n"
+                + "  runs = runs + 1;\n"
+                + "  i = i + 1;\n"
+                + "}\n"
+                + "print runs;\n";
+        Resolution resolution = new Resolution();
+        List<Stmt> statements = FrontEnd.compile(source, resolution, new ErrorReporter());
+        Stmt.While loop = (Stmt.While) statements.get(2);
+        claim(resolution.profile(loop)).code = new ClosureCompiler(resolution).loop(loop);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Interpreter interpreter =
+                new Interpreter(resolution, new ErrorReporter(), new Output(new PrintStream(out, true)));
+        interpreter.callThreshold = Tiering.threshold(0);
+        interpreter.loopThreshold = 4;
+        interpreter.interpret(statements);
+
+        assertEquals("0\n1\n2\n3\n4\n5\n6\n7\n8\n9\n10\n", out.toString().replace(System.lineSeparator(), "\n"));
+        // The Interpreter ran the first four iterations and the compiled loop the rest
+        assertEquals(4, interpreter.backEdges);
+    }
+}
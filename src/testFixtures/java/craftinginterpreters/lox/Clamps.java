@@ -0,0 +1,56 @@
+package craftinginterpreters.lox;
+
+import java.lang.invoke.MethodHandles;
+import java.util.List;
+
+/**
+ * The same clamp helper three ways, for comparing how calls into Java cost: clamp as a LoxNative method,
+ * listClamp as a hand written LoxCallable going through the argument list, and loxClamp written in Lox.
+ */
+public final class Clamps {
+    public static final String[] HELPERS = {"clamp", "listClamp", "loxClamp"};
+
+    private Clamps() {
+    }
+
+    @LoxNative
+    static double clamp(double value, double low, double high) {
+        return Math.max(low, Math.min(high, value));
+    }
+
+    // Globals with all three defined, clamp on every scope the engine makes from now on
+    public static LoxGlobals define(LoxEngine engine) {
+        engine.defineNatives(MethodHandles.lookup(), Clamps.class);
+        LoxGlobals globals = engine.newGlobals();
+        globals.set("listClamp", new LoxCallable() {
+            @Override
+            public int arity() {
+                return 3;
+            }
+
+            @Override
+            public Object call(Interpreter interpreter, List<Object> arguments) {
+                Object value = arguments.get(0);
+                Object low = arguments.get(1);
+                Object high = arguments.get(2);
+                if (!(value instanceof Double) || !(low instanceof Double) || !(high instanceof Double)) {
+                    throw new RuntimeError(null, "Arguments must be numbers");
+                }
+                return Math.max((double) low, Math.min((double) high, (double) value));
+            }
+        });
+        engine.compile("fun loxClamp(value, low, high) {\n"
+                + "  if (value < low) return low;\n"
+                + "  if (value > high) return high;\n"
+                + "  return value;\n"
+                + "}\n").run(globals);
+        return globals;
+    }
+
+    // Adds up helper(i, 10, 1000) for i below calls into the global total
+    public static String loop(String helper, int calls) {
+        return ""
+                + "var total = 0;\n"
+                + "for (var i = 0; i < " + calls + "; i = i + 1) total = total + " + helper + "(i, 10, 1000);\n";
+    }
+}
@@ -0,0 +1,129 @@
+package craftinginterpreters.lox;
+
+/**
+ * Generated Lox sources for the tests and the JMH benchmarks, so both run over programs of the same shape.
+ */
+public final class Sources {
+    private Sources() {
+    }
+
+    // Many small functions with loops, conditionals and calls, about 180 bytes each
+    public static String functions(int functions) {
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < functions; i++) {
+            source.append("fun f").append(i).append("(a, b) {\n")
+                    .append("  var sum = 0;\n")
+                    .append("  for (var i = 0; i < a; i = i + 1) {\n")
+                    .append("    if (i > b) sum = sum + i * 2; else sum = sum - (i / 3);\n")
+                    .append("  }\n")
+                    .append("  print \"done \" + \"f").append(i).append("\";\n")
+                    .append("  return sum;\n")
+                    .append("}\n");
+        }
+        return source.toString();
+    }
+
+    // Blocks nested inside functions nested inside blocks, with every level reading the levels above it
+    public static String nested(int depth, int copies) {
+        StringBuilder source = new StringBuilder();
+        for (int copy = 0; copy < copies; copy++) {
+            source.append("fun outer").append(copy).append("() {\n");
+            for (int level = 0; level < depth; level++) {
+                if (level % 4 == 3) {
+                    source.append("fun inner").append(level).append("(p").append(level).append(") {\n");
+                } else {
+                    source.append("{\n");
+                }
+                source.append("var v").append(level).append(" = ").append(level).append(";\n");
+                source.append("var w").append(level).append(" = v").append(level);
+                for (int up = level - 1; up >= 0; up -= 3) {
+                    source.append(" + v").append(up);
+                }
+                source.append(";\n");
+            }
+            for (int level = depth - 1; level >= 0; level--) {
+                source.append("print w").append(level).append(";\n}\n");
+            }
+            source.append("}\n");
+        }
+        return source.toString();
+    }
+
+    // Builds a list of 0 to elements - 1, sums it into sum and reads from the middle a hundred times
+    public static String listSum(int elements) {
+        return ""
+                + "var xs = list();\n"
+                + "for (var i = 0; i < " + elements + "; i = i + 1) xs.append(i);\n"
+                + "var sum = 0;\n"
+                + "for (var i = 0; i < xs.length(); i = i + 1) sum = sum + xs.get(i);\n"
+                + "var probe = 0;\n"
+                + "for (var i = 0; i < 100; i = i + 1) probe = probe + xs.get(" + elements / 2 + ");\n";
+    }
+
+    // The same with a chain of instances, which is what scripts used before the built in list
+    public static String chainSum(int elements) {
+        return ""
+                + "class Node {}\n"
+                + "var head = nil;\n"
+                + "for (var i = " + elements + " - 1; i >= 0; i = i - 1) {\n"
+                + "  var node = Node(); node.value = i; node.next = head; head = node;\n"
+                + "}\n"
+                + "var sum = 0;\n"
+                + "var node = head;\n"
+                + "while (node != nil) { sum = sum + node.value; node = node.next; }\n"
+                + "fun at(index) {\n"
+                + "  var node = head;\n"
+                + "  for (var i = 0; i < index; i = i + 1) node = node.next;\n"
+                + "  return node.value;\n"
+                + "}\n"
+                + "var probe = 0;\n"
+                + "for (var i = 0; i < 100; i = i + 1) probe = probe + at(" + elements / 2 + ");\n";
+    }
+
+    // Counts and groups the global list keys with the built in map, read back with countOf(key) and groupSize(key)
+    public static String mapCounts() {
+        return ""
+                + "var counts = map();\n"
+                + "var groups = map();\n"
+                + "for (var i = 0; i < keys.length(); i = i + 1) {\n"
+                + "  var key = keys.get(i);\n"
+                + "  var count = counts.get(key);\n"
+                + "  if (count == nil) count = 0;\n"
+                + "  counts.set(key, count + 1);\n"
+                + "  var group = groups.get(key);\n"
+                + "  if (group == nil) group = groups.set(key, list());\n"
+                + "  group.append(i);\n"
+                + "}\n"
+                + "fun countOf(key) { return counts.get(key); }\n"
+                + "fun groupSize(key) { return groups.get(key).length(); }\n";
+    }
+
+    // The same with a chain of entry instances searched linearly, which is what scripts used before the map
+    public static String chainCounts() {
+        return ""
+                + "class Entry {}\n"
+                + "var head = nil;\n"
+                + "fun find(key) {\n"
+                + "  var entry = head;\n"
+                + "  while (entry != nil) {\n"
+                + "    if (entry.key == key) return entry;\n"
+                + "    entry = entry.next;\n"
+                + "  }\n"
+                + "  entry = Entry();\n"
+                + "  entry.key = key; entry.count = 0; entry.group = nil; entry.groupSize = 0; entry.next = head;\n"
+                + "  head = entry;\n"
+                + "  return entry;\n"
+                + "}\n"
+                + "class Member {}\n"
+                + "for (var i = 0; i < keys.length(); i = i + 1) {\n"
+                + "  var entry = find(keys.get(i));\n"
+                + "  entry.count = entry.count + 1;\n"
+                + "  var member = Member();\n"
+                + "  member.index = i; member.next = entry.group;\n"
+                + "  entry.group = member;\n"
+                + "  entry.groupSize = entry.groupSize + 1;\n"
+                + "}\n"
+                + "fun countOf(key) { return find(key).count; }\n"
+                + "fun groupSize(key) { return find(key).groupSize; }\n";
+    }
+}